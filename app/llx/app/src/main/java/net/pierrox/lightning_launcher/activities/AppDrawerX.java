@@ -24,7 +24,6 @@ SOFTWARE.
 
 package net.pierrox.lightning_launcher.activities;
 
-import android.annotation.SuppressLint;
 import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.Dialog;
@@ -76,13 +75,16 @@ import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.JsonLoader;
 import net.pierrox.lightning_launcher.data.LightningIntent;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
 import net.pierrox.lightning_launcher.data.PageIndicator;
 import net.pierrox.lightning_launcher.data.Shortcut;
 import net.pierrox.lightning_launcher.data.State;
 import net.pierrox.lightning_launcher.data.Utils;
+import net.pierrox.lightning_launcher.engine.LaunchStatistics;
 import net.pierrox.lightning_launcher.engine.LightningEngine;
 import net.pierrox.lightning_launcher.engine.Screen;
 import net.pierrox.lightning_launcher.util.AddItemDialog;
+import net.pierrox.lightning_launcher.util.AppSearchIndex;
 import net.pierrox.lightning_launcher.util.PhoneUtils;
 import net.pierrox.lightning_launcher.views.EditTextIme;
 import net.pierrox.lightning_launcher.views.FolderView;
@@ -98,7 +100,6 @@ import org.mozilla.javascript.Function;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Stack;
@@ -156,6 +157,7 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
     private float mScaleBeforePinch;
     private int mLayoutModeBeforeSearch;
     private ItemView mSearchFocusedItemView;
+    private final AppSearchIndex mSearchIndex = new AppSearchIndex();
     private int mPreviouslyDisplayedChild;
     private boolean mAndroidActionBarDisplayedBeforeBatch;
     private int mBatchCheckedCount;
@@ -598,18 +600,18 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
             case Utils.LAYOUT_MODE_FREQUENTLY_USED:
                 items = new ArrayList<Item>();
                 addAppsFromPage(mDrawerPage, items, mAllDrawerPageIDs);
+                LaunchStatistics launch_statistics = mDrawerPage.getEngine().getLaunchStatistics();
+                long now = System.currentTimeMillis();
                 for (Item i : items) {
                     if (i instanceof Shortcut) {
                         Shortcut s = (Shortcut) i;
                         ComponentName cn = s.getIntent().getComponent();
-                        if (mThisCn.compareTo(cn) != 0) {
-                            s.mLaunchCount = s.getPage().getEngine().getShortcutLaunchCount(s);
-                        }
+                        s.mLaunchScore = cn == null || mThisCn.equals(cn) ? 0 : launch_statistics.getScore(cn, now);
                     }
                 }
                 for (int i = items.size() - 1; i >= 0; i--) {
                     final Item item = items.get(i);
-                    if (item instanceof Shortcut && item.mLaunchCount == 0) items.remove(i);
+                    if (item instanceof Shortcut && item.mLaunchScore == 0) items.remove(i);
                 }
                 Collections.sort(items, Utils.sItemComparatorByLaunchCount);
                 break;
@@ -880,42 +882,23 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
         }
     }
 
-    @SuppressLint("DefaultLocale")
     private void filterApps(String filter) {
         ArrayList<Item> items = mItemLayout.getPage().items;
         if (filter != null) {
-            final String filter_l = filter.toLowerCase();
-            boolean empty = filter.equals("");
-            for (Item i : items) {
+            // matching items are moved first, in the order they should be displayed
+            int count = mSearchIndex.filter(items, filter);
+            int length = filter.length();
+            for (int n = 0; n < items.size(); n++) {
+                Item i = items.get(n);
+                boolean match = n < count;
+                i.setVisible(match);
                 if (i instanceof Shortcut) {
-                    Shortcut s = (Shortcut) i;
-                    boolean match = !empty && s.getLabel().toLowerCase().contains(filter_l);
-                    s.setVisible(match);
-                    ShortcutView shortcutView = (ShortcutView) mItemLayout.getItemView(s);
-                    shortcutView.highlightText(match ? filter_l : null);
-                } else {
-                    i.setVisible(false);
+                    ShortcutView shortcutView = (ShortcutView) mItemLayout.getItemView(i);
+                    shortcutView.highlightText(match ? mSearchIndex.getHighlightStart(n) : -1, length);
                 }
             }
-            if (mActionBar.getDisplayedChild() == ACTION_BAR_CHILD_SEARCH) {
-                Collections.sort(items, new Comparator<Item>() {
-                    @Override
-                    public int compare(Item item1, Item item2) {
-                        String s1 = item1 instanceof Shortcut ? ((Shortcut) item1).getLabel().toLowerCase() : "";
-                        String s2 = item2 instanceof Shortcut ? ((Shortcut) item2).getLabel().toLowerCase() : "";
-                        boolean s1_start = s1.startsWith(filter_l);
-                        boolean s2_start = s2.startsWith(filter_l);
-                        if (s1_start && !s2_start) {
-                            return -1;
-                        } else if (!s1_start && s2_start) {
-                            return 1;
-                        } else {
-                            return Utils.sItemNameCollator.compare(s1, s2);
-                        }
-                    }
-                });
-            }
         } else {
+            mSearchIndex.reset();
             for (Item i : items) {
                 i.setVisible(true);
                 if (i instanceof Shortcut) {
@@ -1614,6 +1597,9 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
 
 
     private class AppDrawerScreen extends DashboardScreen {
+        private final ItemLayout[] mNoItemLayouts = new ItemLayout[0];
+        private ItemLayout[] mMainItemLayouts;
+
         public AppDrawerScreen(Context context, int content_view) {
             super(context, content_view);
         }
@@ -1650,9 +1636,12 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
             } else {
                 // pretend that the main item layout fits all pages (it does because it includes views from item belonging to other folders)
                 if (mAllDrawerPageIDs.contains(pageId)) {
-                    return new ItemLayout[]{mItemLayout};
+                    if (mMainItemLayouts == null || mMainItemLayouts[0] != mItemLayout) {
+                        mMainItemLayouts = new ItemLayout[]{mItemLayout};
+                    }
+                    return mMainItemLayouts;
                 } else {
-                    return new ItemLayout[0];
+                    return mNoItemLayouts;
                 }
             }
         }
@@ -1945,6 +1934,7 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
         public void onPageItemAdded(Item item) {
             super.onPageItemAdded(item);
             if (item.getPage().id == mItemLayout.getPage().id) {
+                mSearchIndex.invalidate();
                 setLayoutMode(mLayoutMode, true);
             }
         }
@@ -1953,14 +1943,32 @@ public class AppDrawerX extends Dashboard implements EditTextIme.OnEditTextImeLi
         public void onPageItemRemoved(Page page, Item item) {
             super.onPageItemRemoved(page, item);
             if (page.id == mItemLayout.getPage().id) {
+                mSearchIndex.invalidate();
                 setLayoutMode(mLayoutMode, true);
             }
         }
 
         @Override
-        public void onPageModified(Page page) {
-            super.onPageModified(page);
+        public void onPageItemChanged(Page page, Item item) {
+            super.onPageItemChanged(page, item);
+            if (page.id == mItemLayout.getPage().id) {
+                mSearchIndex.invalidate();
+            }
+        }
+
+        @Override
+        public void onShortcutLabelChanged(Shortcut shortcut) {
+            super.onShortcutLabelChanged(shortcut);
+            if (shortcut.getPage().id == mItemLayout.getPage().id) {
+                mSearchIndex.invalidate();
+            }
+        }
+
+        @Override
+        public void onPageModified(Page page, PageChangeSet changes) {
+            super.onPageModified(page, changes);
             if (page.id == mItemLayout.getPage().id) {
+                mSearchIndex.invalidate();
                 setLayoutMode(mLayoutMode, true);
             }
         }
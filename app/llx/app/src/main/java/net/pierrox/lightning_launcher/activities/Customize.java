@@ -2147,9 +2147,9 @@ public class Customize extends ResourceWrapperActivity implements
             if (name != null) {
                 o.put(JsonFields.LABEL, name);
             }
-            o.put("defaultItemConfig", JsonLoader.toJSONObject(mPage.config.defaultItemConfig, new ItemConfig()));
-            o.put("defaultShortcutConfig", JsonLoader.toJSONObject(mPage.config.defaultShortcutConfig, new ShortcutConfig()));
-            o.put("defaultFolderConfig", JsonLoader.toJSONObject(fc, new FolderConfig()));
+            o.put("defaultItemConfig", JsonLoader.toJSONObject(mPage.config.defaultItemConfig, JsonLoader.getDefaults(ItemConfig.class)));
+            o.put("defaultShortcutConfig", JsonLoader.toJSONObject(mPage.config.defaultShortcutConfig, JsonLoader.getDefaults(ShortcutConfig.class)));
+            o.put("defaultFolderConfig", JsonLoader.toJSONObject(fc, JsonLoader.getDefaults(FolderConfig.class)));
             if (mOpenerItem != null) {
                 o.put(STYLE_OPENER_FOLDER_CONFIG, JsonLoader.toJSONObject(mOpenerItem.getFolderConfig(), mOpenerPage.config.defaultFolderConfig));
                 File icon_dir = mOpenerPage.getIconDir();
@@ -133,6 +133,7 @@ import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.JsonLoader;
 import net.pierrox.lightning_launcher.data.LightningIntent;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
 import net.pierrox.lightning_launcher.data.PageIndicator;
 import net.pierrox.lightning_launcher.data.SavedItemGeometry;
 import net.pierrox.lightning_launcher.data.SelectionState;
@@ -6357,10 +6358,10 @@ public class Dashboard extends ResourceWrapperActivity implements OnLongClickLis
         }
 
         @Override
-        public void onPageModified(Page page) {
-            super.onPageModified(page);
+        public void onPageModified(Page page, PageChangeSet changes) {
+            super.onPageModified(page, changes);
 
-            if (page == getCurrentRootPage()) {
+            if (page == getCurrentRootPage() && (changes == null || changes.isPageConfigChanged())) {
                 configureActivity(page);
             }
         }
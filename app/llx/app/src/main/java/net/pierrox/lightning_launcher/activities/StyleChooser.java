@@ -230,10 +230,10 @@ public class StyleChooser extends ResourceWrapperListActivity implements OnItemL
         }
 
 		try {
-			JSONObject o= JsonLoader.toJSONObject(page_config, new PageConfig());
+			JSONObject o= JsonLoader.toJSONObject(page_config, JsonLoader.getDefaults(PageConfig.class));
 			o.put(JsonFields.LABEL, context.getString(label));
-			o.put("defaultItemConfig", JsonLoader.toJSONObject(page_config.defaultItemConfig, new ItemConfig()));
-			o.put("defaultShortcutConfig", JsonLoader.toJSONObject(page_config.defaultShortcutConfig, new ShortcutConfig()));
+			o.put("defaultItemConfig", JsonLoader.toJSONObject(page_config.defaultItemConfig, JsonLoader.getDefaults(ItemConfig.class)));
+			o.put("defaultShortcutConfig", JsonLoader.toJSONObject(page_config.defaultShortcutConfig, JsonLoader.getDefaults(ShortcutConfig.class)));
 //			o.put("defaultWidgetConfig", Utils.toJSONObject(page_config.defaultWidgetConfig, new WidgetConfig()));
 //			o.put("defaultFolderConfig", Utils.toJSONObject(page_config.defaultFolderConfig, new FolderConfig()));
 			
@@ -37,6 +37,8 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 
 import net.pierrox.lightning_launcher.LLApp;
@@ -81,8 +83,16 @@ public class BackupRestoreTool {
     public static Exception backup(BackupConfig backup_config) {
         FileUtils.LL_EXT_DIR.mkdirs();
 
-        LightningEngine engine = LLApp.get().getAppEngine();
+        final LightningEngine engine = LLApp.get().getAppEngine();
         engine.saveData();
+        runOnUiThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                engine.getLaunchStatistics().compact();
+                // also flushes the statistics snapshot
+                engine.getPageManager().compactPagesSync();
+            }
+        });
 
         Exception result = null;
         File file = new File(backup_config.pathTo);
@@ -158,6 +168,26 @@ public class BackupRestoreTool {
         return result;
     }
 
+    // backups are usually made from a background thread, but loaded pages and launch statistics belong to the UI thread
+    private static void runOnUiThreadAndWait(final Runnable r) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            r.run();
+            return;
+        }
+        final Semaphore done = new Semaphore(0);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                } finally {
+                    done.release();
+                }
+            }
+        });
+        done.acquireUninterruptibly();
+    }
+
     private static void backupCoreData(BackupConfig backup_config, ZipOutputStream zos) throws IOException {
         File base_dir = new File(backup_config.pathFrom);
         putZipDirEntry(zos, ZIP_DIR_CORE);
@@ -0,0 +1,269 @@
+package net.pierrox.lightning_launcher.util;
+
+import net.pierrox.lightning_launcher.data.Item;
+import net.pierrox.lightning_launcher.data.Shortcut;
+import net.pierrox.lightning_launcher.data.Utils;
+
+import java.text.CollationKey;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Search index for the app drawer.
+ * Labels are folded (lower case, no accents) and sorted by collation once, when the index is
+ * built. Filtering then only compares chars without allocating, and typing one more character only
+ * tests the items matching the previous filter.
+ * Matches are ranked: label prefix, word prefix, word initials, substring, and subsequence.
+ * The index must be invalidated when items or their labels change.
+ */
+public class AppSearchIndex {
+    // match ranks, best first
+    private static final int RANK_PREFIX = 0;
+    private static final int RANK_WORD_PREFIX = 1;
+    private static final int RANK_INITIALS = 2;
+    private static final int RANK_CONTAINS = 3;
+    private static final int RANK_SUBSEQUENCE = 4;
+    private static final int RANK_COUNT = 5;
+    private static final int NO_MATCH = -1;
+
+    private ArrayList<Item> mSource;
+    private int mSourceSize;
+
+    // shortcuts sorted by label, and their folded labels
+    private Shortcut[] mShortcuts;
+    private char[][] mLabels;
+    // other items, never matching
+    private Item[] mOthers;
+
+    // per shortcut result of the last filter
+    private int[] mRanks;
+    private int[] mHighlightStarts;
+    // matching shortcuts by index, and by rank then index
+    private int[] mMatches;
+    private int[] mRankedMatches;
+    private int mMatchCount;
+    private final int[] mRankStarts = new int[RANK_COUNT];
+
+    private char[] mFilter = new char[16];
+    private char[] mPreviousFilter = new char[16];
+    private int mFilterLength = -1;
+
+    public void invalidate() {
+        mShortcuts = null;
+        mSource = null;
+        mFilterLength = -1;
+    }
+
+    /**
+     * Forget the last filter, the next one will test all items.
+     */
+    public void reset() {
+        mFilterLength = -1;
+    }
+
+    /**
+     * Reorder items so that matching items come first, best matches first then by label.
+     *
+     * @return the number of matching items
+     */
+    public int filter(ArrayList<Item> items, String filter) {
+        if (mShortcuts == null || mSource != items || mSourceSize != items.size()) {
+            build(items);
+        }
+
+        // fold the filter and check whether it refines the previous one
+        char[] previous_filter = mFilter;
+        int previous_length = mFilterLength;
+        mFilter = mPreviousFilter;
+        mPreviousFilter = previous_filter;
+        int length = filter.length();
+        if (mFilter.length < length) {
+            mFilter = new char[length];
+        }
+        for (int i = 0; i < length; i++) {
+            mFilter[i] = fold(filter.charAt(i));
+        }
+        mFilterLength = length;
+        boolean refine = previous_length > 0 && length >= previous_length;
+        for (int i = 0; refine && i < previous_length; i++) {
+            refine = mFilter[i] == previous_filter[i];
+        }
+
+        // a match for the new filter is always a match for the previous one, whatever its rank
+        int n = mShortcuts.length;
+        int candidates = refine ? mMatchCount : n;
+        int count = 0;
+        for (int i = 0; i < candidates; i++) {
+            int e = refine ? mMatches[i] : i;
+            int rank = length == 0 ? NO_MATCH : match(e, mFilter, length);
+            mRanks[e] = rank;
+            if (rank != NO_MATCH) {
+                mMatches[count++] = e;
+            }
+        }
+        mMatchCount = count;
+
+        // stable counting sort on ranks, shortcuts being already sorted by label
+        Arrays.fill(mRankStarts, 0);
+        for (int i = 0; i < count; i++) {
+            mRankStarts[mRanks[mMatches[i]]]++;
+        }
+        for (int r = 0, start = 0; r < RANK_COUNT; r++) {
+            int c = mRankStarts[r];
+            mRankStarts[r] = start;
+            start += c;
+        }
+        for (int i = 0; i < count; i++) {
+            int e = mMatches[i];
+            mRankedMatches[mRankStarts[mRanks[e]]++] = e;
+        }
+
+        items.clear();
+        for (int i = 0; i < count; i++) {
+            items.add(mShortcuts[mRankedMatches[i]]);
+        }
+        for (int e = 0; e < n; e++) {
+            if (mRanks[e] == NO_MATCH) {
+                items.add(mShortcuts[e]);
+            }
+        }
+        for (Item item : mOthers) {
+            items.add(item);
+        }
+
+        return count;
+    }
+
+    /**
+     * @param position position of a matching item in the list, as ordered by the last call to filter
+     * @return the start of the matching part in the label, or -1 if the match is not contiguous
+     */
+    public int getHighlightStart(int position) {
+        return mHighlightStarts[mRankedMatches[position]];
+    }
+
+    private void build(ArrayList<Item> items) {
+        int l = items.size();
+        ArrayList<Shortcut> shortcuts = new ArrayList<>(l);
+        ArrayList<Item> others = new ArrayList<>();
+        for (int i = 0; i < l; i++) {
+            Item item = items.get(i);
+            if (item instanceof Shortcut) {
+                shortcuts.add((Shortcut) item);
+            } else {
+                others.add(item);
+            }
+        }
+
+        int n = shortcuts.size();
+        final CollationKey[] keys = new CollationKey[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = Utils.sItemNameCollator.getCollationKey(shortcuts.get(i).getLabel());
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return keys[i1].compareTo(keys[i2]);
+            }
+        });
+
+        mShortcuts = new Shortcut[n];
+        mLabels = new char[n][];
+        for (int i = 0; i < n; i++) {
+            Shortcut s = shortcuts.get(order[i]);
+            mShortcuts[i] = s;
+            String label = s.getLabel();
+            int ll = label.length();
+            char[] folded = new char[ll];
+            for (int j = 0; j < ll; j++) {
+                folded[j] = fold(label.charAt(j));
+            }
+            mLabels[i] = folded;
+        }
+        mOthers = others.toArray(new Item[0]);
+
+        mRanks = new int[n];
+        mHighlightStarts = new int[n];
+        mMatches = new int[n];
+        mRankedMatches = new int[n];
+        mMatchCount = 0;
+        mFilterLength = -1;
+
+        mSource = items;
+        mSourceSize = l;
+    }
+
+    private int match(int e, char[] filter, int length) {
+        char[] label = mLabels[e];
+        int ll = label.length;
+        mHighlightStarts[e] = -1;
+        if (length > ll) {
+            return NO_MATCH;
+        }
+
+        // first substring occurrence, and the first one at a word start
+        int first = -1;
+        for (int i = 0; i <= ll - length; i++) {
+            if (regionMatches(label, i, filter, length)) {
+                if (first == -1) {
+                    first = i;
+                }
+                if (i == 0 || isWordStart(label, i)) {
+                    mHighlightStarts[e] = i;
+                    return i == 0 ? RANK_PREFIX : RANK_WORD_PREFIX;
+                }
+            }
+        }
+
+        // each filter char is the first letter of a word, as in "gm" for "Google Maps"
+        int f = 0;
+        for (int i = 0; i < ll && f < length; i++) {
+            if (isWordStart(label, i) && label[i] == filter[f]) {
+                f++;
+            }
+        }
+        if (f == length) {
+            return RANK_INITIALS;
+        }
+
+        if (first != -1) {
+            mHighlightStarts[e] = first;
+            return RANK_CONTAINS;
+        }
+
+        f = 0;
+        for (int i = 0; i < ll && f < length; i++) {
+            if (label[i] == filter[f]) {
+                f++;
+            }
+        }
+        return f == length ? RANK_SUBSEQUENCE : NO_MATCH;
+    }
+
+    private static boolean regionMatches(char[] label, int offset, char[] filter, int length) {
+        for (int i = 0; i < length; i++) {
+            if (label[offset + i] != filter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordStart(char[] label, int i) {
+        return Character.isLetterOrDigit(label[i]) && (i == 0 || !Character.isLetterOrDigit(label[i - 1]));
+    }
+
+    // lower case and without diacritics, one char for one char so that positions in the label are kept
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        c = Character.toLowerCase(c);
+        String d = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        return d.length() > 0 ? d.charAt(0) : c;
+    }
+}
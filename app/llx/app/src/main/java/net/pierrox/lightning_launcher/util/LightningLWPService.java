@@ -51,6 +51,7 @@ import net.pierrox.lightning_launcher.api.ScreenIdentity;
 import net.pierrox.lightning_launcher.configuration.GlobalConfig;
 import net.pierrox.lightning_launcher.data.EventAction;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
 import net.pierrox.lightning_launcher.engine.LightningEngine;
 import net.pierrox.lightning_launcher.engine.Screen;
 import net.pierrox.lightning_launcher.views.EventFrameLayout;
@@ -373,8 +374,8 @@ public class LightningLWPService extends WallpaperService {
             }
 
             @Override
-            public void onPageModified(Page page) {
-                super.onPageModified(page);
+            public void onPageModified(Page page, PageChangeSet changes) {
+                super.onPageModified(page, changes);
 
                 if (page == mMainPage) {
                     mContentView.setDispatchEvent(page.config.lwpStdEvents);
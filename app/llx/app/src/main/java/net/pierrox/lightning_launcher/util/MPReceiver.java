@@ -74,6 +74,9 @@ public class MPReceiver extends BroadcastReceiver {
         }
         
         if(pkg_action!=null) {
+            // a refresh in progress would apply outdated results
+            AppDrawerRefresher.cancelRefresh();
+
 	        // the remote context can be null if the core app has been removed but not the setup app
 	        if(context!=null) {
 				switch(pkg_action) {
@@ -56,6 +56,7 @@ public class SnappingContext {
     public ItemLayout item_layout;
     private ArrayList<ItemView> snapped_items;
     private ArrayList<RectF> snapped_bounds;
+    private final ArrayList<View> candidates = new ArrayList<>();
 
     public SnappingContext(ItemView my_item_view, float touch_slop, int snap_what) {
         this.my_item_view = my_item_view;
@@ -99,9 +100,12 @@ public class SnappingContext {
         snapped_items.clear();
         snapped_bounds.clear();
 
+        // only consider items which may be visible on the screen
+        item_layout.getChildrenInRect(screen_bounds, candidates);
+
         // first pass to compute the minimum distance
-        for (int n = item_layout.getChildCount() - 1; n >= 0; n--) {
-            View v = item_layout.getChildAt(n);
+        for (int n = candidates.size() - 1; n >= 0; n--) {
+            View v = candidates.get(n);
             if (v instanceof ItemView) {
                 ItemView i = (ItemView) v;
                 if (i.isSelected() || i == my_item_view) continue;
@@ -117,8 +121,8 @@ public class SnappingContext {
         }
 
         // second pass to find item snapping with the minimum distance
-        for (int n = item_layout.getChildCount() - 1; n >= 0; n--) {
-            View v = item_layout.getChildAt(n);
+        for (int n = candidates.size() - 1; n >= 0; n--) {
+            View v = candidates.get(n);
             if (v instanceof ItemView) {
                 ItemView i = (ItemView) v;
                 if (i.isSelected() || i == my_item_view) continue;
@@ -136,6 +140,8 @@ public class SnappingContext {
             }
         }
 
+        candidates.clear();
+
         for (ItemView i : snapped_items) {
             i.setFocused(true);
         }
@@ -37,18 +37,42 @@ class AndroidClassLoader extends ClassLoader implements GeneratedClassLoader {
 
 
     public Class<?> defineClass(String name, byte[] data) {
-        JarOutputStream out = null;
         try {
-            out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(classFile)));
-            out.putNextEntry(new JarEntry(name.replace('.', '/') + ".class"));
-            out.write(data);
-            out.flush();
-            out.close();
-            Main.main(new String[]{"--output=" + dexFile.getPath(), classFile.getPath()});
+            writeDex(new Object[]{name, data}, dexFile);
             dx = DexFile.loadDex(dexFile.getPath(), odexOatFile.getPath(), 0);
             return dx.loadClass(name, parent);
         } catch (IOException e) {
             throw new FatalLoadingException(e);
+        } finally {
+            dexFile.delete();
+            odexOatFile.delete();
+        }
+    }
+
+    /**
+     * Translates a batch of classes into a single dex file, running dx only once for all of them.
+     *
+     * @param classes class names at even indexes, each followed by its java bytecode, as returned by
+     *                {@link org.mozilla.javascript.optimizer.ClassCompiler#compileToClassFiles(String, String, int, String)}
+     * @param dex     the dex jar to write, it is replaced atomically
+     */
+    void writeDex(Object[] classes, File dex) throws IOException {
+        File tmp = new File(dex.getPath() + ".tmp");
+        JarOutputStream out = null;
+        try {
+            out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(classFile)));
+            for (int i = 0; i < classes.length; i += 2) {
+                out.putNextEntry(new JarEntry(((String) classes[i]).replace('.', '/') + ".class"));
+                out.write((byte[]) classes[i + 1]);
+                out.closeEntry();
+            }
+            out.flush();
+            out.close();
+            out = null;
+            Main.main(new String[]{"--output=" + tmp.getPath(), classFile.getPath()});
+            if (!tmp.renameTo(dex)) {
+                throw new IOException("cannot rename " + tmp + " to " + dex);
+            }
         } finally {
             if (out != null) try {
                 out.close();
@@ -56,11 +80,19 @@ class AndroidClassLoader extends ClassLoader implements GeneratedClassLoader {
                 e1.printStackTrace();
             }
             classFile.delete();
-            dexFile.delete();
-            odexOatFile.delete();
+            tmp.delete();
         }
     }
 
+    /**
+     * Makes the classes of a dex file written by {@link #writeDex(Object[], File)} available
+     * through this loader. The dex file is kept, the optimized file is written next to it so
+     * that it can be reused too.
+     */
+    void loadDex(File dex) throws IOException {
+        dx = DexFile.loadDex(dex.getPath(), dex.getPath() + ".odex", 0);
+    }
+
     @Override
     public void linkClass(Class<?> aClass) {
         //doesn't make sense on android
@@ -2,6 +2,8 @@ package com.faendir.rhino_android;
 
 import net.pierrox.lightning_launcher.LLApp;
 import net.pierrox.lightning_launcher.script.ScriptExecutor;
+import net.pierrox.lightning_launcher.script.ScriptProfiler;
+import net.pierrox.lightning_launcher.script.ScriptWorker;
 
 import org.mozilla.javascript.Callable;
 import org.mozilla.javascript.Context;
@@ -21,12 +23,19 @@ class AndroidContextFactory extends ContextFactory {
         return new AndroidClassLoader(parent);
     }
 
+    @Override
+    protected void observeInstructionCount(Context cx, int instructionCount) {
+        ScriptProfiler.observeInstructionCount(cx, instructionCount);
+        ScriptWorker.observeInstructionCount(cx);
+    }
+
     @Override
     protected Object doTopCall(Callable callable, Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
         try {
             return super.doTopCall(callable, cx, scope, thisObj, args);
         } catch (Exception e) {
-            if(e instanceof ContinuationPending) {
+            if(e instanceof ContinuationPending || ScriptWorker.isWorkerContext(cx)) {
+                // workers report their own errors, not from the UI thread
                 throw e;
             }
 
@@ -0,0 +1,66 @@
+package com.faendir.rhino_android;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compiles scripts with the Rhino optimizer into a single dex file per script, and loads them back.
+ * Unlike classes defined on the fly through {@link AndroidClassLoader#defineClass(String, byte[])},
+ * which cost a full dx run per class, all classes of a script are translated at once and the
+ * resulting dex file can be kept on disk and loaded again after a restart.
+ */
+public final class DexScriptCompiler {
+    private DexScriptCompiler() {
+    }
+
+    /**
+     * Prepare compiler settings, from the thread owning the context.
+     */
+    public static CompilerEnvirons createCompilerEnvirons(Context cx) {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+        env.setOptimizationLevel(9);
+        return env;
+    }
+
+    /**
+     * Compile a script to a dex file. This is slow and should be done from a background thread.
+     *
+     * @param className name of the main class, must be the same when loading the script
+     */
+    public static void compile(CompilerEnvirons env, String source, String sourceName, String className, File dex) throws IOException {
+        Context cx = RhinoAndroidHelper.prepareContext();
+        try {
+            Object[] classes = new ClassCompiler(env).compileToClassFiles(source, sourceName, 0, className);
+            new AndroidClassLoader(cx.getApplicationClassLoader()).writeDex(classes, dex);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Load the main class of a script previously compiled with {@link #compile(CompilerEnvirons, String, String, String, File)}.
+     * Classes are defined in the application class loader: a dex file must be loaded only once.
+     *
+     * @return a class implementing {@link Script}, with a no-arg constructor
+     */
+    public static Class<?> load(Context cx, String className, File dex) throws IOException {
+        AndroidClassLoader loader = new AndroidClassLoader(cx.getApplicationClassLoader());
+        loader.loadDex(dex);
+        Class<?> cl;
+        try {
+            cl = loader.loadClass(className, true);
+        } catch (ClassNotFoundException e) {
+            cl = null;
+        }
+        if (cl == null || !Script.class.isAssignableFrom(cl)) {
+            throw new IOException("cannot load " + className + " from " + dex);
+        }
+        return cl;
+    }
+}
@@ -101,6 +101,7 @@ public class GlobalConfig extends JsonLoader {
     public boolean overlayDisplayHandles = false;
     public boolean overlayLaunchHide = true;
     public int lwpScreen = Page.NONE;
+    public boolean widgetPreviewWebp = false;
 
     public int getPageIndex(int p) {
         for (int i = 0; i < screensOrder.length; i++) {
@@ -0,0 +1,392 @@
+package net.pierrox.lightning_launcher.data;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import net.pierrox.lightning_launcher.LLApp;
+import net.pierrox.lightning_launcher.engine.LightningEngine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Build and synchronize app drawer shortcuts with launchable activities.
+ * Package manager queries and the scan of pages run on the calling thread. Labels and icons are
+ * resolved, and icons encoded, by a small pool of threads. All page modifications are then
+ * applied at once on the UI thread.
+ * A refresh in progress is restarted when a package event arrives (see cancelRefresh), so that
+ * its outdated results are never applied.
+ */
+public class AppDrawerRefresher {
+    private static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final Object sRefreshLock = new Object();
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+    private static ExecutorService sExecutor;
+
+    /**
+     * Abort the refresh in progress, if any. It will start over with up to date packages.
+     */
+    public static void cancelRefresh() {
+        sGeneration.incrementAndGet();
+    }
+
+    /**
+     * Create shortcuts for all launchable activities, sorted by name. Items are not added to the page.
+     */
+    public static ArrayList<Item> loadShortcuts(final Page app_drawer_page) {
+        final long now = System.currentTimeMillis();
+        Page.getAndCreateIconDir(app_drawer_page.getEngine().getBaseDir(), Page.APP_DRAWER_PAGE);
+        final PackageManager pm = LLApp.get().getPackageManager();
+        List<ResolveInfo> ris = queryLauncherActivities(pm);
+
+        ExecutorService executor = getExecutor();
+        ArrayList<Future<Shortcut>> futures = new ArrayList<>(ris.size());
+        int id = 1;
+        for (final ResolveInfo ri : ris) {
+            final int item_id = Page.composeItemId(Page.APP_DRAWER_PAGE, id++);
+            futures.add(executor.submit(new Callable<Shortcut>() {
+                @Override
+                public Shortcut call() {
+                    try {
+                        Shortcut s = createShortcut(pm, app_drawer_page, item_id, ri);
+                        try {
+                            PackageInfo pi = pm.getPackageInfo(ri.activityInfo.packageName, 0);
+                            s.mLastUpdateTime = pi.lastUpdateTime;
+                        } catch (PackageManager.NameNotFoundException e) {
+                            s.mLastUpdateTime = now;
+                        }
+                        s.getCustomIconFile().delete();
+                        return s;
+                    } catch (Exception e) {
+                        // skip this item
+                        return null;
+                    }
+                }
+            }));
+        }
+
+        ArrayList<Item> items = new ArrayList<>(futures.size());
+        for (Future<Shortcut> future : futures) {
+            Shortcut s = getResult(future);
+            if (s != null) {
+                items.add(s);
+            }
+        }
+
+        Collections.sort(items, Utils.sItemComparatorByNameAsc);
+
+        return items;
+    }
+
+    /**
+     * Update icons of existing shortcuts, remove shortcuts of uninstalled apps and duplicates, and
+     * add shortcuts for new apps in the app drawer. Blocks until changes have been applied on the
+     * thread of the handler.
+     * Refreshes from other threads are serialized. A refresh from the thread of the handler never
+     * waits for them: a refresh holding the lock may be waiting for this thread to apply its
+     * changes. It restarts them instead, they will start over with the changes applied here.
+     */
+    public static void refresh(LightningEngine engine, Handler handler) {
+        int generation;
+        if (Looper.myLooper() == handler.getLooper()) {
+            do {
+                generation = sGeneration.incrementAndGet();
+            } while (!refresh(engine, handler, generation));
+            return;
+        }
+
+        synchronized (sRefreshLock) {
+            do {
+                generation = sGeneration.get();
+            } while (!refresh(engine, handler, generation));
+        }
+    }
+
+    /**
+     * @return false if cancelled before changes have been applied
+     */
+    private static boolean refresh(LightningEngine engine, Handler handler, final int generation) {
+        final long now = System.currentTimeMillis();
+        final PackageManager pm = LLApp.get().getPackageManager();
+
+        List<ResolveInfo> ris = queryLauncherActivities(pm);
+        HashMap<String, ResolveInfo> all_component_names = new HashMap<>(ris.size());
+        for (ResolveInfo ri : ris) {
+            ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
+            all_component_names.put(component_name.flattenToShortString(), ri);
+        }
+
+        // find what needs to be updated, removed and added
+        final ArrayList<Shortcut> updated = new ArrayList<>();
+        final ArrayList<Item> removed = new ArrayList<>();
+        HashSet<String> my_component_names = new HashSet<>();
+        scanPage(engine, all_component_names, my_component_names, Page.APP_DRAWER_PAGE, updated, removed);
+
+        final Page app_drawer_page = engine.getOrLoadPage(Page.APP_DRAWER_PAGE);
+        gatherDuplicateShortcuts(app_drawer_page, new ArrayList<Shortcut>(), removed);
+
+        // resolve labels and icons in parallel
+        ExecutorService executor = getExecutor();
+        ArrayList<Future<?>> update_futures = new ArrayList<>(updated.size());
+        for (final Shortcut s : updated) {
+            final ResolveInfo ri = all_component_names.get(s.getIntent().getComponent().flattenToShortString());
+            update_futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (sGeneration.get() == generation) {
+                        saveIcon(pm, s, ri);
+                    }
+                }
+            }));
+        }
+        ArrayList<Future<Shortcut>> add_futures = new ArrayList<>();
+        for (final ResolveInfo ri : ris) {
+            ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
+            if (!my_component_names.contains(component_name.flattenToShortString())) {
+                final int id = app_drawer_page.findFreeItemId();
+                add_futures.add(executor.submit(new Callable<Shortcut>() {
+                    @Override
+                    public Shortcut call() throws Exception {
+                        if (sGeneration.get() != generation) {
+                            return null;
+                        }
+                        Shortcut s = createShortcut(pm, app_drawer_page, id, ri);
+                        s.mLastUpdateTime = now;
+                        return s;
+                    }
+                }));
+            }
+        }
+
+        for (Future<?> future : update_futures) {
+            getResult(future);
+        }
+        final ArrayList<Shortcut> added = new ArrayList<>(add_futures.size());
+        for (Future<Shortcut> future : add_futures) {
+            Shortcut s = getResult(future);
+            if (s != null) {
+                added.add(s);
+            }
+        }
+
+        if (sGeneration.get() != generation) {
+            discard(added);
+            return false;
+        }
+
+        // apply all changes at once
+        final boolean[] applied = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        Runnable apply = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // package events are received on this thread too
+                    if (sGeneration.get() != generation) {
+                        return;
+                    }
+                    for (Item item : removed) {
+                        Page page = item.getPage();
+                        // the same item may be both outdated and duplicated
+                        if (page.findItemById(item.getId()) == item) {
+                            page.removeItem(item, false);
+                        }
+                    }
+                    for (Shortcut s : updated) {
+                        s.notifyChanged();
+                    }
+                    for (Shortcut s : added) {
+                        int[] cell = Utils.findFreeCell(app_drawer_page);
+                        s.getCell().set(cell[0], cell[1], cell[0] + 1, cell[1] + 1);
+                        app_drawer_page.addItem(s);
+                    }
+                    applied[0] = true;
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        if (Looper.myLooper() == handler.getLooper()) {
+            apply.run();
+        } else {
+            handler.post(apply);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (!applied[0]) {
+            discard(added);
+        }
+
+        return applied[0];
+    }
+
+    private static void scanPage(LightningEngine engine, HashMap<String, ResolveInfo> all_component_names, HashSet<String> my_component_names, int p, ArrayList<Shortcut> updated, ArrayList<Item> removed) {
+        final Page page = engine.getOrLoadPage(p);
+
+        // fix duplicate item ids
+        HashSet<Integer> ids = new HashSet<Integer>();
+        for (Item i : page.items) {
+            int id = i.getId();
+            if (ids.contains(Integer.valueOf(id))) {
+                i.setId(page.findFreeItemId());
+            } else {
+                ids.add(Integer.valueOf(id));
+            }
+        }
+
+        for (int i = page.items.size() - 1; i >= 0; i--) {
+            Item item = page.items.get(i);
+            if (item.getClass() == Shortcut.class) {
+                Shortcut s = (Shortcut) item;
+                ComponentName cn = s.getIntent().getComponent();
+                if (cn != null) {
+                    String cns = cn.flattenToShortString();
+                    my_component_names.add(cns);
+                    if (all_component_names.containsKey(cns)) {
+                        updated.add(s);
+                    } else {
+                        removed.add(s);
+                    }
+                }
+            } else if (item.getClass() == Folder.class) {
+                scanPage(engine, all_component_names, my_component_names, ((Folder) item).getFolderPageId(), updated, removed);
+            }
+        }
+    }
+
+    private static void gatherDuplicateShortcuts(Page page, ArrayList<Shortcut> shortcuts, ArrayList<Item> removed) {
+        for (int i = page.items.size() - 1; i >= 0; i--) {
+            final Item item = page.items.get(i);
+            if (item instanceof Folder) {
+                Folder f = (Folder) item;
+                gatherDuplicateShortcuts(f.getOrLoadFolderPage(), shortcuts, removed);
+            } else if (item.getClass() == Shortcut.class) {
+                Shortcut s = (Shortcut) item;
+                ComponentName cn = s.getIntent().getComponent();
+                String label = s.getLabel();
+                if (cn != null) {
+                    boolean found = false;
+                    for (Shortcut e : shortcuts) {
+                        if (cn.compareTo(e.getIntent().getComponent()) == 0 && label.equals(e.getLabel())) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (found) {
+                        removed.add(item);
+                    } else {
+                        shortcuts.add(s);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Shortcut createShortcut(PackageManager pm, Page page, int id, ResolveInfo ri) throws PackageManager.NameNotFoundException {
+        ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
+        String label = ri.loadLabel(pm).toString();
+
+        Intent intent = new Intent();
+        intent.setComponent(component_name);
+        intent.setAction(Intent.ACTION_MAIN);
+
+        Shortcut s = new Shortcut(page);
+        // the cell is set when the item is added to the page
+        s.init(id, new Rect(0, 0, 1, 1), null, label, intent);
+
+        Resources rsrc = pm.getResourcesForActivity(component_name);
+        Bitmap icon = Utils.decodeScaledBitmapResource(rsrc, ri.getIconResource(), s.getStdIconSize());
+        if (icon != null) {
+            Utils.saveIconToFile(s.getDefaultIconFile(), icon);
+            icon.recycle();
+        }
+
+        return s;
+    }
+
+    private static void saveIcon(PackageManager pm, Shortcut s, ResolveInfo ri) {
+        try {
+            Resources rsrc = pm.getResourcesForActivity(s.getIntent().getComponent());
+            Bitmap icon = Utils.decodeScaledBitmapResource(rsrc, ri.getIconResource(), s.getStdIconSize());
+            if (icon != null) {
+                File icon_file = s.getDefaultIconFile();
+                Utils.saveIconToFile(icon_file, icon);
+                icon.recycle();
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    private static void discard(ArrayList<Shortcut> shortcuts) {
+        for (Shortcut s : shortcuts) {
+            s.getDefaultIconFile().delete();
+        }
+    }
+
+    private static List<ResolveInfo> queryLauncherActivities(PackageManager pm) {
+        Intent intent_filter = new Intent(Intent.ACTION_MAIN, null);
+        intent_filter.addCategory(Intent.CATEGORY_LAUNCHER);
+        return pm.queryIntentActivities(intent_filter, 0);
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // skip this item
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "LL-drawer-" + mCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
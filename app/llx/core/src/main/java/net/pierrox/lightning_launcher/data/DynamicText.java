@@ -26,6 +26,7 @@ import net.pierrox.lightning_launcher.R;
 import net.pierrox.lightning_launcher.configuration.DynamicTextConfig;
 import net.pierrox.lightning_launcher.configuration.JsonFields;
 import net.pierrox.lightning_launcher.configuration.ShortcutConfig;
+import net.pierrox.lightning_launcher.engine.TimeScheduler;
 import net.pierrox.lightning_launcher.views.item.ItemView;
 import net.pierrox.lightning_launcher.views.item.ShortcutView;
 
@@ -36,14 +37,14 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
-import java.util.Date;
 
 public class DynamicText extends Shortcut {
     private DynamicTextConfig mDynamicTextConfig;
 
     private boolean mCreated;
 
-    private SimpleDateFormat mDateFormat;
+    private String mDatePattern;
+    private int mDateGranularity;
 
     private DecimalFormat mCountFormat;
 
@@ -143,12 +144,14 @@ public class DynamicText extends Shortcut {
         final Context context = mPage.getEngine().getContext();
         switch (mDynamicTextConfig.source) {
             case DATE:
-                mHandler = new Handler();
+                mDatePattern = mDynamicTextConfig.dateFormat;
                 try {
-                    mDateFormat = new SimpleDateFormat(mDynamicTextConfig.dateFormat);
+                    // validate the pattern
+                    new SimpleDateFormat(mDatePattern);
                 } catch (IllegalArgumentException e) {
-                    mDateFormat = new SimpleDateFormat("'" + context.getString(R.string.dt_format_error) + "'");
+                    mDatePattern = "'" + context.getString(R.string.dt_format_error) + "'";
                 }
+                mDateGranularity = getDateGranularity(mDatePattern);
                 break;
 
             case STORAGE:
@@ -253,6 +256,9 @@ public class DynamicText extends Shortcut {
         if (!mCreated) return;
         switch (mDynamicTextConfig.source) {
             case DATE:
+                mPage.getEngine().getTimeScheduler().unregister(mTimeListener);
+                break;
+
             case STORAGE:
             case HEAP_FREE:
             case HEAP_MAX:
@@ -286,6 +292,10 @@ public class DynamicText extends Shortcut {
 //        Log.i("XXX", "DT resume "+mId);
         switch (mDynamicTextConfig.source) {
             case DATE:
+                updateText();
+                mPage.getEngine().getTimeScheduler().register(mTimeListener, mDateGranularity);
+                break;
+
             case STORAGE:
             case HEAP_FREE:
             case HEAP_MAX:
@@ -378,6 +388,27 @@ public class DynamicText extends Shortcut {
         }
     };
 
+    private final TimeScheduler.TimeListener mTimeListener = new TimeScheduler.TimeListener() {
+        @Override
+        public void onTimeTick(long now) {
+            updateText();
+        }
+    };
+
+    // seconds are needed only if the pattern displays them
+    private static int getDateGranularity(String pattern) {
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && (c == 's' || c == 'S')) {
+                return TimeScheduler.GRANULARITY_SECOND;
+            }
+        }
+        return TimeScheduler.GRANULARITY_MINUTE;
+    }
+
     private void setupMessagingCursor() {
         mCursor.registerContentObserver(mContentObserver);
         updateText();
@@ -389,10 +420,10 @@ public class DynamicText extends Shortcut {
 
         switch (mDynamicTextConfig.source) {
             case DATE:
-                if (mDateFormat == null) {
-                    mDateFormat = new SimpleDateFormat(DynamicTextConfig.DEFAULT_DATE_FORMAT);
+                if (mDatePattern == null) {
+                    mDatePattern = DynamicTextConfig.DEFAULT_DATE_FORMAT;
                 }
-                new_text = mDateFormat.format(new Date());
+                new_text = mPage.getEngine().getTimeScheduler().format(mDatePattern, System.currentTimeMillis());
                 break;
 
             case STORAGE:
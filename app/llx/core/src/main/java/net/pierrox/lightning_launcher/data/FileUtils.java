@@ -56,14 +56,25 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Write the string to a temporary file first, then replace the target file, so that the
+     * previous content is kept intact if the write fails or is interrupted.
+     */
     public static void saveStringToFile(String what, File out) throws IOException {
+        saveByteArrayToFile(what.getBytes(StandardCharsets.UTF_8), out);
+    }
+
+    public static void saveByteArrayToFile(byte[] what, File out) throws IOException {
+        out.getParentFile().mkdirs();
+        File tmp = getTempFile(out);
         FileOutputStream fos = null;
         try {
-            out.getParentFile().mkdirs();
-            fos = new FileOutputStream(out);
-            fos.write(what.getBytes(StandardCharsets.UTF_8));
+            fos = new FileOutputStream(tmp);
+            fos.write(what);
+            commitTempFile(fos, tmp, out);
+            fos = null;
         } catch (IOException e) {
-            out.delete();
+            tmp.delete();
             throw e;
         } finally {
             if (fos != null) try {
@@ -72,6 +83,22 @@ public class FileUtils {
         }
     }
 
+    public static File getTempFile(File out) {
+        return new File(out.getPath() + ".tmp");
+    }
+
+    /**
+     * Flush data to the storage, close the stream and atomically replace the target file with the temporary one.
+     */
+    public static void commitTempFile(FileOutputStream fos, File tmp, File out) throws IOException {
+        fos.flush();
+        fos.getFD().sync();
+        fos.close();
+        if (!tmp.renameTo(out)) {
+            throw new IOException("cannot rename " + tmp + " to " + out);
+        }
+    }
+
     public static JSONObject readJSONObjectFromFile(File json_file) {
         try {
             long t1 = BuildConfig.IS_BETA ? SystemClock.uptimeMillis() : 0;
@@ -150,10 +177,26 @@ public class FileUtils {
         return new File(base_dir, "statistics");
     }
 
+    public static File getStatisticsLogFile(File base_dir) {
+        return new File(base_dir, "statistics.log");
+    }
+
+    public static File getIconCacheDir(File base_dir) {
+        return new File(base_dir, "icon_cache");
+    }
+
+    public static File getScriptCacheDir(File base_dir) {
+        return new File(base_dir, "script_cache");
+    }
+
     public static File getPinnedAppShortcutsFile(File base_dir) {
         return new File(base_dir, "app_shortcuts");
     }
 
+    public static File getFolderOpenersFile(File base_dir) {
+        return new File(base_dir, "folder_openers");
+    }
+
     public static File getVariablesFile(File base_dir) {
         return new File(base_dir, "variables");
     }
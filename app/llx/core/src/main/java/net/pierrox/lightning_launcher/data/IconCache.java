@@ -0,0 +1,323 @@
+package net.pierrox.lightning_launcher.data;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Disk cache of the final, composed icons of a page, so that icons can be restored without
+ * decoding, normalizing and composing image files again.
+ * <p>
+ * Icons are packed as raw ARGB_8888 pixels in an atlas file, which is memory mapped for
+ * reading. An index file lists entries, one line per icon: "id signature offset width height".
+ * Both files are append-only: a new version of an icon is appended and the last index line for
+ * an id wins. The signature summarizes everything the composed icon depends on (source file,
+ * target size, density, configuration, icon pack layers): an entry with a different signature
+ * is stale. Files are compacted when they are opened and stale entries outweigh live ones.
+ * <p>
+ * An index line is written after the pixels it references, and entries pointing past the end
+ * of the atlas are ignored, hence an interrupted write only loses the last icon.
+ * This class is thread safe: icons are usually loaded from the graphics provider thread.
+ */
+public class IconCache {
+    private static final long MAX_ATLAS_SIZE = 32 * 1024 * 1024;
+    private static final long MIN_COMPACTION_WASTE = 1024 * 1024;
+
+    private final File mAtlasFile;
+    private final File mIndexFile;
+
+    private SparseArray<Entry> mEntries;
+    private long mAtlasLength;
+    private long mLiveLength;
+    private FileChannel mAtlasChannel;
+    private MappedByteBuffer mAtlasBuffer;
+
+    public IconCache(File atlas_file, File index_file) {
+        mAtlasFile = atlas_file;
+        mIndexFile = index_file;
+    }
+
+    /**
+     * @return a new bitmap holding the cached icon, or null if there is no up to date entry
+     */
+    public synchronized Bitmap get(int id, long signature) {
+        open();
+
+        Entry entry = mEntries.get(id);
+        if (entry == null || entry.signature != signature) {
+            return null;
+        }
+
+        try {
+            long end = entry.offset + entry.getByteCount();
+            if (mAtlasBuffer == null || mAtlasBuffer.capacity() < end) {
+                // entries have been appended since the atlas has been mapped
+                mAtlasBuffer = mAtlasChannel.map(FileChannel.MapMode.READ_ONLY, 0, mAtlasLength);
+            }
+            ByteBuffer pixels = mAtlasBuffer.duplicate();
+            pixels.position((int) entry.offset);
+            pixels.limit((int) end);
+            Bitmap bitmap = Bitmap.createBitmap(entry.width, entry.height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(pixels);
+            return bitmap;
+        } catch (Throwable e) {
+            // catches IOException and OOM Error
+            return null;
+        }
+    }
+
+    /**
+     * Store the icon for this item, replacing any previous version.
+     */
+    public synchronized void put(int id, long signature, Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+
+        open();
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int byte_count = width * height * 4;
+        if (mAtlasLength + byte_count > MAX_ATLAS_SIZE) {
+            return;
+        }
+
+        FileOutputStream fos = null;
+        try {
+            ByteBuffer pixels = ByteBuffer.allocate(byte_count);
+            bitmap.copyPixelsToBuffer(pixels);
+
+            Entry entry = new Entry(signature, mAtlasLength, width, height);
+            fos = new FileOutputStream(mAtlasFile, true);
+            fos.write(pixels.array(), 0, byte_count);
+            fos.close();
+            fos = new FileOutputStream(mIndexFile, true);
+            fos.write(entry.toLine(id).getBytes(StandardCharsets.UTF_8));
+
+            Entry old = mEntries.get(id);
+            if (old != null) {
+                mLiveLength -= old.getByteCount();
+            }
+            mEntries.put(id, entry);
+            mAtlasLength += byte_count;
+            mLiveLength += byte_count;
+        } catch (Throwable e) {
+            // catches IOException and OOM Error, start again from scratch
+            Log.i("LL", "cannot write icon cache " + mAtlasFile + ": " + e);
+            clear();
+        } finally {
+            if (fos != null) try {
+                fos.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    /**
+     * Forget the icon of this item.
+     */
+    public synchronized void remove(int id) {
+        if (mEntries != null) {
+            Entry old = mEntries.get(id);
+            if (old != null) {
+                // the index is not rewritten, the stale entry will be ignored because of its signature
+                mEntries.remove(id);
+                mLiveLength -= old.getByteCount();
+            }
+        }
+    }
+
+    /**
+     * Forget all icons, for instance because an icon pack has been applied.
+     */
+    public synchronized void clear() {
+        close();
+        mAtlasFile.delete();
+        mIndexFile.delete();
+    }
+
+    /**
+     * Release the mapping and the file handle, the cache will be opened again on next use.
+     */
+    public synchronized void close() {
+        if (mAtlasChannel != null) try {
+            mAtlasChannel.close();
+        } catch (IOException e) {
+            // pass
+        }
+        mAtlasChannel = null;
+        mAtlasBuffer = null;
+        mEntries = null;
+    }
+
+    private void open() {
+        if (mEntries != null) {
+            return;
+        }
+
+        mEntries = new SparseArray<>();
+        mAtlasLength = mAtlasFile.length();
+        mLiveLength = 0;
+        readIndex();
+
+        if (mAtlasLength - mLiveLength > Math.max(MIN_COMPACTION_WASTE, mLiveLength)) {
+            compact();
+        }
+
+        try {
+            mAtlasFile.getParentFile().mkdirs();
+            mAtlasChannel = new RandomAccessFile(mAtlasFile, "rw").getChannel();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void readIndex() {
+        if (!mIndexFile.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mIndexFile), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(" ");
+                if (tokens.length != 5) {
+                    // truncated write
+                    continue;
+                }
+                try {
+                    int id = Integer.parseInt(tokens[0]);
+                    Entry entry = new Entry(Long.parseLong(tokens[1]), Long.parseLong(tokens[2]), Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+                    if (entry.offset + entry.getByteCount() > mAtlasLength) {
+                        // pixels not fully written
+                        continue;
+                    }
+                    Entry old = mEntries.get(id);
+                    if (old != null) {
+                        mLiveLength -= old.getByteCount();
+                    }
+                    mEntries.put(id, entry);
+                    mLiveLength += entry.getByteCount();
+                } catch (NumberFormatException e) {
+                    // pass, corrupted line
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    private void compact() {
+        File atlas_tmp = FileUtils.getTempFile(mAtlasFile);
+        File index_tmp = FileUtils.getTempFile(mIndexFile);
+        RandomAccessFile in = null;
+        FileOutputStream atlas_out = null;
+        FileOutputStream index_out = null;
+        try {
+            in = new RandomAccessFile(mAtlasFile, "r");
+            atlas_out = new FileOutputStream(atlas_tmp);
+            StringBuilder index = new StringBuilder();
+            SparseArray<Entry> entries = new SparseArray<>(mEntries.size());
+            long offset = 0;
+            byte[] buffer = null;
+            for (int i = 0, l = mEntries.size(); i < l; i++) {
+                Entry entry = mEntries.valueAt(i);
+                int byte_count = entry.getByteCount();
+                if (buffer == null || buffer.length < byte_count) {
+                    buffer = new byte[byte_count];
+                }
+                in.seek(entry.offset);
+                in.readFully(buffer, 0, byte_count);
+                atlas_out.write(buffer, 0, byte_count);
+                Entry moved = new Entry(entry.signature, offset, entry.width, entry.height);
+                entries.put(mEntries.keyAt(i), moved);
+                index.append(moved.toLine(mEntries.keyAt(i)));
+                offset += byte_count;
+            }
+            // the old index must not reference the compacted atlas if the process dies before
+            // the new index is written: offsets have changed but signatures have not
+            mIndexFile.delete();
+            FileUtils.commitTempFile(atlas_out, atlas_tmp, mAtlasFile);
+            atlas_out = null;
+
+            index_out = new FileOutputStream(index_tmp);
+            index_out.write(index.toString().getBytes(StandardCharsets.UTF_8));
+            FileUtils.commitTempFile(index_out, index_tmp, mIndexFile);
+            index_out = null;
+
+            mEntries = entries;
+            mAtlasLength = offset;
+            mLiveLength = offset;
+        } catch (Throwable e) {
+            // catches IOException and OOM Error
+            Log.i("LL", "cannot compact icon cache " + mAtlasFile + ": " + e);
+            mEntries.clear();
+            mAtlasFile.delete();
+            mIndexFile.delete();
+            mAtlasLength = 0;
+            mLiveLength = 0;
+        } finally {
+            if (in != null) try {
+                in.close();
+            } catch (IOException e) {
+                // pass
+            }
+            if (atlas_out != null) try {
+                atlas_out.close();
+            } catch (IOException e) {
+                // pass
+            }
+            if (index_out != null) try {
+                index_out.close();
+            } catch (IOException e) {
+                // pass
+            }
+            atlas_tmp.delete();
+            index_tmp.delete();
+        }
+    }
+
+    private static class Entry {
+        final long signature;
+        final long offset;
+        final int width;
+        final int height;
+
+        Entry(long signature, long offset, int width, int height) {
+            this.signature = signature;
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+        }
+
+        int getByteCount() {
+            return width * height * 4;
+        }
+
+        String toLine(int id) {
+            return id + " " + signature + " " + offset + " " + width + " " + height + "\n";
+        }
+    }
+}
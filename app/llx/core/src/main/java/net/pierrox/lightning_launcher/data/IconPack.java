@@ -319,6 +319,7 @@ public class IconPack {
 
     private static void doApplyIconPackPostExecute(Page page, int item_id) {
         if (item_id == Item.NO_ID) {
+            page.getIconCache().clear();
             page.save();
             page.reload();
         } else {
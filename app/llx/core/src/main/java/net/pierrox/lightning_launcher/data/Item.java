@@ -43,7 +43,7 @@ public abstract class Item implements ItemConfigStylable {
     private static final RectF mTempRectF = new RectF();
     private static String[] sItemNames;
     // rather a hack: saved here to ease sorting of items
-    public int mLaunchCount;
+    public double mLaunchScore;
     public long mLastUpdateTime;
     protected Page mPage;
     protected int mId;
@@ -195,6 +195,9 @@ public abstract class Item implements ItemConfigStylable {
 
     public void setId(int id) {
         mId = id;
+        if (mPage != null) {
+            mPage.invalidateItemIndex();
+        }
     }
 
     public String getName() {
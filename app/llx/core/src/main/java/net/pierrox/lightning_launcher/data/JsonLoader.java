@@ -13,9 +13,66 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 public class JsonLoader {
+    private static final int KIND_OTHER = 0;
+    private static final int KIND_BOOLEAN = 1;
+    private static final int KIND_INT = 2;
+    private static final int KIND_LONG = 3;
+    private static final int KIND_FLOAT = 4;
+    private static final int KIND_INT_ARRAY = 5;
+    private static final int KIND_STRING = 6;
+    private static final int KIND_STRING_ARRAY = 7;
+    private static final int KIND_EVENT_ACTION = 8;
+    private static final int KIND_BINDINGS = 9;
+    private static final int KIND_HASH_MAP = 10;
+    private static final int KIND_ENUM = 11;
+    private static final int KIND_JSON_LOADER = 12;
+
+    private static final HashMap<Class<?>, FieldSpec[]> sSchemas = new HashMap<>();
+    private static final HashMap<Class<?>, Object> sDefaults = new HashMap<>();
+
+    /**
+     * Return the serializable fields of a class, computed once and cached. Final fields are excluded.
+     */
+    private static FieldSpec[] getSchema(Class<?> cls) {
+        synchronized (sSchemas) {
+            FieldSpec[] schema = sSchemas.get(cls);
+            if (schema == null) {
+                ArrayList<FieldSpec> specs = new ArrayList<>();
+                for (Field f : cls.getFields()) {
+                    if (Modifier.isFinal(f.getModifiers())) continue;
+                    specs.add(new FieldSpec(f));
+                }
+                schema = specs.toArray(new FieldSpec[0]);
+                sSchemas.put(cls, schema);
+            }
+            return schema;
+        }
+    }
+
+    /**
+     * Return a shared instance of a class built with its default constructor, to be used as the
+     * reference when serializing only non default values. This instance must never be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getDefaults(Class<T> cls) {
+        synchronized (sDefaults) {
+            Object d = sDefaults.get(cls);
+            if (d == null) {
+                try {
+                    d = cls.newInstance();
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("cannot instantiate " + cls, e);
+                }
+                sDefaults.put(cls, d);
+            }
+            return (T) d;
+        }
+    }
+
     /**
      * Specialized for configuration objects, not a multi-purpose tool.
      */
@@ -31,83 +88,90 @@ public class JsonLoader {
      * Specialized for configuration objects, not a multi-purpose tool.
      */
     public static void toJSONObject(JSONObject json_object, Object o, Object default_value) {
-        for (Field f : o.getClass().getFields()) {
-            if (Modifier.isFinal(f.getModifiers())) continue;
-
+        for (FieldSpec spec : getSchema(o.getClass())) {
+            Field f = spec.field;
             if (default_value != null) {
                 try {
-                    Object f_o = f.get(o);
-                    Object f_do = f.get(default_value);
-                    if (f_o == null && f_do == null) continue;
-                    if (f_o != null && f_o.equals(f_do)) continue;
+                    if (spec.isDefault(o, default_value)) continue;
                 } catch (Exception e1) {
                     e1.printStackTrace();
                 }
             }
 
-            String name = f.getName();
+            String name = spec.name;
 
             try {
-                Class<?> cls = f.getType();
-                if (cls == boolean.class) {
-                    json_object.put(name, f.getBoolean(o));
-                } else if (cls == int.class) {
-                    json_object.put(name, f.getInt(o));
-                } else if (cls == long.class) {
-                    json_object.put(name, f.getLong(o));
-                } else if (cls == int[].class) {
-                    int[] ai = (int[]) f.get(o);
-                    if (ai != null) {
-                        JSONArray jai = new JSONArray();
-                        for (int i : ai) {
-                            jai.put(i);
+                switch (spec.kind) {
+                    case KIND_BOOLEAN:
+                        json_object.put(name, f.getBoolean(o));
+                        break;
+                    case KIND_INT:
+                        json_object.put(name, f.getInt(o));
+                        break;
+                    case KIND_LONG:
+                        json_object.put(name, f.getLong(o));
+                        break;
+                    case KIND_INT_ARRAY:
+                        int[] ai = (int[]) f.get(o);
+                        if (ai != null) {
+                            JSONArray jai = new JSONArray();
+                            for (int i : ai) {
+                                jai.put(i);
+                            }
+                            json_object.put(name, jai);
                         }
-                        json_object.put(name, jai);
-                    }
-                } else if (cls == float.class) {
-                    json_object.put(name, f.getFloat(o));
-                } else if (cls == String.class) {
-                    json_object.put(name, f.get(o));
-                } else if (cls == String[].class) {
-                    String[] as = (String[]) f.get(o);
-                    if (as != null) {
-                        JSONArray jas = new JSONArray();
-                        for (String s : as) {
-                            jas.put(s);
+                        break;
+                    case KIND_FLOAT:
+                        json_object.put(name, f.getFloat(o));
+                        break;
+                    case KIND_STRING:
+                        json_object.put(name, f.get(o));
+                        break;
+                    case KIND_STRING_ARRAY:
+                        String[] as = (String[]) f.get(o);
+                        if (as != null) {
+                            JSONArray jas = new JSONArray();
+                            for (String s : as) {
+                                jas.put(s);
+                            }
+                            json_object.put(name, jas);
                         }
-                        json_object.put(name, jas);
-                    }
-                } else if (cls == EventAction.class) {
-                    EventAction ea = (EventAction) f.get(o);
-                    if (ea != null && ea.action != GlobalConfig.UNSET) {
-                        JSONObject j_ea = new JSONObject();
-                        j_ea.put("a", ea.action);
-                        j_ea.put("d", ea.data);
-                        if (ea.next != null) {
-                            j_ea.put("n", toJSONObject(ea.next, null));
+                        break;
+                    case KIND_EVENT_ACTION:
+                        EventAction ea = (EventAction) f.get(o);
+                        if (ea != null && ea.action != GlobalConfig.UNSET) {
+                            JSONObject j_ea = new JSONObject();
+                            j_ea.put("a", ea.action);
+                            j_ea.put("d", ea.data);
+                            if (ea.next != null) {
+                                j_ea.put("n", toJSONObject(ea.next, null));
+                            }
+                            json_object.put(name, j_ea);
                         }
-                        json_object.put(name, j_ea);
-                    }
-                } else if (cls == Binding[].class) {
-                    Binding[] bindings = (Binding[]) f.get(o);
-                    if (bindings != null) {
-                        JSONArray jbindings = new JSONArray();
-                        for (Binding binding : bindings) {
-                            JSONObject j = new JSONObject();
-                            j.put("t", binding.target);
-                            j.put("f", binding.formula);
-                            j.put("e", binding.enabled);
-                            jbindings.put(j);
+                        break;
+                    case KIND_BINDINGS:
+                        Binding[] bindings = (Binding[]) f.get(o);
+                        if (bindings != null) {
+                            JSONArray jbindings = new JSONArray();
+                            for (Binding binding : bindings) {
+                                JSONObject j = new JSONObject();
+                                j.put("t", binding.target);
+                                j.put("f", binding.formula);
+                                j.put("e", binding.enabled);
+                                jbindings.put(j);
+                            }
+                            json_object.put(name, jbindings);
                         }
-                        json_object.put(name, jbindings);
-                    }
-                } else if (cls == HashMap.class) {
-                    HashMap m = (HashMap) f.get(o);
-                    if (m != null) {
-                        json_object.put(name, new JSONObject((HashMap) f.get(o)));
-                    }
-                } else if (cls.isEnum()) {
-                    json_object.put(name, f.get(o).toString());
+                        break;
+                    case KIND_HASH_MAP:
+                        HashMap m = (HashMap) f.get(o);
+                        if (m != null) {
+                            json_object.put(name, new JSONObject(m));
+                        }
+                        break;
+                    case KIND_ENUM:
+                        json_object.put(name, f.get(o).toString());
+                        break;
                 }
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
@@ -122,109 +186,127 @@ public class JsonLoader {
         if (d == null) {
             d = thiz;
         }
-        for (Field f : thiz.getClass().getFields()) {
-            if (Modifier.isFinal(f.getModifiers())) continue;
-            String name = f.getName();
+        for (FieldSpec spec : getSchema(thiz.getClass())) {
+            Field f = spec.field;
+            String name = spec.name;
             try {
-
-                Class<?> cls = f.getType();
-                if (cls == boolean.class) {
-                    f.setBoolean(thiz, json.optBoolean(name, f.getBoolean(d)));
-                } else if (cls == int.class) {
-                    f.setInt(thiz, json.optInt(name, f.getInt(d)));
-                } else if (cls == int[].class) {
-                    JSONArray a = json.optJSONArray(name);
-                    if (a == null) {
-                        f.set(thiz, null);
-                    } else {
-                        int n = a.length();
-                        int[] ai = new int[n];
-                        for (int i = 0; i < n; i++) {
-                            ai[i] = a.getInt(i);
+                switch (spec.kind) {
+                    case KIND_BOOLEAN:
+                        f.setBoolean(thiz, json.optBoolean(name, f.getBoolean(d)));
+                        break;
+                    case KIND_INT:
+                        f.setInt(thiz, json.optInt(name, f.getInt(d)));
+                        break;
+                    case KIND_INT_ARRAY: {
+                        JSONArray a = json.optJSONArray(name);
+                        if (a == null) {
+                            f.set(thiz, null);
+                        } else {
+                            int n = a.length();
+                            int[] ai = new int[n];
+                            for (int i = 0; i < n; i++) {
+                                ai[i] = a.getInt(i);
+                            }
+                            f.set(thiz, ai);
                         }
-                        f.set(thiz, ai);
+                        break;
                     }
-                } else if (cls == float.class) {
-                    f.setFloat(thiz, (float) json.optDouble(name, f.getDouble(d)));
-                } else if (cls == long.class) {
-                    f.setLong(thiz, json.optLong(name, f.getLong(d)));
-                } else if (cls == String.class) {
-                    f.set(thiz, json.optString(name, (String) f.get(d)));
-                } else if (cls == String[].class) {
-                    JSONArray a = json.optJSONArray(name);
-                    if (a == null) {
-                        f.set(thiz, null);
-                    } else {
-                        int n = a.length();
-                        String[] as = new String[n];
-                        for (int i = 0; i < n; i++) {
-                            as[i] = a.getString(i);
+                    case KIND_FLOAT:
+                        f.setFloat(thiz, (float) json.optDouble(name, f.getDouble(d)));
+                        break;
+                    case KIND_LONG:
+                        f.setLong(thiz, json.optLong(name, f.getLong(d)));
+                        break;
+                    case KIND_STRING:
+                        f.set(thiz, json.optString(name, (String) f.get(d)));
+                        break;
+                    case KIND_STRING_ARRAY: {
+                        JSONArray a = json.optJSONArray(name);
+                        if (a == null) {
+                            f.set(thiz, null);
+                        } else {
+                            int n = a.length();
+                            String[] as = new String[n];
+                            for (int i = 0; i < n; i++) {
+                                as[i] = a.getString(i);
+                            }
+                            f.set(thiz, as);
                         }
-                        f.set(thiz, as);
+                        break;
                     }
-                } else if (cls.isEnum()) {
-                    String enum_string = json.optString(name, null);
-                    if (enum_string != null) {
-                        f.set(thiz, Enum.valueOf((Class<Enum>) cls, enum_string));
-                    } else {
-                        f.set(thiz, f.get(d));
+                    case KIND_ENUM: {
+                        String enum_string = json.optString(name, null);
+                        if (enum_string != null) {
+                            f.set(thiz, Enum.valueOf((Class<Enum>) spec.type, enum_string));
+                        } else {
+                            f.set(thiz, f.get(d));
+                        }
+                        break;
                     }
-                } else if (cls == EventAction.class) {
-                    EventAction ea;
-                    if (json.has(name)) {
-                        try {
-                            JSONObject j_ea = json.getJSONObject(name);
-                            JSONObject n = j_ea.optJSONObject("n");
-                            EventAction next = null;
-                            if (n != null) {
-                                next = new EventAction();
-                                loadFieldsFromJSONObject(next, n, null);
+                    case KIND_EVENT_ACTION: {
+                        EventAction ea;
+                        if (json.has(name)) {
+                            try {
+                                JSONObject j_ea = json.getJSONObject(name);
+                                JSONObject n = j_ea.optJSONObject("n");
+                                EventAction next = null;
+                                if (n != null) {
+                                    next = new EventAction();
+                                    loadFieldsFromJSONObject(next, n, null);
+                                }
+                                ea = new EventAction(j_ea.getInt("a"), j_ea.optString("d", null), next);
+                            } catch (JSONException e) {
+                                // compatibility with older version
+                                String data = json.optString(name + "Data", null);
+                                ea = new EventAction(json.getInt(name), data);
                             }
-                            ea = new EventAction(j_ea.getInt("a"), j_ea.optString("d", null), next);
-                        } catch (JSONException e) {
-                            // compatibility with older version
-                            String data = json.optString(name + "Data", null);
-                            ea = new EventAction(json.getInt(name), data);
+                        } else {
+                            EventAction d_ea = (EventAction) f.get(d);
+                            ea = d_ea;
                         }
-                    } else {
-                        EventAction d_ea = (EventAction) f.get(d);
-                        ea = d_ea;
+                        f.set(thiz, ea);
+                        break;
                     }
-                    f.set(thiz, ea);
-                } else if (cls == Binding[].class) {
-                    JSONArray a = json.optJSONArray(name);
-                    if (a == null) {
-                        f.set(thiz, null);
-                    } else {
-                        int n = a.length();
-                        Binding[] bindings;
-                        if (n == 0) {
-                            bindings = null;
+                    case KIND_BINDINGS: {
+                        JSONArray a = json.optJSONArray(name);
+                        if (a == null) {
+                            f.set(thiz, null);
                         } else {
-                            bindings = new Binding[n];
-                            for (int i = 0; i < n; i++) {
-                                JSONObject o = a.getJSONObject(i);
-                                Binding b = new Binding(o.getString("t"), o.getString("f"), o.getBoolean("e"));
-                                bindings[i] = b;
+                            int n = a.length();
+                            Binding[] bindings;
+                            if (n == 0) {
+                                bindings = null;
+                            } else {
+                                bindings = new Binding[n];
+                                for (int i = 0; i < n; i++) {
+                                    JSONObject o = a.getJSONObject(i);
+                                    Binding b = new Binding(o.getString("t"), o.getString("f"), o.getBoolean("e"));
+                                    bindings[i] = b;
+                                }
                             }
+                            f.set(thiz, bindings);
                         }
-                        f.set(thiz, bindings);
+                        break;
                     }
-                } else if (cls == HashMap.class) {
-                    JSONObject o = json.optJSONObject(name);
-                    if (o != null) {
-                        f.set(thiz, Utils.jsonObjectToHashMap(o));
-                    } else {
-                        f.set(thiz, f.get(d));
+                    case KIND_HASH_MAP: {
+                        JSONObject o = json.optJSONObject(name);
+                        if (o != null) {
+                            f.set(thiz, Utils.jsonObjectToHashMap(o));
+                        } else {
+                            f.set(thiz, f.get(d));
+                        }
+                        break;
                     }
-                } else if (cls.getSuperclass() == JsonLoader.class) {
-                    JsonLoader j = (JsonLoader) cls.newInstance();
-                    JSONObject o2 = json.optJSONObject(name);
-                    if (o2 == null) {
-                        o2 = new JSONObject();
+                    case KIND_JSON_LOADER: {
+                        JsonLoader j = (JsonLoader) spec.type.newInstance();
+                        JSONObject o2 = json.optJSONObject(name);
+                        if (o2 == null) {
+                            o2 = new JSONObject();
+                        }
+                        j.loadFieldsFromJSONObject(o2, f.get(d));
+                        f.set(thiz, j);
+                        break;
                     }
-                    j.loadFieldsFromJSONObject(o2, f.get(d));
-                    f.set(thiz, j);
                 }
             } catch (Exception e) {
                 Log.i("LL", "bad field " + name);
@@ -278,4 +360,53 @@ public class JsonLoader {
     public String toString() {
         return JsonLoader.toJSONObject(this, null).toString();
     }
+
+    private static final class FieldSpec {
+        final Field field;
+        final String name;
+        final Class<?> type;
+        final int kind;
+
+        FieldSpec(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+
+            Class<?> cls = type;
+            if (cls == boolean.class) kind = KIND_BOOLEAN;
+            else if (cls == int.class) kind = KIND_INT;
+            else if (cls == long.class) kind = KIND_LONG;
+            else if (cls == float.class) kind = KIND_FLOAT;
+            else if (cls == int[].class) kind = KIND_INT_ARRAY;
+            else if (cls == String.class) kind = KIND_STRING;
+            else if (cls == String[].class) kind = KIND_STRING_ARRAY;
+            else if (cls == EventAction.class) kind = KIND_EVENT_ACTION;
+            else if (cls == Binding[].class) kind = KIND_BINDINGS;
+            else if (cls == HashMap.class) kind = KIND_HASH_MAP;
+            else if (cls.isEnum()) kind = KIND_ENUM;
+            else if (cls.getSuperclass() == JsonLoader.class) kind = KIND_JSON_LOADER;
+            else kind = KIND_OTHER;
+        }
+
+        /**
+         * Compare the field values of two objects without boxing primitives.
+         */
+        boolean isDefault(Object o, Object d) throws IllegalAccessException {
+            switch (kind) {
+                case KIND_BOOLEAN:
+                    return field.getBoolean(o) == field.getBoolean(d);
+                case KIND_INT:
+                    return field.getInt(o) == field.getInt(d);
+                case KIND_LONG:
+                    return field.getLong(o) == field.getLong(d);
+                case KIND_FLOAT:
+                    return Float.floatToIntBits(field.getFloat(o)) == Float.floatToIntBits(field.getFloat(d));
+                default:
+                    Object f_o = field.get(o);
+                    Object f_do = field.get(d);
+                    if (f_o == null) return f_do == null;
+                    return f_o.equals(f_do);
+            }
+        }
+    }
 }
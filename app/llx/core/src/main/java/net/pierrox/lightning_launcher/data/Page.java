@@ -1,34 +1,33 @@
 package net.pierrox.lightning_launcher.data;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
 import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import net.pierrox.lightning_launcher.BuildConfig;
 import net.pierrox.lightning_launcher.configuration.FolderConfig;
 import net.pierrox.lightning_launcher.configuration.FolderConfigStylable;
 import net.pierrox.lightning_launcher.configuration.ItemConfig;
 import net.pierrox.lightning_launcher.configuration.ItemConfigStylable;
-import net.pierrox.lightning_launcher.configuration.JsonFields;
 import net.pierrox.lightning_launcher.configuration.PageConfig;
 import net.pierrox.lightning_launcher.configuration.ShortcutConfig;
 import net.pierrox.lightning_launcher.configuration.ShortcutConfigStylable;
 import net.pierrox.lightning_launcher.engine.LightningEngine;
+import net.pierrox.lightning_launcher.engine.PersistenceExecutor;
 import net.pierrox.lightning_launcher.views.ItemLayout;
+import net.pierrox.lightning_launcher.views.WidgetPreviewCapturer;
 import net.pierrox.lightning_launcher.views.item.ItemView;
 import net.pierrox.lightning_launcher.views.item.WidgetView;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 
 public class Page implements Item.OnItemEventListener, ItemConfigStylable, ShortcutConfigStylable, FolderConfigStylable {
 
@@ -71,6 +70,16 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
     private float mCurrentViewCellHeight;
     private int mResumeCount;
     private boolean mIsBeingRemoved; // prevent endless recursion
+    private PageItemsStore mItemsStore;
+    private IconCache mIconCache;
+
+    // item id index, rebuilt when items have been modified without going through this class
+    private final Object mItemIndexLock = new Object();
+    private final SparseArray<Item> mItemsById = new SparseArray<>();
+    private ArrayList<Item> mIndexedItems;
+    private int mIndexedCount;
+    private int mMaxItemId;
+    private int mLastAllocatedItemId;
 
     public Page(LightningEngine lightningEngine, int id) {
         mLightningEngine = lightningEngine;
@@ -122,6 +131,18 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         return new File(getPageDir(base_dir, id), "items");
     }
 
+    public static File getIconAtlasFile(File base_dir, int id) {
+        return new File(FileUtils.getIconCacheDir(base_dir), id + ".atlas");
+    }
+
+    public static File getIconAtlasIndexFile(File base_dir, int id) {
+        return new File(FileUtils.getIconCacheDir(base_dir), id + ".idx");
+    }
+
+    public static File getItemsJournalFile(File base_dir, int id) {
+        return new File(getPageDir(base_dir, id), "items.journal");
+    }
+
     public static File getPageIconFile(File base_dir, int id) {
         return new File(getPageDir(base_dir, id), "i");
     }
@@ -214,13 +235,10 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
 
         long t1 = BuildConfig.IS_BETA ? SystemClock.uptimeMillis() : 0;
 
-        loadConfig();
+        // do not read files while they are being written
+        mLightningEngine.getPersistenceExecutor().flush();
 
-        if (isFolder(id)) {
-            // use the default folder config from the first home page, which is not perfect but better to have multiple folder config per folder
-            Page home = mLightningEngine.getOrLoadPage(FIRST_DASHBOARD_PAGE);
-            config.defaultFolderConfig = home.config.defaultFolderConfig;
-        }
+        loadPageConfig();
 
         loadItems();
 
@@ -243,6 +261,11 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
             mListener.onPageItemDestroyed(item);
             item.onDestroy();
         }
+        synchronized (this) {
+            if (mIconCache != null) {
+                mIconCache.close();
+            }
+        }
     }
 
     public void remove() {
@@ -256,6 +279,7 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
             mListener.onPageRemoved(this);
 
             getPageIconFile().delete();
+            getIconCache().clear();
             Utils.deleteDirectory(getPageDir(), true);
 
             mIsBeingRemoved = false;
@@ -274,28 +298,76 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         this.modified = true;
     }
 
+    /**
+     * Save the page and wait until data is written.
+     */
     public void save() {
+        saveAsync();
+        mLightningEngine.getPersistenceExecutor().flush();
+    }
+
+    /**
+     * Capture the page state now and write it in the background.
+     */
+    public void saveAsync() {
         if (modified && id != Page.NONE) {
-            saveConfig();
-            saveItems();
+            saveConfigAsync();
+            saveItemsAsync();
             modified = false;
         }
     }
 
+    /**
+     * Ids are allocated monotonically: an id is not given twice during the life of this page,
+     * even if the item using it has been removed.
+     */
     public int findFreeItemId() {
         // linked with Utils.getPageForItemId
-        int max = 0;
-        for (Item i : items) {
-            if (i.getId() > max) max = i.getId();
+        synchronized (mItemIndexLock) {
+            checkItemIndex();
+            int max = Math.max(mMaxItemId, mLastAllocatedItemId);
+            mLastAllocatedItemId = composeItemId(id, max + 1);
+            return mLastAllocatedItemId;
         }
-        return composeItemId(id, max + 1);
     }
 
     public Item findItemById(int id) {
-        for (Item i : items) {
-            if (i.getId() == id) return i;
+        synchronized (mItemIndexLock) {
+            checkItemIndex();
+            return mItemsById.get(id);
         }
-        return null;
+    }
+
+    /**
+     * Must be called when the id of an item has been changed.
+     */
+    /*package*/ void invalidateItemIndex() {
+        synchronized (mItemIndexLock) {
+            mIndexedItems = null;
+        }
+    }
+
+    private void checkItemIndex() {
+        if (mIndexedItems == items && (items == null || mIndexedCount == items.size())) {
+            return;
+        }
+
+        mItemsById.clear();
+        mMaxItemId = 0;
+        if (items != null) {
+            // reverse order so that the first item wins in case of duplicate ids
+            for (int i = items.size() - 1; i >= 0; i--) {
+                indexItem(items.get(i));
+            }
+            mIndexedCount = items.size();
+        }
+        mIndexedItems = items;
+    }
+
+    private void indexItem(Item item) {
+        int item_id = item.getId();
+        mItemsById.put(item_id, item);
+        if (item_id > mMaxItemId) mMaxItemId = item_id;
     }
 
     public File getPageDir() {
@@ -306,6 +378,10 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         return getItemsFile(mLightningEngine.getBaseDir(), id);
     }
 
+    public File getItemsJournalFile() {
+        return getItemsJournalFile(mLightningEngine.getBaseDir(), id);
+    }
+
     public File getPageIconFile() {
         return getPageIconFile(mLightningEngine.getBaseDir(), id);
     }
@@ -322,6 +398,17 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         return mIconDir;
     }
 
+    /**
+     * @return the cache of composed icons of this page. It is safe to use it from any thread.
+     */
+    public synchronized IconCache getIconCache() {
+        if (mIconCache == null) {
+            File base_dir = mLightningEngine.getBaseDir();
+            mIconCache = new IconCache(getIconAtlasFile(base_dir, id), getIconAtlasIndexFile(base_dir, id));
+        }
+        return mIconCache;
+    }
+
     public File getAndCreateIconDir() {
         return getAndCreateIconDir(mLightningEngine.getBaseDir(), id);
     }
@@ -425,7 +512,7 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
 
     public void notifyModified() {
         modified = true;
-        mListener.onPageModified(this);
+        mListener.onPageModified(this, null);
     }
 
     public void setItemZIndex(Item item, int new_index) {
@@ -445,10 +532,17 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
 
     public void addItem(Item item, Integer index) {
         modified = true;
-        if (index == null) {
-            items.add(item);
-        } else {
-            items.add(index, item);
+        synchronized (mItemIndexLock) {
+            boolean indexed = mIndexedItems == items && mIndexedCount == items.size();
+            if (index == null) {
+                items.add(item);
+            } else {
+                items.add(index, item);
+            }
+            if (indexed && mItemsById.get(item.getId()) == null) {
+                indexItem(item);
+                mIndexedCount++;
+            }
         }
         mListener.onPageItemAdded(item);
 
@@ -464,7 +558,11 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         if (mResumeCount > 0) item.pause();
         item.onDestroy();
         item.onRemove(keepResources);
-        items.remove(item);
+        synchronized (mItemIndexLock) {
+            if (items.remove(item)) {
+                mIndexedItems = null;
+            }
+        }
         ArrayList<File> icons = new ArrayList<>();
         item.getIconFiles(getIconDir(), icons);
         for (File f : icons) {
@@ -529,6 +627,186 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         notifyModified();
     }
 
+    /**
+     * Reload the page from its files, keeping instances of unchanged items so that their views need
+     * not be rebuilt. Changes are found by comparing the JSON data of the page config and items:
+     * use {@link #reload()} when icon files have been modified.
+     *
+     * @param old_config_json the page config before it was modified, as returned by {@link #getConfigAsJSONObject()}
+     */
+    public void reloadIncrementally(JSONObject old_config_json) {
+        if (old_config_json == null) {
+            reload();
+            return;
+        }
+
+        PageConfig old_config = config;
+        ArrayList<Item> old_items = items;
+        SparseArray<Item> old_items_by_id = new SparseArray<>(old_items.size());
+        SparseArray<String> old_items_json = new SparseArray<>(old_items.size());
+        for (Item item : old_items) {
+            int item_id = item.getId();
+            old_items_by_id.put(item_id, item);
+            old_items_json.put(item_id, getItemJSONString(item));
+        }
+
+        mLightningEngine.getPersistenceExecutor().flush();
+        loadPageConfig();
+
+        PageChangeSet changes = new PageChangeSet();
+        JSONObject new_config_json = getConfigAsJSONObject();
+        diffConfig(null, old_config_json, new_config_json == null ? new JSONObject() : new_config_json, changes);
+
+        // unchanged items keep referencing the old default configs when they share them
+        if (!changes.isDefaultItemConfigChanged()) {
+            config.defaultItemConfig = old_config.defaultItemConfig;
+        }
+        if (!changes.isDefaultShortcutConfigChanged()) {
+            config.defaultShortcutConfig = old_config.defaultShortcutConfig;
+        }
+        if (!changes.isDefaultFolderConfigChanged()) {
+            config.defaultFolderConfig = old_config.defaultFolderConfig;
+        }
+
+        loadItems();
+
+        ArrayList<Item> new_items = items;
+        ArrayList<Item> merged_items = new ArrayList<>(new_items.size());
+        for (Item new_item : new_items) {
+            int item_id = new_item.getId();
+            Item old_item = old_items_by_id.get(item_id);
+            if (old_item == null) {
+                changes.addItem(new_item);
+                merged_items.add(new_item);
+            } else {
+                old_items_by_id.remove(item_id);
+                String old_json = old_items_json.get(item_id);
+                if (old_item.getClass() == new_item.getClass() && !dependsOnChangedConfig(new_item, changes) && old_json != null && old_json.equals(getItemJSONString(new_item))) {
+                    // keep the old instance, the new one is discarded
+                    mListener.onPageItemDestroyed(new_item);
+                    new_item.onDestroy();
+                    merged_items.add(old_item);
+                } else {
+                    changes.replaceItem(old_item, new_item);
+                    merged_items.add(new_item);
+                }
+            }
+        }
+        for (int i = old_items_by_id.size() - 1; i >= 0; i--) {
+            changes.removeItem(old_items_by_id.valueAt(i));
+        }
+
+        // z-order of items present before and after, looked up by id to stay linear
+        SparseBooleanArray removed_ids = new SparseBooleanArray(changes.getRemovedItems().size());
+        for (Item item : changes.getRemovedItems()) {
+            removed_ids.put(item.getId(), true);
+        }
+        SparseBooleanArray added_ids = new SparseBooleanArray(changes.getAddedItems().size());
+        for (Item item : changes.getAddedItems()) {
+            added_ids.put(item.getId(), true);
+        }
+        int common_count = merged_items.size() - changes.getAddedItems().size();
+        int[] old_order = new int[common_count];
+        int n = 0;
+        for (Item item : old_items) {
+            if (n < common_count && !removed_ids.get(item.getId())) {
+                old_order[n++] = item.getId();
+            }
+        }
+        n = 0;
+        for (Item item : merged_items) {
+            if (!added_ids.get(item.getId())) {
+                if (old_order[n++] != item.getId()) {
+                    changes.setReordered();
+                    break;
+                }
+            }
+        }
+
+        boolean resumed = mResumeCount > 0;
+        releaseReloadedItems(changes.getRemovedItems(), resumed);
+        releaseReloadedItems(changes.getReplacedItems(), resumed);
+
+        items = merged_items;
+
+        if (resumed) {
+            for (Item item : changes.getChangedItems()) {
+                item.resume();
+            }
+            for (Item item : changes.getAddedItems()) {
+                item.resume();
+            }
+        }
+
+        modified = true;
+        mListener.onPageModified(this, changes);
+    }
+
+    private void releaseReloadedItems(ArrayList<Item> old_items, boolean resumed) {
+        for (Item item : old_items) {
+            if (resumed) item.pause();
+            mListener.onPageItemDestroyed(item);
+            item.onDestroy();
+        }
+    }
+
+    private static String getItemJSONString(Item item) {
+        try {
+            return item.toJSONObject().toString();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean dependsOnChangedConfig(Item item, PageChangeSet changes) {
+        return changes.isDefaultItemConfigChanged()
+                || (changes.isDefaultShortcutConfigChanged() && item instanceof ShortcutConfigStylable)
+                || (changes.isDefaultFolderConfigChanged() && item instanceof FolderConfigStylable);
+    }
+
+    private static void diffConfig(String section, JSONObject o1, JSONObject o2, PageChangeSet changes) {
+        Iterator<String> keys = o1.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (section == null && isDefaultConfigSection(key)) {
+                diffConfig(key, optJSONObject(o1, key), optJSONObject(o2, key), changes);
+            } else if (!o2.has(key) || !String.valueOf(o1.opt(key)).equals(String.valueOf(o2.opt(key)))) {
+                changes.addConfigKey(section, key);
+            }
+        }
+        keys = o2.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!o1.has(key)) {
+                if (section == null && isDefaultConfigSection(key)) {
+                    diffConfig(key, new JSONObject(), optJSONObject(o2, key), changes);
+                } else {
+                    changes.addConfigKey(section, key);
+                }
+            }
+        }
+    }
+
+    private static JSONObject optJSONObject(JSONObject o, String key) {
+        JSONObject value = o.optJSONObject(key);
+        return value == null ? new JSONObject() : value;
+    }
+
+    private static boolean isDefaultConfigSection(String key) {
+        return PageChangeSet.DEFAULT_ITEM_CONFIG.equals(key) || PageChangeSet.DEFAULT_SHORTCUT_CONFIG.equals(key) || PageChangeSet.DEFAULT_FOLDER_CONFIG.equals(key);
+    }
+
+    private void loadPageConfig() {
+        loadConfig();
+
+        if (isFolder(id)) {
+            // use the default folder config from the first home page, which is not perfect but better to have multiple folder config per folder
+            Page home = mLightningEngine.getOrLoadPage(FIRST_DASHBOARD_PAGE);
+            config.defaultFolderConfig = home.config.defaultFolderConfig;
+        }
+    }
+
     private void loadConfig() {
         File json_file = getPageConfigFile();
         JSONObject json = FileUtils.readJSONObjectFromFile(json_file);
@@ -613,30 +891,14 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
     }
 
     private void loadItems() {
-
-        items = null;
-
-        JSONObject json_data = FileUtils.readJSONObjectFromFile(getItemsFile());
         long t1 = BuildConfig.IS_BETA ? SystemClock.uptimeMillis() : 0;
-        if (json_data != null) {
-            try {
-                JSONArray json_items = json_data.getJSONArray(JsonFields.ITEMS);
-                int l = json_items.length();
-                items = new ArrayList<>(l);
-                for (int i = 0; i < l; i++) {
-                    JSONObject o = json_items.getJSONObject(i);
-                    Item item = Item.loadItemFromJSONObject(this, o);
-                    if (item != null) {
-                        items.add(item);
-                        mListener.onPageItemLoaded(item);
-                    }
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
+        items = getItemsStore().load(this);
         if (items == null) {
             items = new ArrayList<>();
+        } else {
+            for (Item item : items) {
+                mListener.onPageItemLoaded(item);
+            }
         }
         if (BuildConfig.IS_BETA) {
             Log.i("LL", "loadItems for page " + id + " in " + (SystemClock.uptimeMillis() - t1));
@@ -645,10 +907,10 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
 
     public JSONObject getConfigAsJSONObject() {
         try {
-            JSONObject o = JsonLoader.toJSONObject(config, new PageConfig());
-            o.put("defaultItemConfig", JsonLoader.toJSONObject(config.defaultItemConfig, new ItemConfig()));
-            o.put("defaultShortcutConfig", JsonLoader.toJSONObject(config.defaultShortcutConfig, new ShortcutConfig()));
-            o.put("defaultFolderConfig", JsonLoader.toJSONObject(config.defaultFolderConfig, new FolderConfig()));
+            JSONObject o = JsonLoader.toJSONObject(config, JsonLoader.getDefaults(PageConfig.class));
+            o.put("defaultItemConfig", JsonLoader.toJSONObject(config.defaultItemConfig, JsonLoader.getDefaults(ItemConfig.class)));
+            o.put("defaultShortcutConfig", JsonLoader.toJSONObject(config.defaultShortcutConfig, JsonLoader.getDefaults(ShortcutConfig.class)));
+            o.put("defaultFolderConfig", JsonLoader.toJSONObject(config.defaultFolderConfig, JsonLoader.getDefaults(FolderConfig.class)));
             return o;
         } catch (JSONException e) {
             return null;
@@ -656,11 +918,14 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
     }
 
     public void saveConfig() {
-        try {
-            JSONObject o = getConfigAsJSONObject();
-            FileUtils.saveStringToFile(o.toString(), getPageConfigFile());
-        } catch (IOException e) {
-            // pass
+        saveConfigAsync();
+        mLightningEngine.getPersistenceExecutor().flush();
+    }
+
+    private void saveConfigAsync() {
+        JSONObject o = getConfigAsJSONObject();
+        if (o != null) {
+            mLightningEngine.getPersistenceExecutor().saveStringToFile(o.toString(), getPageConfigFile());
         }
     }
 
@@ -672,50 +937,70 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         return mLightningEngine.findFirstFolderPageOpener(id);
     }
 
-    private void saveItems() {
+    private void saveItemsAsync() {
         //Log.i("XXX", "saveItems start for page " + page);
         //long t1= SystemClock.uptimeMillis();
 
+        PersistenceExecutor executor = mLightningEngine.getPersistenceExecutor();
+        boolean webp = mLightningEngine.getGlobalConfig().widgetPreviewWebp;
         try {
-            JSONArray json_items = new JSONArray();
-
             getAndCreateIconDir();
             for (Item item : items) {
-                JSONObject json_item = item.toJSONObject();
-                json_items.put(json_item);
-
                 if (item.getClass() == Widget.class) {
                     ItemView v = Utils.findItemViewInAppScreens(item);
                     if (v != null && ((WidgetView) v).isGood()) {
-                        OutputStream os = null;
                         try {
-                            os = new FileOutputStream(item.getDefaultIconFile());
-                            Bitmap b = Bitmap.createBitmap(item.getViewWidth(), item.getViewHeight(), Bitmap.Config.ARGB_8888);
-                            Canvas canvas = new Canvas(b);
-                            v.draw(canvas);
-                            b.compress(Bitmap.CompressFormat.PNG, 100, os);
+                            // views can only be drawn from here, compression is done in the background
+                            WidgetPreviewCapturer.capture((WidgetView) v, item.getViewWidth(), item.getViewHeight(), item.getDefaultIconFile(), executor, webp);
                         } catch (Throwable e) {
                             e.printStackTrace();
-                        } finally {
-                            if (os != null) try {
-                                os.close();
-                            } catch (IOException e) {
-                            }
                         }
                     }
                 }
             }
 
-            JSONObject data = new JSONObject();
-            data.put(JsonFields.ITEMS, json_items);
-
-            FileUtils.saveStringToFile(data.toString(), getItemsFile());
+            writeItemsSnapshot(PageItemsStore.snapshot(items));
         } catch (Exception e) {
             e.printStackTrace();
         }
         //Log.i("LL", "saveItems in "+(SystemClock.uptimeMillis()-t1));
     }
 
+    /**
+     * Merge pending journal deltas into the items file, so that it can be read standalone (backups for instance).
+     */
+    public void compactItems() {
+        try {
+            PageItemsStore.Snapshot snapshot = PageItemsStore.snapshot(items);
+            snapshot.compact = true;
+            writeItemsSnapshot(snapshot);
+            mLightningEngine.getPersistenceExecutor().flush();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeItemsSnapshot(final PageItemsStore.Snapshot snapshot) {
+        final PageItemsStore store = getItemsStore();
+        mLightningEngine.getPersistenceExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.save(snapshot);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private PageItemsStore getItemsStore() {
+        if (mItemsStore == null) {
+            mItemsStore = new PageItemsStore(getItemsFile(), getItemsJournalFile());
+        }
+        return mItemsStore;
+    }
+
     public interface PageListener extends Item.OnItemEventListener {
         void onPageLoaded(Page page);
 
@@ -725,7 +1010,10 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
 
         void onPageResumed(Page page);
 
-        void onPageModified(Page page);
+        /**
+         * @param changes what changed in the page, or null when unknown: everything must be reloaded
+         */
+        void onPageModified(Page page, PageChangeSet changes);
 
         // TODO move this to engine, this is not a page specific data
         void onPageEditModeEntered(Page page);
@@ -767,7 +1055,7 @@ public class Page implements Item.OnItemEventListener, ItemConfigStylable, Short
         }
 
         @Override
-        public void onPageModified(Page page) {
+        public void onPageModified(Page page, PageChangeSet changes) {
         }
 
         @Override
@@ -0,0 +1,124 @@
+package net.pierrox.lightning_launcher.data;
+
+import java.util.ArrayList;
+
+/**
+ * Differences between two states of a page, as computed by {@link Page#reloadIncrementally(org.json.JSONObject)}.
+ * Items are matched by id. Unchanged items keep their instance, changed items are replaced by a new
+ * instance with the same id.
+ * Config keys are page config field names, fields of default configs are prefixed with the name of
+ * the default config, for instance "defaultShortcutConfig.labelFontColor".
+ */
+public class PageChangeSet {
+    public static final String DEFAULT_ITEM_CONFIG = "defaultItemConfig";
+    public static final String DEFAULT_SHORTCUT_CONFIG = "defaultShortcutConfig";
+    public static final String DEFAULT_FOLDER_CONFIG = "defaultFolderConfig";
+
+    private final ArrayList<String> mConfigKeys = new ArrayList<>();
+    private boolean mPageConfigChanged;
+    private boolean mDefaultItemConfigChanged;
+    private boolean mDefaultShortcutConfigChanged;
+    private boolean mDefaultFolderConfigChanged;
+
+    private final ArrayList<Item> mAddedItems = new ArrayList<>();
+    private final ArrayList<Item> mRemovedItems = new ArrayList<>();
+    private final ArrayList<Item> mChangedItems = new ArrayList<>();
+    private final ArrayList<Item> mReplacedItems = new ArrayList<>();
+    private boolean mReordered;
+
+    /*package*/ void addConfigKey(String section, String key) {
+        if (section == null) {
+            mConfigKeys.add(key);
+            mPageConfigChanged = true;
+        } else {
+            mConfigKeys.add(section + "." + key);
+            switch (section) {
+                case DEFAULT_ITEM_CONFIG:
+                    mDefaultItemConfigChanged = true;
+                    break;
+                case DEFAULT_SHORTCUT_CONFIG:
+                    mDefaultShortcutConfigChanged = true;
+                    break;
+                case DEFAULT_FOLDER_CONFIG:
+                    mDefaultFolderConfigChanged = true;
+                    break;
+            }
+        }
+    }
+
+    /*package*/ void addItem(Item item) {
+        mAddedItems.add(item);
+    }
+
+    /*package*/ void removeItem(Item item) {
+        mRemovedItems.add(item);
+    }
+
+    /*package*/ void replaceItem(Item oldItem, Item newItem) {
+        mReplacedItems.add(oldItem);
+        mChangedItems.add(newItem);
+    }
+
+    /*package*/ void setReordered() {
+        mReordered = true;
+    }
+
+    public ArrayList<String> getConfigKeys() {
+        return mConfigKeys;
+    }
+
+    /**
+     * @return true if a field of the page config itself changed, not counting default configs
+     */
+    public boolean isPageConfigChanged() {
+        return mPageConfigChanged;
+    }
+
+    public boolean isDefaultItemConfigChanged() {
+        return mDefaultItemConfigChanged;
+    }
+
+    public boolean isDefaultShortcutConfigChanged() {
+        return mDefaultShortcutConfigChanged;
+    }
+
+    public boolean isDefaultFolderConfigChanged() {
+        return mDefaultFolderConfigChanged;
+    }
+
+    public ArrayList<Item> getAddedItems() {
+        return mAddedItems;
+    }
+
+    /**
+     * @return removed items, these instances are not in the page anymore
+     */
+    public ArrayList<Item> getRemovedItems() {
+        return mRemovedItems;
+    }
+
+    /**
+     * @return new instances of changed items, in the same order as {@link #getReplacedItems()}
+     */
+    public ArrayList<Item> getChangedItems() {
+        return mChangedItems;
+    }
+
+    /**
+     * @return old instances of changed items, in the same order as {@link #getChangedItems()}
+     */
+    public ArrayList<Item> getReplacedItems() {
+        return mReplacedItems;
+    }
+
+    /**
+     * @return true if items still in the page are not in the same z-order anymore
+     */
+    public boolean isReordered() {
+        return mReordered;
+    }
+
+    public boolean isEmpty() {
+        return mConfigKeys.isEmpty() && mAddedItems.isEmpty() && mRemovedItems.isEmpty() && mChangedItems.isEmpty() && !mReordered;
+    }
+}
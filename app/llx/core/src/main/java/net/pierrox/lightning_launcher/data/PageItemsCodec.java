@@ -0,0 +1,228 @@
+package net.pierrox.lightning_launcher.data;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import net.pierrox.lightning_launcher.configuration.JsonFields;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Streaming reader and writer for the page items file.
+ * The whole file is never held in memory: items are decoded one at a time while the file is
+ * tokenized, and encoded one at a time directly into the output stream. Only the JSON object of
+ * the item being processed is materialized, so that Item subclasses keep their JSONObject based
+ * serialization. The produced file is byte-identical to the former JSONObject.toString() output.
+ */
+public class PageItemsCodec {
+    private static final int BUFFER_SIZE = 16384;
+
+    /**
+     * Read items from the file, in z-order.
+     *
+     * @param crc if not null, updated with the whole content of the file
+     * @return the list of items, or null if the file does not exist or has no items array.
+     * If the file is corrupted, items successfully read before the error are returned.
+     */
+    public static ArrayList<Item> readItems(final Page page, File from, CRC32 crc) {
+        final ArrayList<Item> items = new ArrayList<>();
+        boolean found = readItemObjects(from, crc, new ItemObjectHandler() {
+            @Override
+            public void onItemObject(JSONObject o) throws JSONException {
+                Item item = Item.loadItemFromJSONObject(page, o);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+        });
+
+        return found ? items : null;
+    }
+
+    /*package*/ interface ItemObjectHandler {
+        void onItemObject(JSONObject o) throws JSONException;
+    }
+
+    /**
+     * Tokenize the file and hand the JSON object of each item to the handler, in z-order.
+     *
+     * @param crc if not null, updated with the whole content of the file
+     * @return false if the file does not exist or has no items array
+     */
+    /*package*/ static boolean readItemObjects(File from, CRC32 crc, ItemObjectHandler handler) {
+        if (!from.exists()) {
+            return false;
+        }
+
+        boolean found = false;
+        InputStream is = null;
+        JsonReader reader = null;
+        try {
+            is = new FileInputStream(from);
+            if (crc != null) {
+                is = new CheckedInputStream(is, crc);
+            }
+            reader = new JsonReader(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), BUFFER_SIZE));
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (JsonFields.ITEMS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    found = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        handler.onItemObject(readObject(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (crc != null) {
+                // the checksum must cover trailing bytes not consumed by the reader
+                byte[] buffer = new byte[512];
+                while (is.read(buffer) != -1) ;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            // closing the reader also closes the underlying stream
+            Closeable c = reader != null ? reader : is;
+            if (c != null) try {
+                c.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Write items to the file. Items are given already encoded, as produced by Item.toJSONObject().toString().
+     * Data is first written and synced to a temporary file which atomically replaces the target
+     * only when complete, so that the previous content is kept if the process dies in between.
+     *
+     * @param crc if not null, updated with the whole content of the file
+     */
+    public static void writeEncodedItems(ArrayList<String> encoded_items, File to, CRC32 crc) throws IOException {
+        to.getParentFile().mkdirs();
+        File tmp = FileUtils.getTempFile(to);
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            OutputStream os = crc == null ? fos : new CheckedOutputStream(fos, crc);
+            Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+            w.write('{');
+            w.write(JSONObject.quote(JsonFields.ITEMS));
+            w.write(":[");
+            int l = encoded_items.size();
+            for (int i = 0; i < l; i++) {
+                if (i > 0) {
+                    w.write(',');
+                }
+                w.write(encoded_items.get(i));
+            }
+            w.write("]}");
+            w.flush();
+            FileUtils.commitTempFile(fos, tmp, to);
+            fos = null;
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        } finally {
+            if (fos != null) try {
+                fos.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject o = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            o.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return o;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray a = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            a.put(readValue(reader));
+        }
+        reader.endArray();
+        return a;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case STRING:
+            default:
+                return reader.nextString();
+        }
+    }
+
+    // same number typing as org.json.JSONTokener, so that items see the same value classes
+    private static Object parseNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long l = Long.parseLong(literal);
+                if (l <= Integer.MAX_VALUE && l >= Integer.MIN_VALUE) {
+                    return (int) l;
+                } else {
+                    return l;
+                }
+            } catch (NumberFormatException e) {
+                // pass
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+}
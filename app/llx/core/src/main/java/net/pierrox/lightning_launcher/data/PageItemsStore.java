@@ -0,0 +1,381 @@
+package net.pierrox.lightning_launcher.data;
+
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Crash safe persistence of page items.
+ * Items are stored in a snapshot file (the historical items file, unchanged format) and in an
+ * append-only journal of item deltas. A save only appends records for items which have been
+ * added, changed, removed or reordered since the last save. The journal is compacted into a new
+ * snapshot once it grows too much, and replayed when loading.
+ * <p>
+ * Journal format: one JSON object per line. The first line identifies the snapshot the journal
+ * applies to (its length and CRC32), so that a journal left over from an older snapshot is never
+ * replayed. Following lines are grouped in batches, one per save, terminated by a commit record:
+ * a batch which has not been fully written is ignored.
+ * <p>
+ * Records only hold absolute states (whole item, deleted id, full order), hence replaying a batch
+ * is idempotent.
+ */
+public class PageItemsStore {
+    private static final String _op = "o";
+    private static final String _value = "v";
+    private static final String _length = "l";
+    private static final String _crc = "k";
+
+    private static final String OP_BASE = "b";
+    private static final String OP_UPSERT = "u";
+    private static final String OP_DELETE = "d";
+    private static final String OP_ORDER = "z";
+    private static final String OP_COMMIT = "c";
+
+    private static final long JOURNAL_MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private final File mItemsFile;
+    private final File mJournalFile;
+
+    // persisted state, null when unknown: the next save will write a full snapshot
+    private SparseLongArray mHashes;
+    private int[] mOrder;
+    private long mSnapshotLength;
+    private long mJournalLength;
+
+    public PageItemsStore(File items_file, File journal_file) {
+        mItemsFile = items_file;
+        mJournalFile = journal_file;
+    }
+
+    /**
+     * Load the snapshot and replay the journal on top of it.
+     *
+     * @return the list of items, or null if there is no snapshot
+     */
+    public synchronized ArrayList<Item> load(Page page) {
+        mHashes = null;
+        mOrder = null;
+
+        CRC32 crc = new CRC32();
+        ArrayList<Item> items = PageItemsCodec.readItems(page, mItemsFile, crc);
+        if (items != null && mJournalFile.exists()) {
+            replayJournal(page, items, mItemsFile.length(), crc.getValue());
+        }
+
+        return items;
+    }
+
+    /**
+     * Tell whether a journal holds deltas not yet merged into the snapshot: a journal holding only
+     * its base line, as written along with each new snapshot, has nothing to replay.
+     */
+    public static boolean hasPendingDeltas(File journal_file) {
+        long length = journal_file.length();
+        if (length == 0) {
+            return false;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal_file), StandardCharsets.UTF_8));
+            String base = reader.readLine();
+            // the base line is ASCII only
+            return base != null && length > base.length() + 1;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    /**
+     * Capture the current state of items. This must be called from the thread owning items,
+     * the snapshot can then be written from any thread.
+     */
+    public static Snapshot snapshot(ArrayList<Item> items) throws JSONException {
+        int l = items.size();
+        JSONObject[] json_items = new JSONObject[l];
+        int[] order = new int[l];
+        for (int i = 0; i < l; i++) {
+            Item item = items.get(i);
+            json_items[i] = item.toJSONObject();
+            order[i] = item.getId();
+        }
+        return new Snapshot(json_items, order);
+    }
+
+    /**
+     * Persist items, either by appending deltas to the journal or by writing a new snapshot.
+     */
+    public synchronized void save(Snapshot snapshot) throws IOException {
+        int[] order = snapshot.order;
+        int l = order.length;
+        ArrayList<String> encoded_items = new ArrayList<>(l);
+        SparseLongArray hashes = new SparseLongArray(l);
+        for (int i = 0; i < l; i++) {
+            String encoded_item = snapshot.jsonItems[i].toString();
+            encoded_items.add(encoded_item);
+            hashes.put(order[i], hash(encoded_item));
+        }
+
+        if (snapshot.compact || mHashes == null || mJournalLength > Math.max(JOURNAL_MIN_COMPACTION_SIZE, mSnapshotLength)) {
+            writeSnapshot(encoded_items);
+        } else {
+            appendToJournal(encoded_items, hashes, order);
+        }
+
+        mHashes = hashes;
+        mOrder = order;
+    }
+
+    private void writeSnapshot(ArrayList<String> encoded_items) throws IOException {
+        mHashes = null;
+
+        // first replace the snapshot, then the journal: if the process dies in between the old
+        // journal won't match the new snapshot and will be ignored
+        CRC32 crc = new CRC32();
+        PageItemsCodec.writeEncodedItems(encoded_items, mItemsFile, crc);
+        mSnapshotLength = mItemsFile.length();
+
+        try {
+            JSONObject base = new JSONObject();
+            base.put(_op, OP_BASE);
+            base.put(_length, mSnapshotLength);
+            base.put(_crc, crc.getValue());
+            String content = base.toString() + "\n";
+            FileUtils.saveStringToFile(content, mJournalFile);
+            mJournalLength = content.length();
+        } catch (JSONException e) {
+            // not likely to happen
+            mJournalFile.delete();
+            mJournalLength = 0;
+        }
+    }
+
+    private void appendToJournal(ArrayList<String> encoded_items, SparseLongArray hashes, int[] order) throws IOException {
+        StringBuilder batch = new StringBuilder();
+        int l = order.length;
+
+        // added or modified items, and the order that would result from applying them
+        SparseIntArray expected_positions = new SparseIntArray(mOrder.length + l);
+        int count = 0;
+        for (int id : mOrder) {
+            if (hashes.indexOfKey(id) >= 0) {
+                expected_positions.put(id, count++);
+            }
+        }
+        for (int i = 0; i < l; i++) {
+            int id = order[i];
+            int index = mHashes.indexOfKey(id);
+            if (index < 0 || mHashes.valueAt(index) != hashes.get(id)) {
+                appendRecord(batch, OP_UPSERT, encoded_items.get(i));
+            }
+            if (index < 0) {
+                expected_positions.put(id, count++);
+            }
+        }
+
+        // removed items
+        for (int id : mOrder) {
+            if (hashes.indexOfKey(id) < 0) {
+                appendRecord(batch, OP_DELETE, String.valueOf(id));
+            }
+        }
+
+        // z-order changes
+        boolean reordered = false;
+        for (int i = 0; i < l; i++) {
+            if (expected_positions.get(order[i], -1) != i) {
+                reordered = true;
+                break;
+            }
+        }
+        if (reordered) {
+            StringBuilder ids = new StringBuilder().append('[');
+            for (int i = 0; i < l; i++) {
+                if (i > 0) ids.append(',');
+                ids.append(order[i]);
+            }
+            ids.append(']');
+            appendRecord(batch, OP_ORDER, ids.toString());
+        }
+
+        if (batch.length() == 0) {
+            return;
+        }
+
+        appendRecord(batch, OP_COMMIT, null);
+
+        byte[] data = batch.toString().getBytes(StandardCharsets.UTF_8);
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(mJournalFile, true);
+            fos.write(data);
+            fos.flush();
+            fos.getFD().sync();
+            mJournalLength += data.length;
+        } catch (IOException e) {
+            // the journal may now end with a partial batch: do not append to it anymore
+            mHashes = null;
+            throw e;
+        } finally {
+            if (fos != null) try {
+                fos.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    private static void appendRecord(StringBuilder out, String op, String value) {
+        out.append("{\"").append(_op).append("\":\"").append(op).append('"');
+        if (value != null) {
+            out.append(",\"").append(_value).append("\":").append(value);
+        }
+        out.append("}\n");
+    }
+
+    private void replayJournal(Page page, ArrayList<Item> items, long snapshot_length, long snapshot_crc) {
+        BufferedReader reader = null;
+        int batches = 0;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile), StandardCharsets.UTF_8));
+
+            String line = reader.readLine();
+            if (line == null) {
+                return;
+            }
+            JSONObject base = new JSONObject(line);
+            if (!OP_BASE.equals(base.optString(_op)) || base.optLong(_length, -1) != snapshot_length || base.optLong(_crc, -1) != snapshot_crc) {
+                // stale journal, the snapshot already holds everything
+                return;
+            }
+
+            ArrayList<JSONObject> batch = new ArrayList<>();
+            while ((line = reader.readLine()) != null) {
+                JSONObject record;
+                try {
+                    record = new JSONObject(line);
+                } catch (JSONException e) {
+                    // truncated write
+                    break;
+                }
+                if (OP_COMMIT.equals(record.optString(_op))) {
+                    applyBatch(page, items, batch);
+                    batch.clear();
+                    batches++;
+                } else {
+                    batch.add(record);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+
+        if (batches > 0) {
+            Log.i("LL", "replayed " + batches + " journal batches for " + mItemsFile);
+        }
+    }
+
+    private static void applyBatch(Page page, ArrayList<Item> items, ArrayList<JSONObject> batch) throws JSONException {
+        for (JSONObject record : batch) {
+            String op = record.optString(_op);
+            if (OP_UPSERT.equals(op)) {
+                Item item = Item.loadItemFromJSONObject(page, record.getJSONObject(_value));
+                if (item != null) {
+                    int index = indexOfItem(items, item.getId());
+                    if (index == -1) {
+                        items.add(item);
+                    } else {
+                        items.set(index, item);
+                    }
+                }
+            } else if (OP_DELETE.equals(op)) {
+                int index = indexOfItem(items, record.getInt(_value));
+                if (index != -1) {
+                    items.remove(index);
+                }
+            } else if (OP_ORDER.equals(op)) {
+                JSONArray ids = record.getJSONArray(_value);
+                int n = ids.length();
+                SparseArray<Item> items_by_id = new SparseArray<>(items.size());
+                for (Item item : items) {
+                    items_by_id.put(item.getId(), item);
+                }
+                ArrayList<Item> ordered = new ArrayList<>(items.size());
+                for (int i = 0; i < n; i++) {
+                    int id = ids.getInt(i);
+                    Item item = items_by_id.get(id);
+                    if (item != null) {
+                        ordered.add(item);
+                        items_by_id.remove(id);
+                    }
+                }
+                // items unknown to the order record keep their relative order at the end
+                for (Item item : items) {
+                    if (items_by_id.get(item.getId()) != null) {
+                        ordered.add(item);
+                    }
+                }
+                items.clear();
+                items.addAll(ordered);
+            }
+        }
+    }
+
+    private static int indexOfItem(ArrayList<Item> items, int id) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 64 bits FNV-1a
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        int l = s.length();
+        for (int i = 0; i < l; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public static final class Snapshot {
+        private final JSONObject[] jsonItems;
+        private final int[] order;
+        // write a new snapshot file instead of journal deltas
+        public boolean compact;
+
+        private Snapshot(JSONObject[] json_items, int[] order) {
+            this.jsonItems = json_items;
+            this.order = order;
+        }
+    }
+}
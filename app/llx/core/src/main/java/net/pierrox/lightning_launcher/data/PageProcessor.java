@@ -155,7 +155,7 @@ public class PageProcessor {
                 }
 
                 try {
-                    JSONObject o = JsonLoader.toJSONObject(gc, new GlobalConfig());
+                    JSONObject o = JsonLoader.toJSONObject(gc, JsonLoader.getDefaults(GlobalConfig.class));
                     FileUtils.saveStringToFile(o.toString(), global_config_file);
                 } catch (IOException e) {
                     // pass
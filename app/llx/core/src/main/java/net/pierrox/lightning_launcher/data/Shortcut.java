@@ -108,6 +108,12 @@ public class Shortcut extends Item implements ShortcutConfigStylable, SharedAsyn
         out_files.add(ShortcutConfig.getIconMaskFile(icon_dir, mId));
     }
 
+    @Override
+    public void onRemove(boolean keepResources) {
+        super.onRemove(keepResources);
+        mPage.getIconCache().remove(mId);
+    }
+
     public void deleteCustomIconFiles(File icon_dir) {
         getCustomIconFile().delete();
         ShortcutConfig.getIconBackFile(icon_dir, mId).delete();
@@ -205,6 +211,14 @@ public class Shortcut extends Item implements ShortcutConfigStylable, SharedAsyn
             icon_file = getDefaultIconFile();
         }
 
+        // static icons are restored from the page icon cache when their sources have not changed
+        IconCache icon_cache = mPage.getIconCache();
+        long signature = computeIconSignature(icon_file, max_width, max_height);
+        Bitmap cached_icon = icon_cache.get(mId, signature);
+        if (cached_icon != null) {
+            return new Graphics(cached_icon);
+        }
+
         Graphics graphics = null;
         if (Utils.isGifFile(icon_file)) {
             AnimationDecoder animationDecoder = Utils.loadGifDecoder(icon_file);
@@ -238,11 +252,15 @@ public class Shortcut extends Item implements ShortcutConfigStylable, SharedAsyn
             } catch (Throwable e) {
                 // catches IOException and OOM Error
             }
+            boolean decoded = baseIcon != null;
             if (baseIcon == null) {
                 baseIcon = Utils.getDefaultIcon();
             }
 
             Bitmap finalIcon = createComposedBitmap(baseIcon, max_width, max_height);
+            if (decoded && finalIcon != Utils.getDefaultIcon()) {
+                icon_cache.put(mId, signature, finalIcon);
+            }
 
             graphics = new Graphics(finalIcon);
         }
@@ -250,6 +268,46 @@ public class Shortcut extends Item implements ShortcutConfigStylable, SharedAsyn
         return graphics;
     }
 
+    /**
+     * @return a hash of everything the composed icon depends on: source file, target size,
+     * density, configuration and icon layers.
+     */
+    private long computeIconSignature(File icon_file, int max_width, int max_height) {
+        final ShortcutConfig c = mShortcutConfig;
+        StringBuilder sb = new StringBuilder();
+        appendFileSignature(sb, icon_file);
+        sb.append(max_width).append(',').append(max_height).append(',')
+                .append(getStdIconSize()).append(',')
+                .append(Utils.getStandardIconSize()).append(',')
+                .append(Utils.getLauncherIconDensity()).append(',');
+        File icon_dir = mPage.getIconDir();
+        if (c.iconBack != null) {
+            appendFileSignature(sb, ShortcutConfig.getIconBackFile(icon_dir, mId));
+            appendFileSignature(sb, ShortcutConfig.getIconBackFile(icon_dir, Item.NO_ID));
+        }
+        if (c.iconOver != null) {
+            appendFileSignature(sb, ShortcutConfig.getIconOverFile(icon_dir, mId));
+            appendFileSignature(sb, ShortcutConfig.getIconOverFile(icon_dir, Item.NO_ID));
+        }
+        if (c.iconMask != null) {
+            appendFileSignature(sb, ShortcutConfig.getIconMaskFile(icon_dir, mId));
+            appendFileSignature(sb, ShortcutConfig.getIconMaskFile(icon_dir, Item.NO_ID));
+        }
+        sb.append(JsonLoader.toJSONObject(c, null).toString());
+
+        // 64 bits FNV-1a
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, l = sb.length(); i < l; i++) {
+            h ^= sb.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static void appendFileSignature(StringBuilder sb, File f) {
+        sb.append(f.getPath()).append(',').append(f.length()).append(',').append(f.lastModified()).append(',');
+    }
+
     private RectF computeNonEmptyIconBox(Bitmap bitmap) {
 
         final int w = bitmap.getWidth();
@@ -15,7 +15,6 @@ import android.content.Intent.ShortcutIconResource;
 import android.content.pm.LauncherApps;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.content.pm.ShortcutInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -88,7 +87,6 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.text.Collator;
 import java.util.ArrayList;
@@ -128,8 +126,8 @@ public class Utils {
     public static final Comparator<Item> sItemComparatorByLaunchCount = new Comparator<Item>() {
         @Override
         public int compare(Item arg0, Item arg1) {
-            if (arg0.mLaunchCount > arg1.mLaunchCount) return -1;
-            if (arg0.mLaunchCount < arg1.mLaunchCount) return 1;
+            if (arg0.mLaunchScore > arg1.mLaunchScore) return -1;
+            if (arg0.mLaunchScore < arg1.mLaunchScore) return 1;
             Class<?> c0 = arg0.getClass();
             if (c0 != Shortcut.class && c0 != Folder.class) return -1;
             Class<?> c1 = arg1.getClass();
@@ -434,229 +432,11 @@ public class Utils {
     }
 
     public static ArrayList<Item> loadAppDrawerShortcuts(Page appDrawerPage) {
-        long now = System.currentTimeMillis();
-
-        Field last_update_time;
-        try {
-            last_update_time = PackageInfo.class.getField("lastUpdateTime");
-        } catch (Exception e) {
-            // available at API 9
-            last_update_time = null;
-        }
-
-        ArrayList<Item> items = new ArrayList<Item>();
-        int id = 1;
-        File icon_dir = Page.getAndCreateIconDir(appDrawerPage.getEngine().getBaseDir(), Page.APP_DRAWER_PAGE);
-        PackageManager pm = LLApp.get().getPackageManager();
-        Intent intent_filter = new Intent(Intent.ACTION_MAIN, null);
-        intent_filter.addCategory(Intent.CATEGORY_LAUNCHER);
-        List<ResolveInfo> ris = pm.queryIntentActivities(intent_filter, 0);
-        for (ResolveInfo ri : ris) {
-            ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
-            try {
-                String label = ri.loadLabel(pm).toString();
-
-                Intent intent = new Intent();
-                intent.setComponent(component_name);
-                intent.setAction(Intent.ACTION_MAIN);
-
-                Shortcut s = new Shortcut(appDrawerPage);
-                s.init(Page.composeItemId(Page.APP_DRAWER_PAGE, id++), new Rect(0, 0, 1, 1), null, label, intent);
-
-                if (last_update_time == null) {
-                    s.mLastUpdateTime = now;
-                } else {
-                    PackageInfo pi = pm.getPackageInfo(component_name.getPackageName(), 0);
-                    try {
-                        s.mLastUpdateTime = last_update_time.getLong(pi);
-                    } catch (Exception e) {
-                        s.mLastUpdateTime = now;
-                    }
-                }
-
-                Resources rsrc = pm.getResourcesForActivity(component_name);
-                Bitmap icon = decodeScaledBitmapResource(rsrc, ri.getIconResource(), s.getStdIconSize());
-                if (icon != null) {
-                    File icon_file = s.getDefaultIconFile();
-                    s.getCustomIconFile().delete();
-                    saveIconToFile(icon_file, icon);
-                    icon.recycle();
-                }
-
-                items.add(s);
-            } catch (Exception e) {
-                // skip this item
-            }
-        }
-
-        Collections.sort(items, sItemComparatorByNameAsc);
-
-        return items;
-    }
-
-    private static void updateOrRemoveAppDrawerShortcuts(LightningEngine engine, Handler handler, PackageManager pm, HashMap<String, ResolveInfo> all_component_names, HashSet<String> my_component_names, int p) {
-        final Page page = engine.getOrLoadPage(p);
-
-        // fix duplicate item ids
-        HashSet<Integer> ids = new HashSet<Integer>();
-        for (Item i : page.items) {
-            int id = i.getId();
-            if (ids.contains(Integer.valueOf(id))) {
-                i.setId(page.findFreeItemId());
-            } else {
-                ids.add(Integer.valueOf(id));
-            }
-        }
-
-        for (int i = page.items.size() - 1; i >= 0; i--) {
-            Item item = page.items.get(i);
-            if (item.getClass() == Shortcut.class) {
-                Shortcut s = (Shortcut) item;
-                ComponentName cn = s.getIntent().getComponent();
-                if (cn != null) {
-                    final Item fitem = item;
-                    String cns = cn.flattenToShortString();
-                    my_component_names.add(cns);
-                    if (all_component_names.containsKey(cns)) {
-                        // update
-                        try {
-                            Resources rsrc = pm.getResourcesForActivity(cn);
-                            ResolveInfo ri = all_component_names.get(cns);
-                            Bitmap icon = decodeScaledBitmapResource(rsrc, ri.getIconResource(), s.getStdIconSize());
-                            if (icon != null) {
-                                File icon_file = s.getDefaultIconFile();
-                                saveIconToFile(icon_file, icon);
-                                icon.recycle();
-                            }
-                            handler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    fitem.notifyChanged();
-                                }
-                            });
-                        } catch (Throwable t) {
-                            t.printStackTrace();
-                        }
-                    } else {
-                        // remove
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                page.removeItem(fitem, false);
-                            }
-                        });
-                    }
-                }
-            } else if (item.getClass() == Folder.class) {
-                updateOrRemoveAppDrawerShortcuts(engine, handler, pm, all_component_names, my_component_names, ((Folder) item).getFolderPageId());
-            }
-        }
-    }
-
-    private static void gatherAndRemoveDuplicateShortcuts(Handler handler, final Page page, ArrayList<Shortcut> shortcuts) {
-        for (int i = page.items.size() - 1; i >= 0; i--) {
-            final Item item = page.items.get(i);
-            if (item instanceof Folder) {
-                Folder f = (Folder) item;
-                gatherAndRemoveDuplicateShortcuts(handler, f.getOrLoadFolderPage(), shortcuts);
-            } else if (item.getClass() == Shortcut.class) {
-                Shortcut s = (Shortcut) item;
-                ComponentName cn = s.getIntent().getComponent();
-                String label = s.getLabel();
-                if (cn != null && s != null) {
-                    boolean found = false;
-                    for (Shortcut e : shortcuts) {
-                        if (cn.compareTo(e.getIntent().getComponent()) == 0 && label.equals(e.getLabel())) {
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (found) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                page.removeItem(item, false);
-                            }
-                        });
-                    } else {
-                        shortcuts.add(s);
-                    }
-                }
-            }
-        }
+        return AppDrawerRefresher.loadShortcuts(appDrawerPage);
     }
 
     public static void refreshAppDrawerShortcuts(LightningEngine engine, Handler handler) {
-        long now = System.currentTimeMillis();
-
-        HashMap<String, ResolveInfo> all_component_names = new HashMap<String, ResolveInfo>();
-        HashSet<String> my_component_names = new HashSet<String>();
-
-
-        // dresser la liste des components name android
-
-        // parcourir et dresser la liste des components name sur les pages
-        // si match: mise à jour
-        // si pas présent: supprimer
-
-        // pour tous les androids: si pas dans les pages, ajout sur la page app drawer
-
-
-        PackageManager pm = LLApp.get().getPackageManager();
-        Intent intent_filter = new Intent(Intent.ACTION_MAIN, null);
-        intent_filter.addCategory(Intent.CATEGORY_LAUNCHER);
-        List<ResolveInfo> ris = pm.queryIntentActivities(intent_filter, 0);
-        for (ResolveInfo ri : ris) {
-            ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
-            all_component_names.put(component_name.flattenToShortString(), ri);
-        }
-
-        updateOrRemoveAppDrawerShortcuts(engine, handler, pm, all_component_names, my_component_names, Page.APP_DRAWER_PAGE);
-
-        final Page app_drawer_page = engine.getOrLoadPage(Page.APP_DRAWER_PAGE);
-
-        ArrayList<Shortcut> shortcuts = new ArrayList<Shortcut>();
-        gatherAndRemoveDuplicateShortcuts(handler, app_drawer_page, shortcuts);
-
-        // add not found apps
-        for (ResolveInfo ri : ris) {
-            ComponentName component_name = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
-            String cns = component_name.flattenToShortString();
-            if (!my_component_names.contains(cns)) {
-                try {
-                    synchronized (app_drawer_page.items) {
-                        String label = ri.loadLabel(pm).toString();
-
-                        Intent intent = new Intent();
-                        intent.setComponent(component_name);
-                        intent.setAction(Intent.ACTION_MAIN);
-                        int id = app_drawer_page.findFreeItemId();
-                        final Shortcut s = new Shortcut(app_drawer_page);
-                        int[] cell = Utils.findFreeCell(app_drawer_page);
-                        File icon_dir = app_drawer_page.getAndCreateIconDir();
-                        s.init(id, new Rect(cell[0], cell[1], cell[0] + 1, cell[1] + 1), null, label, intent);
-                        s.mLastUpdateTime = now;
-                        File icon_file = s.getDefaultIconFile();
-                        Resources rsrc = pm.getResourcesForActivity(component_name);
-                        Bitmap icon = Utils.decodeScaledBitmapResource(rsrc, ri.getIconResource(), s.getStdIconSize());
-                        Utils.saveIconToFile(icon_file, icon);
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                synchronized (app_drawer_page.items) {
-                                    app_drawer_page.addItem(s);
-                                    app_drawer_page.items.notify();
-                                }
-                            }
-                        });
-
-                        app_drawer_page.items.wait();
-                    }
-                } catch (Throwable t) {
-                    t.printStackTrace();
-                }
-            }
-        }
+        AppDrawerRefresher.refresh(engine, handler);
     }
 
     public static void saveIconToFile(File icon_file, Bitmap icon) {
@@ -0,0 +1,240 @@
+package net.pierrox.lightning_launcher.engine;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import net.pierrox.lightning_launcher.data.FileUtils;
+import net.pierrox.lightning_launcher.data.Folder;
+import net.pierrox.lightning_launcher.data.Item;
+import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.Utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Reverse index from folder page ids to the ids of folder items opening them, so that openers
+ * can be found without loading and scanning every page.
+ * The index is kept up to date by page events and persisted. It is reconciled with the actual
+ * content of a page each time this page is loaded, and rebuilt with a full scan when it is
+ * unknown (first run, data replaced behind the engine).
+ */
+public class FolderOpenerIndex {
+    private final LightningEngine mEngine;
+    private final File mFile;
+
+    // opener item id -> folder page id
+    private final SparseIntArray mFolderPages = new SparseIntArray();
+    // folder page id -> opener item ids
+    private final SparseArray<ArrayList<Integer>> mOpeners = new SparseArray<>();
+
+    private boolean mComplete;
+    private boolean mModified;
+
+    /*package*/ FolderOpenerIndex(LightningEngine engine, File file) {
+        mEngine = engine;
+        mFile = file;
+    }
+
+    /*package*/ void load() {
+        clearEntries();
+        mComplete = false;
+        mModified = false;
+
+        JSONObject o = FileUtils.readJSONObjectFromFile(mFile);
+        if (o != null) {
+            try {
+                Iterator<String> keys = o.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    addEntry(Integer.parseInt(key), o.getInt(key));
+                }
+                mComplete = true;
+            } catch (JSONException | NumberFormatException e) {
+                clearEntries();
+            }
+        }
+    }
+
+    /*package*/ void save() {
+        if (!mModified || !mComplete) {
+            return;
+        }
+
+        try {
+            JSONObject o = new JSONObject();
+            for (int i = mFolderPages.size() - 1; i >= 0; i--) {
+                o.put(String.valueOf(mFolderPages.keyAt(i)), mFolderPages.valueAt(i));
+            }
+            mEngine.getPersistenceExecutor().saveStringToFile(o.toString(), mFile);
+            mModified = false;
+        } catch (JSONException e) {
+            // pass, not likely to happen
+        }
+    }
+
+    /**
+     * Forget everything: pages have been replaced and the index will be rebuilt on next use.
+     */
+    /*package*/ void invalidate() {
+        clearEntries();
+        mComplete = false;
+        mModified = false;
+        // a pending write would resurrect the file
+        mEngine.getPersistenceExecutor().flush();
+        mFile.delete();
+    }
+
+    /*package*/ void onItemAdded(Item item) {
+        if (item instanceof Folder) {
+            addEntry(item.getId(), ((Folder) item).getFolderPageId());
+            mModified = true;
+        }
+    }
+
+    /*package*/ void onItemRemoved(Item item) {
+        if (item instanceof Folder && removeEntry(item.getId())) {
+            mModified = true;
+        }
+    }
+
+    /*package*/ void onFolderPageIdChanged(Folder folder) {
+        removeEntry(folder.getId());
+        addEntry(folder.getId(), folder.getFolderPageId());
+        mModified = true;
+    }
+
+    /**
+     * Replace entries for openers in this page with the actual content of the page.
+     */
+    /*package*/ void updatePage(Page page) {
+        int count = 0;
+        boolean changed = false;
+        for (Item item : page.items) {
+            if (item instanceof Folder) {
+                int id = item.getId();
+                int folder_page = ((Folder) item).getFolderPageId();
+                count++;
+                if (mFolderPages.get(id, Page.NONE - 1) != folder_page) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if (!changed && count == countPageEntries(page.id)) {
+            // the usual case, nothing to do
+            return;
+        }
+
+        removePageEntries(page.id);
+        for (Item item : page.items) {
+            if (item instanceof Folder) {
+                addEntry(item.getId(), ((Folder) item).getFolderPageId());
+            }
+        }
+        mModified = true;
+    }
+
+    /*package*/ void removePage(int page) {
+        if (removePageEntries(page)) {
+            mModified = true;
+        }
+    }
+
+    /**
+     * @return ids of items opening this folder page, in no particular order. Some ids may be
+     * stale, callers need to check the item.
+     */
+    /*package*/ int[] getOpenerIds(int folder_page) {
+        if (!mComplete) {
+            rebuild();
+        }
+
+        ArrayList<Integer> openers = mOpeners.get(folder_page);
+        if (openers == null) {
+            return new int[0];
+        }
+        int l = openers.size();
+        int[] ids = new int[l];
+        for (int i = 0; i < l; i++) {
+            ids[i] = openers.get(i);
+        }
+        return ids;
+    }
+
+    private void rebuild() {
+        clearEntries();
+        // set now, pages may look for openers while being loaded below
+        mComplete = true;
+        mModified = true;
+        LightningEngine.PageManager pm = mEngine.getPageManager();
+        // loading a page reconciles its entries, see PageManager.getOrLoadPage
+        for (Page page : pm.getLoadedPages()) {
+            updatePage(page);
+        }
+        for (int p : pm.getAllPagesIds()) {
+            pm.getOrLoadPage(p);
+        }
+    }
+
+    private void addEntry(int opener_id, int folder_page) {
+        mFolderPages.put(opener_id, folder_page);
+        ArrayList<Integer> openers = mOpeners.get(folder_page);
+        if (openers == null) {
+            openers = new ArrayList<>(1);
+            mOpeners.put(folder_page, openers);
+        }
+        Integer id = opener_id;
+        if (!openers.contains(id)) {
+            openers.add(id);
+        }
+    }
+
+    private boolean removeEntry(int opener_id) {
+        int index = mFolderPages.indexOfKey(opener_id);
+        if (index < 0) {
+            return false;
+        }
+        int folder_page = mFolderPages.valueAt(index);
+        mFolderPages.removeAt(index);
+        ArrayList<Integer> openers = mOpeners.get(folder_page);
+        if (openers != null) {
+            openers.remove(Integer.valueOf(opener_id));
+            if (openers.isEmpty()) {
+                mOpeners.remove(folder_page);
+            }
+        }
+        return true;
+    }
+
+    private int countPageEntries(int page) {
+        int count = 0;
+        for (int i = mFolderPages.size() - 1; i >= 0; i--) {
+            if (Utils.getPageForItemId(mFolderPages.keyAt(i)) == page) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean removePageEntries(int page) {
+        boolean removed = false;
+        for (int i = mFolderPages.size() - 1; i >= 0; i--) {
+            int opener_id = mFolderPages.keyAt(i);
+            if (Utils.getPageForItemId(opener_id) == page) {
+                removeEntry(opener_id);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private void clearEntries() {
+        mFolderPages.clear();
+        mOpeners.clear();
+    }
+}
@@ -0,0 +1,324 @@
+package net.pierrox.lightning_launcher.engine;
+
+import android.content.ComponentName;
+
+import net.pierrox.lightning_launcher.data.FileUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Launch counters of components, with a score decaying over time so that recent habits weigh
+ * more than old ones.
+ * Components are interned into slots of primitive arrays, lookups do not need to flatten
+ * component names.
+ * <p>
+ * Data is stored in a snapshot file (the historical statistics file, values being either a bare
+ * count or an array [count, last launch time, score at last launch]) and in an append-only log
+ * with one line per launch: "sequence time component". The snapshot records the last sequence
+ * number it holds, log lines with a lower or equal sequence number are ignored when replaying,
+ * hence a log which has not been deleted after a compaction is harmless.
+ * <p>
+ * This object must be used from the UI thread, files are written by the persistence executor.
+ */
+public class LaunchStatistics {
+    // score half life: a launch two weeks ago weighs half a launch today
+    private static final double HALF_LIFE = 14 * 24 * 3600 * 1000.;
+
+    private static final String KEY_SEQUENCE = "#seq";
+
+    private static final int LOG_MAX_LINES = 256;
+
+    private final PersistenceExecutor mPersistenceExecutor;
+    private final File mFile;
+    private final File mLogFile;
+
+    private final HashMap<ComponentName, Integer> mSlots = new HashMap<>();
+    private ComponentName[] mComponents = new ComponentName[0];
+    private String[] mNames = new String[0];
+    private int[] mCounts = new int[0];
+    private long[] mLastLaunchTimes = new long[0];
+    // score at the time of the last launch
+    private double[] mScores = new double[0];
+    private int mSize;
+
+    private long mSequence;
+    private int mLogLines;
+
+    /*package*/ LaunchStatistics(PersistenceExecutor persistenceExecutor, File file, File log_file) {
+        mPersistenceExecutor = persistenceExecutor;
+        mFile = file;
+        mLogFile = log_file;
+    }
+
+    /*package*/ void load() {
+        mSlots.clear();
+        mSize = 0;
+        mSequence = 0;
+        mLogLines = 0;
+
+        JSONObject o = FileUtils.readJSONObjectFromFile(mFile);
+        if (o != null) {
+            mSequence = o.optLong(KEY_SEQUENCE);
+            long legacy_time = mFile.lastModified();
+            Iterator<String> keys = o.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (KEY_SEQUENCE.equals(key)) {
+                    continue;
+                }
+                ComponentName cn = ComponentName.unflattenFromString(key);
+                if (cn == null) {
+                    continue;
+                }
+                JSONArray a = o.optJSONArray(key);
+                int slot = getOrCreateSlot(cn, key);
+                if (a == null) {
+                    // count only, written by older versions
+                    int count = o.optInt(key);
+                    mCounts[slot] = count;
+                    mLastLaunchTimes[slot] = legacy_time;
+                    mScores[slot] = count;
+                } else {
+                    mCounts[slot] = a.optInt(0);
+                    mLastLaunchTimes[slot] = a.optLong(1);
+                    mScores[slot] = a.optDouble(2, 0);
+                }
+            }
+        }
+
+        replayLog();
+    }
+
+    /**
+     * Record a launch of this component now.
+     */
+    public void recordLaunch(ComponentName cn) {
+        long now = System.currentTimeMillis();
+        Integer slot = mSlots.get(cn);
+        String name = slot == null ? cn.flattenToShortString() : mNames[slot];
+        long sequence = ++mSequence;
+        applyLaunch(slot == null ? getOrCreateSlot(cn, name) : slot, now);
+
+        final String line = sequence + " " + now + " " + name + "\n";
+        mLogLines++;
+        mPersistenceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendToLog(line);
+            }
+        });
+    }
+
+    public int getLaunchCount(ComponentName cn) {
+        Integer slot = mSlots.get(cn);
+        return slot == null ? 0 : mCounts[slot];
+    }
+
+    /**
+     * @return the launch score of this component at the given time: each launch counts for 1,
+     * divided by 2 every {@link #HALF_LIFE}. 0 if never launched.
+     */
+    public double getScore(ComponentName cn, long now) {
+        Integer slot = mSlots.get(cn);
+        return slot == null ? 0 : decayedScore(slot, now);
+    }
+
+    /**
+     * @return the components with the highest scores now, best first, at most count of them
+     */
+    public ComponentName[] getTopComponents(int count) {
+        if (count <= 0) {
+            return new ComponentName[0];
+        }
+
+        final long now = System.currentTimeMillis();
+        final double[] scores = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            scores[i] = decayedScore(i, now);
+        }
+
+        // min-heap of the best slots found so far, the weakest one on top
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(count, Math.max(1, mSize)), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[a], scores[b]);
+            }
+        });
+        for (int i = 0; i < mSize; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            if (best.size() < count) {
+                best.add(i);
+            } else if (scores[best.peek()] < scores[i]) {
+                best.poll();
+                best.add(i);
+            }
+        }
+
+        int l = best.size();
+        ComponentName[] result = new ComponentName[l];
+        for (int i = l - 1; i >= 0; i--) {
+            result[i] = mComponents[best.poll()];
+        }
+        return result;
+    }
+
+    /**
+     * Fold the log into the snapshot if it has grown too much.
+     */
+    /*package*/ void save() {
+        if (mLogLines > LOG_MAX_LINES) {
+            compact();
+        }
+    }
+
+    /**
+     * Write a snapshot holding all launches and delete the log.
+     */
+    public void compact() {
+        if (mLogLines == 0 && !mLogFile.exists()) {
+            return;
+        }
+
+        final String content;
+        try {
+            JSONObject o = new JSONObject();
+            o.put(KEY_SEQUENCE, mSequence);
+            for (int i = 0; i < mSize; i++) {
+                JSONArray a = new JSONArray();
+                a.put(mCounts[i]);
+                a.put(mLastLaunchTimes[i]);
+                a.put(mScores[i]);
+                o.put(mNames[i], a);
+            }
+            content = o.toString();
+        } catch (JSONException e) {
+            // pass, not likely to happen
+            return;
+        }
+
+        mLogLines = 0;
+        mPersistenceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileUtils.saveStringToFile(content, mFile);
+                    mLogFile.delete();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void applyLaunch(int slot, long time) {
+        mScores[slot] = decayedScore(slot, time) + 1;
+        mCounts[slot]++;
+        mLastLaunchTimes[slot] = time;
+    }
+
+    private double decayedScore(int slot, long now) {
+        long elapsed = now - mLastLaunchTimes[slot];
+        double score = mScores[slot];
+        return elapsed <= 0 ? score : score * Math.pow(0.5, elapsed / HALF_LIFE);
+    }
+
+    private int getOrCreateSlot(ComponentName cn, String name) {
+        Integer slot = mSlots.get(cn);
+        if (slot != null) {
+            return slot;
+        }
+
+        if (mSize == mNames.length) {
+            int capacity = Math.max(16, mSize * 2);
+            mComponents = Arrays.copyOf(mComponents, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mLastLaunchTimes = Arrays.copyOf(mLastLaunchTimes, capacity);
+            mScores = Arrays.copyOf(mScores, capacity);
+        }
+        int s = mSize++;
+        mComponents[s] = cn;
+        mNames[s] = name;
+        mCounts[s] = 0;
+        mLastLaunchTimes[s] = 0;
+        mScores[s] = 0;
+        mSlots.put(cn, s);
+        return s;
+    }
+
+    private void replayLog() {
+        if (!mLogFile.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mLogFile), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mLogLines++;
+                int s1 = line.indexOf(' ');
+                int s2 = s1 == -1 ? -1 : line.indexOf(' ', s1 + 1);
+                if (s2 == -1) {
+                    // truncated write
+                    continue;
+                }
+                try {
+                    long sequence = Long.parseLong(line.substring(0, s1));
+                    long time = Long.parseLong(line.substring(s1 + 1, s2));
+                    String name = line.substring(s2 + 1);
+                    ComponentName cn = ComponentName.unflattenFromString(name);
+                    if (sequence <= mSequence || cn == null) {
+                        // already in the snapshot
+                        continue;
+                    }
+                    mSequence = sequence;
+                    applyLaunch(getOrCreateSlot(cn, name), time);
+                } catch (NumberFormatException e) {
+                    // pass, corrupted line
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    private void appendToLog(String line) {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(mLogFile, true);
+            fos.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (fos != null) try {
+                fos.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+}
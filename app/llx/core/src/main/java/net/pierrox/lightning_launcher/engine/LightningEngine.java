@@ -9,6 +9,7 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Process;
 import android.util.Pair;
+import android.util.SparseArray;
 import android.util.SparseIntArray;
 
 import net.pierrox.lightning_launcher.LLApp;
@@ -22,6 +23,8 @@ import net.pierrox.lightning_launcher.data.IconPack;
 import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.JsonLoader;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
+import net.pierrox.lightning_launcher.data.PageItemsStore;
 import net.pierrox.lightning_launcher.data.PageProcessor;
 import net.pierrox.lightning_launcher.data.Shortcut;
 import net.pierrox.lightning_launcher.data.Utils;
@@ -47,9 +50,13 @@ public class LightningEngine implements Page.PageListener {
     private static final String TOKEN_PIN_COUNT = "pinCount";
     private final File mBaseDir;
     private final PageManager mPageManager;
+    private final FolderOpenerIndex mFolderOpenerIndex;
+    private final LaunchStatistics mLaunchStatistics;
+    private final PersistenceExecutor mPersistenceExecutor;
     private final ScriptManager mScriptManager;
     private final ScriptExecutor mScriptExecutor;
     private final VariableManager mVariableManager;
+    private final TimeScheduler mTimeScheduler;
     private final BuiltinDataCollectors mBuiltinDataCollectors;
     private final ArrayList<GlobalConfigListener> mGlobalConfigListeners = new ArrayList<>();
     private final ArrayList<Page.PageListener> mPageListeners = new ArrayList<>();
@@ -58,11 +65,10 @@ public class LightningEngine implements Page.PageListener {
     private GlobalConfig mGlobalConfig;
     private int mResumedPagesCount;
 
-    private JSONObject mLaunchStatistics;
-
     private JSONObject mAppShortcuts;
     /***************************************** SAVE DATA ***********************************/
 
+    // capture data on the UI thread, files are written by the persistence executor
     private final Runnable mSaveDataRunnable = new Runnable() {
         @Override
         public void run() {
@@ -70,11 +76,13 @@ public class LightningEngine implements Page.PageListener {
 
             saveGlobalConfig();
 
-            saveLaunchStatistics();
+            mLaunchStatistics.save();
 
             saveAppShortcuts();
 
-            mPageManager.savePagesSync();
+            mPageManager.savePagesAsync();
+
+            mFolderOpenerIndex.save();
         }
     };
 
@@ -84,11 +92,15 @@ public class LightningEngine implements Page.PageListener {
 
         mHandler = new Handler();
 
+        mPersistenceExecutor = new PersistenceExecutor();
         mPageManager = new PageManager();
+        mFolderOpenerIndex = new FolderOpenerIndex(this, FileUtils.getFolderOpenersFile(mBaseDir));
+        mLaunchStatistics = new LaunchStatistics(mPersistenceExecutor, FileUtils.getStatisticsFile(mBaseDir), FileUtils.getStatisticsLogFile(mBaseDir));
         mScriptManager = new ScriptManager(this);
         mScriptExecutor = new ScriptExecutor(this);
         mVariableManager = new VariableManager(this, FileUtils.getVariablesFile(mBaseDir));
-        mBuiltinDataCollectors = new BuiltinDataCollectors(mContext, mVariableManager);
+        mTimeScheduler = new TimeScheduler(mContext);
+        mBuiltinDataCollectors = new BuiltinDataCollectors(mContext, mTimeScheduler, mVariableManager);
     }
 
     public void init() {
@@ -96,7 +108,9 @@ public class LightningEngine implements Page.PageListener {
 
         loadAppShortcuts();
 
-        loadLaunchStatistics();
+        mLaunchStatistics.load();
+
+        mFolderOpenerIndex.load();
 
         loadGlobalConfig();
 
@@ -109,6 +123,8 @@ public class LightningEngine implements Page.PageListener {
         mBuiltinDataCollectors.end();
 
         mScriptExecutor.terminate();
+
+        mPersistenceExecutor.shutdown();
     }
 
     /**
@@ -158,6 +174,14 @@ public class LightningEngine implements Page.PageListener {
         return mPageManager;
     }
 
+    public PersistenceExecutor getPersistenceExecutor() {
+        return mPersistenceExecutor;
+    }
+
+    public LaunchStatistics getLaunchStatistics() {
+        return mLaunchStatistics;
+    }
+
     public ScriptManager getScriptManager() {
         return mScriptManager;
     }
@@ -178,6 +202,10 @@ public class LightningEngine implements Page.PageListener {
         return mBuiltinDataCollectors;
     }
 
+    public TimeScheduler getTimeScheduler() {
+        return mTimeScheduler;
+    }
+
     public Page getOrLoadPage(int id) {
         return mPageManager.getOrLoadPage(id);
     }
@@ -233,9 +261,9 @@ public class LightningEngine implements Page.PageListener {
     }
 
     @Override
-    public void onPageModified(Page page) {
+    public void onPageModified(Page page, PageChangeSet changes) {
         Utils.updateContainerIconIfNeeded(page);
-        for (Page.PageListener listener : mPageListeners) listener.onPageModified(page);
+        for (Page.PageListener listener : mPageListeners) listener.onPageModified(page, changes);
     }
 
     @Override
@@ -251,6 +279,8 @@ public class LightningEngine implements Page.PageListener {
 
     @Override
     public void onPageItemAdded(Item item) {
+        mFolderOpenerIndex.onItemAdded(item);
+
         for (Page.PageListener listener : mPageListeners) listener.onPageItemAdded(item);
 
         Intent intent = getAppShortcutIntent(item);
@@ -274,6 +304,8 @@ public class LightningEngine implements Page.PageListener {
 
     @Override
     public void onPageItemRemoved(Page page, Item item) {
+        mFolderOpenerIndex.onItemRemoved(item);
+
         Intent intent = getAppShortcutIntent(item);
         if (intent != null) {
             String pkg = intent.getStringExtra(Shortcut.INTENT_EXTRA_APP_SHORTCUT_PKG);
@@ -397,6 +429,8 @@ public class LightningEngine implements Page.PageListener {
 
     @Override
     public void onFolderPageIdChanged(Folder folder, int oldPageId) {
+        mFolderOpenerIndex.onFolderPageIdChanged(folder);
+
         Utils.updateFolderIcon(folder);
         for (Page.PageListener listener : mPageListeners)
             listener.onFolderPageIdChanged(folder, oldPageId);
@@ -404,6 +438,8 @@ public class LightningEngine implements Page.PageListener {
 
     @Override
     public void onPageRemoved(Page page) {
+        mFolderOpenerIndex.removePage(page.id);
+
         // see comment for onPageItemRemoved
         for (int i = mPageListeners.size() - 1; i >= 0; i--) {
             Page.PageListener listener = mPageListeners.get(i);
@@ -416,9 +452,13 @@ public class LightningEngine implements Page.PageListener {
         for (Page.PageListener listener : mPageListeners) listener.onPageLoaded(page);
     }
 
+    /**
+     * Save all modified data and wait until files are written.
+     */
     public void saveData() {
         cancelDelayedSaveData();
         mSaveDataRunnable.run();
+        mPersistenceExecutor.flush();
     }
 
     public void saveDataDelayed() {
@@ -494,10 +534,11 @@ public class LightningEngine implements Page.PageListener {
 
     private void saveGlobalConfig() {
         mGlobalConfig.version = GLOBAL_CONFIG_FILE_VERSION;
-        JsonLoader.saveObjectToFile(mGlobalConfig, FileUtils.getGlobalConfigFile(mBaseDir));
+        mPersistenceExecutor.saveStringToFile(JsonLoader.toJSONObject(mGlobalConfig, null).toString(), FileUtils.getGlobalConfigFile(mBaseDir));
     }
 
     public void reloadGlobalConfig() {
+        mPersistenceExecutor.flush();
         loadGlobalConfig();
         evaluateGlobalConfig();
     }
@@ -512,44 +553,10 @@ public class LightningEngine implements Page.PageListener {
     /************************************** LAUNCH STATISTICS *************************************/
 
     public void updateLaunchStatisticsForShortcut(Shortcut shortcut) {
-        Intent intent = new Intent(shortcut.getIntent());
-        ComponentName cn = intent.getComponent();
+        Intent intent = shortcut.getIntent();
+        ComponentName cn = intent == null ? null : intent.getComponent();
         if (cn != null) {
-            String key = cn.flattenToShortString();
-            int count = mLaunchStatistics.optInt(key);
-            try {
-                mLaunchStatistics.put(key, count + 1);
-            } catch (JSONException e) {
-            }
-        }
-    }
-
-    public int getShortcutLaunchCount(Shortcut s) {
-        Intent intent = s.getIntent();
-        if (intent != null) {
-            ComponentName component = intent.getComponent();
-            if (component != null) {
-                String key = component.flattenToShortString();
-                return mLaunchStatistics.optInt(key);
-            }
-        }
-        return 0;
-    }
-
-    private void loadLaunchStatistics() {
-        File statistics_file = FileUtils.getStatisticsFile(mBaseDir);
-        mLaunchStatistics = FileUtils.readJSONObjectFromFile(statistics_file);
-        if (mLaunchStatistics == null) {
-            mLaunchStatistics = new JSONObject();
-        }
-    }
-
-    private void saveLaunchStatistics() {
-        try {
-            File out = FileUtils.getStatisticsFile(mBaseDir);
-            FileUtils.saveStringToFile(mLaunchStatistics.toString(), out);
-        } catch (Exception e) {
-            // pass
+            mLaunchStatistics.recordLaunch(cn);
         }
     }
 
@@ -626,12 +633,8 @@ public class LightningEngine implements Page.PageListener {
     }
 
     private void saveAppShortcuts() {
-        try {
-            File out = FileUtils.getPinnedAppShortcutsFile(mBaseDir);
-            FileUtils.saveStringToFile(mAppShortcuts.toString(), out);
-        } catch (Exception e) {
-            // pass
-        }
+        File out = FileUtils.getPinnedAppShortcutsFile(mBaseDir);
+        mPersistenceExecutor.saveStringToFile(mAppShortcuts.toString(), out);
     }
 
     /**
@@ -679,18 +682,10 @@ public class LightningEngine implements Page.PageListener {
 
     public ArrayList<Folder> findAllFolderPageOpeners(int folder_page) {
         ArrayList<Folder> openers = new ArrayList<>();
-        for (int n : mPageManager.getAllPagesIds()) {
-            if (n == folder_page && folder_page != Page.USER_MENU_PAGE) continue;
-
-            Page p = mPageManager.getOrLoadPage(n);
-
-            for (Item item : p.items) {
-                if (item instanceof Folder) {
-                    Folder f = (Folder) item;
-                    if (f.getFolderPageId() == folder_page) {
-                        openers.add(f);
-                    }
-                }
+        for (int id : mFolderOpenerIndex.getOpenerIds(folder_page)) {
+            Folder f = getFolderPageOpener(id, folder_page);
+            if (f != null) {
+                openers.add(f);
             }
         }
 
@@ -702,45 +697,41 @@ public class LightningEngine implements Page.PageListener {
             return null;
         }
 
-        ArrayList<Page> pages = mPageManager.getLoadedPages();
-        for (Page p : pages) {
-            // skip the page containing this item to avoid nasty recursive calls, except for the user menu which includes its opener
-            if (p.id == folder_page && folder_page != Page.USER_MENU_PAGE) continue;
+        int[] ids = mFolderOpenerIndex.getOpenerIds(folder_page);
 
-            if (p.items == null) {
-                mPageManager.getOrLoadPage(p.id);
-            }
-            for (Item item : p.items) {
-                if (item instanceof Folder) {
-                    Folder f = (Folder) item;
-                    if (f.getFolderPageId() == folder_page) {
-                        return f;
-                    }
+        // prefer openers in currently loaded pages
+        for (int id : ids) {
+            if (mPageManager.getPage(Utils.getPageForItemId(id)) != null) {
+                Folder f = getFolderPageOpener(id, folder_page);
+                if (f != null) {
+                    return f;
                 }
             }
         }
 
-        // not found in currently loaded pages, try again with unloaded pages
-        for (int n : mPageManager.getAllPagesIds()) {
-
-            Page p = mPageManager.getPage(n);
-            if (p != null) {
-                // already traversed in the loop above
-                continue;
+        for (int id : ids) {
+            Folder f = getFolderPageOpener(id, folder_page);
+            if (f != null) {
+                return f;
             }
+        }
 
-            p = mPageManager.getOrLoadPage(n);
+        return null;
+    }
 
-            if (p.id == folder_page) continue;
+    /**
+     * Map the item id given by the opener index to the folder, or null if the entry does not match anymore.
+     */
+    private Folder getFolderPageOpener(int opener_id, int folder_page) {
+        int p = Utils.getPageForItemId(opener_id);
+        // skip the page containing this item to avoid nasty recursive calls, except for the user menu which includes its opener
+        if (p == folder_page && folder_page != Page.USER_MENU_PAGE) {
+            return null;
+        }
 
-            for (Item item : p.items) {
-                if (item instanceof Folder) {
-                    Folder f = (Folder) item;
-                    if (f.getFolderPageId() == folder_page) {
-                        return f;
-                    }
-                }
-            }
+        Item item = mPageManager.getOrLoadPage(p).findItemById(opener_id);
+        if (item instanceof Folder && ((Folder) item).getFolderPageId() == folder_page) {
+            return (Folder) item;
         }
 
         return null;
@@ -760,6 +751,7 @@ public class LightningEngine implements Page.PageListener {
 
     public class PageManager {
         private final ArrayList<Page> mPages = new ArrayList<>();
+        private final SparseArray<Page> mPagesById = new SparseArray<>();
 
         private PageManager() {
         }
@@ -788,16 +780,13 @@ public class LightningEngine implements Page.PageListener {
 
         public void clear() {
             mPages.clear();
+            mPagesById.clear();
+            // page files are about to be replaced
+            mFolderOpenerIndex.invalidate();
         }
 
         public Page getPage(int id) {
-            for (Page page : mPages) {
-                if (page.id == id) {
-                    return page;
-                }
-            }
-
-            return null;
+            return mPagesById.get(id);
         }
 
         public Page getOrLoadPage(int id) {
@@ -808,15 +797,38 @@ public class LightningEngine implements Page.PageListener {
 
             page = new Page(LightningEngine.this, id);
             mPages.add(page);
+            mPagesById.put(id, page);
 
             page.create();
 
+            mFolderOpenerIndex.updatePage(page);
+
             return page;
         }
 
         public void savePagesSync() {
+            savePagesAsync();
+            mPersistenceExecutor.flush();
+        }
+
+        public void savePagesAsync() {
             for (Page p : new ArrayList<Page>(mPages)) {
-                p.save();
+                p.saveAsync();
+            }
+        }
+
+        /**
+         * Make sure that items files of loaded pages hold every change, without pending journal deltas.
+         * Pages which are not loaded are left as is, their journal is replayed when loading them.
+         * Must be called from the UI thread.
+         */
+        public void compactPagesSync() {
+            // pending saves may append deltas
+            mPersistenceExecutor.flush();
+            for (Page page : new ArrayList<Page>(mPages)) {
+                if (PageItemsStore.hasPendingDeltas(page.getItemsJournalFile())) {
+                    page.compactItems();
+                }
             }
         }
 
@@ -825,6 +837,7 @@ public class LightningEngine implements Page.PageListener {
             page.remove();
             page.destroy();
             mPages.remove(page);
+            mPagesById.remove(p);
         }
 
         public Page clonePage(Page pageFrom, boolean keepAppWidgetId) {
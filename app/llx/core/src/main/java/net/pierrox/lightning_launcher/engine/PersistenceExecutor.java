@@ -0,0 +1,122 @@
+package net.pierrox.lightning_launcher.engine;
+
+import android.os.Process;
+
+import net.pierrox.lightning_launcher.data.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs file writes of an engine on a single background thread, in submission order.
+ * Data must be snapshotted by the caller before submitting a task: tasks must not read
+ * live objects owned by the UI thread.
+ */
+public class PersistenceExecutor {
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final ExecutorService mExecutor;
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private volatile Thread mThread;
+
+    public PersistenceExecutor() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "LL-persistence");
+                t.setDaemon(true);
+                mThread = t;
+                return t;
+            }
+        });
+    }
+
+    public void execute(final Runnable task) {
+        mPendingCount.incrementAndGet();
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    mPendingCount.decrementAndGet();
+                }
+            }
+        };
+        try {
+            mExecutor.execute(r);
+        } catch (RejectedExecutionException e) {
+            // shut down: late writes are still done, on the calling thread
+            r.run();
+        }
+    }
+
+    public void saveStringToFile(final String what, final File out) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileUtils.saveStringToFile(what, out);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    public boolean hasPendingTasks() {
+        return mPendingCount.get() > 0;
+    }
+
+    /**
+     * Block until all tasks submitted so far have been executed.
+     */
+    public void flush() {
+        if (mPendingCount.get() == 0 || Thread.currentThread() == mThread) {
+            return;
+        }
+
+        try {
+            if (mExecutor.isShutdown()) {
+                mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } else {
+                mExecutor.submit(NOOP).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // pass, cannot happen with a noop
+        } catch (RejectedExecutionException e) {
+            // shut down meanwhile
+            flush();
+        }
+    }
+
+    /**
+     * Execute pending tasks and stop the background thread. Tasks submitted afterwards are run
+     * on the calling thread.
+     */
+    public void shutdown() {
+        flush();
+        mExecutor.shutdown();
+    }
+}
@@ -21,6 +21,7 @@ import android.os.Bundle;
 import android.os.Process;
 import android.util.DisplayMetrics;
 import android.util.Pair;
+import android.util.SparseArray;
 import android.view.Display;
 import android.view.HapticFeedbackConstants;
 import android.view.LayoutInflater;
@@ -54,6 +55,7 @@ import net.pierrox.lightning_launcher.data.Folder;
 import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.LightningIntent;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
 import net.pierrox.lightning_launcher.data.Shortcut;
 import net.pierrox.lightning_launcher.data.StopPoint;
 import net.pierrox.lightning_launcher.data.Unlocker;
@@ -83,6 +85,7 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.ItemViewListener, Page.PageListener, FolderView.OnTapOutsideListener {
 
@@ -97,10 +100,16 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
     private static final String SIS_LAST_TOUCHED_Y = "sc";
     private static final String SIS_LAST_TOUCHED_ITEM_ID = "sd";
     private static final String SIS_LAST_TOUCHED_ITEM_IL = "se";
+    private static final ItemLayout[] NO_ITEM_LAYOUTS = new ItemLayout[0];
+    private static final ItemView[] NO_ITEM_VIEWS = new ItemView[0];
     private final ViewGroup mFolderContainer;
     private final ArrayList<FolderView> mFolderViews;
     private final ArrayList<ItemLayout> mRootItemLayouts = new ArrayList<>();
     private final ArrayList<ItemLayout> mItemLayouts = new ArrayList<>();
+    // item layouts by page id and item views by item id, maintained as layouts and views come and go
+    // arrays are replaced, never modified, so that callers can keep them while layouts change
+    private final SparseArray<ItemLayout[]> mItemLayoutsByPage = new SparseArray<>();
+    private final SparseArray<ItemView[]> mItemViewsByItem = new SparseArray<>();
     protected Context mContext;
     protected SystemBarTintManager mSystemBarTintManager;
     private Window mWindow;
@@ -1236,38 +1245,30 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
     public void takeItemLayoutOwnership(ItemLayout itemLayout) {
         mItemLayouts.add(itemLayout);
         itemLayout.setScreen(this);
-    }
 
-    public int getPageUseCount(int pageId) {
-        int count = 0;
-        for (ItemLayout il : mItemLayouts) {
-            if (il.getPage().id == pageId) {
-                count++;
+        // the item layout may already display a page when ownership is taken again
+        Page page = itemLayout.getPage();
+        if (page != null) {
+            indexItemLayout(itemLayout, page.id);
+        }
+        for (int i = itemLayout.getChildCount() - 1; i >= 0; i--) {
+            View child = itemLayout.getChildAt(i);
+            if (child instanceof ItemView) {
+                indexItemView((ItemView) child);
             }
         }
-        return count;
+    }
+
+    public int getPageUseCount(int pageId) {
+        return getItemLayoutsForPage(pageId).length;
     }
 
     /**
      * Retrieve already loaded ItemLayout displaying a given page.
+     * The returned array is shared and must not be modified.
      */
     public ItemLayout[] getItemLayoutsForPage(int pageId) {
-        int count = 0;
-        ItemLayout[] ils = null;
-        for (int i = 0; i < 2; i++) {
-            for (ItemLayout il : mItemLayouts) {
-                if (il.getPage().id == pageId) {
-                    if (i == 1) ils[count] = il;
-                    count++;
-                }
-            }
-            if (i == 0) {
-                ils = new ItemLayout[count];
-                count = 0;
-            }
-        }
-
-        return ils;
+        return mItemLayoutsByPage.get(pageId, NO_ITEM_LAYOUTS);
     }
 
     /**
@@ -1374,26 +1375,28 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
         if (mIsResumed) il.pause();
         il.destroy();
         mItemLayouts.remove(il);
+        Page page = il.getPage();
+        if (page != null) {
+            unindexItemLayout(il, page.id);
+        }
+        // destroyed item views are kept by the item layout, but they are not displayed anymore
+        for (int i = il.getChildCount() - 1; i >= 0; i--) {
+            View child = il.getChildAt(i);
+            if (child instanceof ItemView) {
+                unindexItemView((ItemView) child);
+            }
+        }
         if (mTargetItemLayout == il) {
             mTargetItemLayout = getTopmostItemLayout();
         }
     }
 
+    /**
+     * Retrieve item views currently displaying an item, in any item layout of this screen.
+     * The returned array is shared and must not be modified.
+     */
     public ItemView[] getItemViewsForItem(int itemId) {
-        // the item view may not always be already constructed in each item view, so take care of this
-        ItemLayout[] ils = getItemLayoutsForPage(Utils.getPageForItemId(itemId));
-        int length = ils.length;
-        int count = 0;
-        ItemView[] itemViews = new ItemView[length];
-        for (int i = 0; i < length; i++) {
-            ItemView itemView = ils[i].getItemView(itemId);
-            if (itemView != null) {
-                itemViews[count++] = itemView;
-            }
-        }
-        ItemView[] result = new ItemView[count];
-        System.arraycopy(itemViews, 0, result, 0, count);
-        return result;
+        return mItemViewsByItem.get(itemId, NO_ITEM_VIEWS);
     }
 
 //    public Page getTopmostPage() {
@@ -1404,6 +1407,71 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
         return getItemViewsForItem(item.getId());
     }
 
+    private void indexItemLayout(ItemLayout il, int pageId) {
+        ItemLayout[] ils = mItemLayoutsByPage.get(pageId, NO_ITEM_LAYOUTS);
+        if (indexOf(ils, il) == -1) {
+            mItemLayoutsByPage.put(pageId, append(ils, il));
+        }
+    }
+
+    private void unindexItemLayout(ItemLayout il, int pageId) {
+        ItemLayout[] ils = mItemLayoutsByPage.get(pageId);
+        if (ils != null) {
+            int index = indexOf(ils, il);
+            if (index != -1) {
+                if (ils.length == 1) {
+                    mItemLayoutsByPage.remove(pageId);
+                } else {
+                    mItemLayoutsByPage.put(pageId, removeAt(ils, index));
+                }
+            }
+        }
+    }
+
+    private void indexItemView(ItemView itemView) {
+        int itemId = itemView.getItem().getId();
+        ItemView[] itemViews = mItemViewsByItem.get(itemId, NO_ITEM_VIEWS);
+        if (indexOf(itemViews, itemView) == -1) {
+            mItemViewsByItem.put(itemId, append(itemViews, itemView));
+        }
+    }
+
+    private void unindexItemView(ItemView itemView) {
+        int itemId = itemView.getItem().getId();
+        ItemView[] itemViews = mItemViewsByItem.get(itemId);
+        if (itemViews != null) {
+            int index = indexOf(itemViews, itemView);
+            if (index != -1) {
+                if (itemViews.length == 1) {
+                    mItemViewsByItem.remove(itemId);
+                } else {
+                    mItemViewsByItem.put(itemId, removeAt(itemViews, index));
+                }
+            }
+        }
+    }
+
+    private static int indexOf(Object[] array, Object element) {
+        for (int i = array.length - 1; i >= 0; i--) {
+            if (array[i] == element) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = element;
+        return result;
+    }
+
+    private static <T> T[] removeAt(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
     /***************************************** VARIOUS PAGE ACCESSORS ***********************************/
     public ItemLayout getTopmostItemLayout() {
         FolderView fv = findTopmostFolderView();
@@ -2169,13 +2237,21 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
     }
 
     @Override
-    public void onPageModified(Page page) {
-        if (page == getCurrentRootPage()) {
-            // TODO this would be nice to use a more specific event handler in order to avoid useless background configuration
+    public void onPageModified(Page page, PageChangeSet changes) {
+        if (page == getCurrentRootPage() && (changes == null || changes.isPageConfigChanged())) {
             configureBackground(page);
         }
 
         ItemLayout[] ils = getItemLayoutsForPage(page.id);
+        if (changes != null) {
+            if (!changes.isEmpty()) {
+                for (ItemLayout il : ils) {
+                    applyPageChanges(il, changes);
+                }
+            }
+            return;
+        }
+
         for (ItemLayout il : ils) {
 
             // save the old view hierarchy
@@ -2199,6 +2275,33 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
         }
     }
 
+    private void applyPageChanges(ItemLayout il, PageChangeSet changes) {
+        // save the views of replaced items only, other views are kept
+        ArrayList<Item> replacedItems = changes.getReplacedItems();
+        ArrayList<ItemViewUpdate> updates = new ArrayList<>(replacedItems.size());
+        for (Item item : replacedItems) {
+            ItemView itemView = il.getItemView(item);
+            if (itemView != null) {
+                addItemViewtoUpdateList(updates, itemView);
+            }
+        }
+
+        // apply view modifications
+        il.onPageModified(changes);
+
+        // update references with the new views
+        for (int i = updates.size() - 1; i >= 0; i--) {
+            ItemViewUpdate update = updates.get(i);
+            ItemView newItemView = il.getItemView(update.oldItemView.getItem());
+            if (newItemView == null) {
+                updates.remove(i);
+            } else {
+                matchItemViewUpdateList(update, newItemView);
+            }
+        }
+        updateItemViewReferences(updates);
+    }
+
     @Override
     public void onPageEditModeEntered(Page page) {
 
@@ -2582,6 +2685,26 @@ public abstract class Screen implements ItemLayout.ItemLayoutListener, ItemView.
 
     }
 
+    @Override
+    public void onItemLayoutPageChanged(ItemLayout itemLayout, Page oldPage, Page newPage) {
+        if (oldPage != null) {
+            unindexItemLayout(itemLayout, oldPage.id);
+        }
+        if (mItemLayouts.contains(itemLayout)) {
+            indexItemLayout(itemLayout, newPage.id);
+        }
+    }
+
+    @Override
+    public void onItemLayoutItemViewAdded(ItemLayout itemLayout, ItemView itemView) {
+        indexItemView(itemView);
+    }
+
+    @Override
+    public void onItemLayoutItemViewRemoved(ItemLayout itemLayout, ItemView itemView) {
+        unindexItemView(itemView);
+    }
+
     @Override
     public void onItemLayoutPageLoaded(ItemLayout itemLayout, Page oldPage, Page newPage) {
         if (mLastTouchedItemView != null) {
@@ -0,0 +1,217 @@
+package net.pierrox.lightning_launcher.engine;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Shared clock for everything displaying the time.
+ * Ticks are aligned on wall clock seconds or minutes, depending on the finest granularity needed
+ * by registered listeners: when only minutes are displayed the scheduler wakes up once a minute.
+ * Nothing runs when no listener is registered, listeners are expected to register only while
+ * resumed.
+ * Date formatting is cached per pattern, so that items using the same pattern share the result.
+ * This class must be used from the UI thread.
+ */
+public class TimeScheduler {
+    public static final int GRANULARITY_SECOND = 1000;
+    public static final int GRANULARITY_MINUTE = 60000;
+
+    // tick slightly after the boundary so that the new second or minute is always displayed
+    private static final int TICK_DELAY = 20;
+
+    public interface TimeListener {
+        void onTimeTick(long now);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    private final ArrayList<Registration> mRegistrations = new ArrayList<>();
+    private Registration[] mTmpRegistrations = new Registration[0];
+    private int mTmpRegistrationsCount;
+    private boolean mRegistrationsChanged;
+    private int mSecondListenersCount;
+    private long mLastTickMinute = -1;
+    private boolean mReceiverRegistered;
+
+    private final HashMap<String, CachedFormat> mFormats = new HashMap<>();
+    private final Date mTmpDate = new Date();
+
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tick(false);
+        }
+    };
+
+    private final BroadcastReceiver mTimeChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // formats hold the time zone they were created with
+            mFormats.clear();
+            tick(true);
+        }
+    };
+
+    /*package*/ TimeScheduler(Context context) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler();
+    }
+
+    /**
+     * Start receiving ticks. The listener is not called immediately.
+     *
+     * @param granularity either GRANULARITY_SECOND or GRANULARITY_MINUTE
+     */
+    public void register(TimeListener listener, int granularity) {
+        int index = indexOf(listener);
+        if (index != -1) {
+            if (mRegistrations.get(index).granularity == granularity) {
+                return;
+            }
+            removeAt(index);
+        }
+
+        mRegistrations.add(new Registration(listener, granularity));
+        mRegistrationsChanged = true;
+        if (granularity == GRANULARITY_SECOND) {
+            mSecondListenersCount++;
+        }
+
+        if (!mReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            mContext.registerReceiver(mTimeChangedReceiver, filter);
+            mReceiverRegistered = true;
+        }
+
+        schedule();
+    }
+
+    public void unregister(TimeListener listener) {
+        int index = indexOf(listener);
+        if (index == -1) {
+            return;
+        }
+
+        removeAt(index);
+
+        if (mRegistrations.isEmpty()) {
+            mHandler.removeCallbacks(mTickRunnable);
+            if (mReceiverRegistered) {
+                mContext.unregisterReceiver(mTimeChangedReceiver);
+                mReceiverRegistered = false;
+            }
+            mLastTickMinute = -1;
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * Format a date, reusing the result computed for another caller within the same second.
+     *
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public String format(String pattern, long time) {
+        CachedFormat f = mFormats.get(pattern);
+        if (f == null) {
+            f = new CachedFormat(new SimpleDateFormat(pattern));
+            mFormats.put(pattern, f);
+        }
+        long second = time / 1000;
+        if (second != f.second) {
+            mTmpDate.setTime(time);
+            f.text = f.format.format(mTmpDate);
+            f.second = second;
+        }
+        return f.text;
+    }
+
+    private void tick(boolean force) {
+        long now = System.currentTimeMillis();
+        long minute = now / GRANULARITY_MINUTE;
+        boolean new_minute = force || minute != mLastTickMinute;
+        mLastTickMinute = minute;
+
+        if (mRegistrationsChanged) {
+            mTmpRegistrations = mRegistrations.toArray(mTmpRegistrations);
+            mTmpRegistrationsCount = mRegistrations.size();
+            mRegistrationsChanged = false;
+        }
+        // iterate on a copy, listeners may register or unregister while being notified
+        Registration[] registrations = mTmpRegistrations;
+        int count = mTmpRegistrationsCount;
+        for (int i = 0; i < count; i++) {
+            Registration r = registrations[i];
+            if (r.active && (new_minute || r.granularity == GRANULARITY_SECOND)) {
+                r.listener.onTimeTick(now);
+            }
+        }
+
+        schedule();
+    }
+
+    private void schedule() {
+        mHandler.removeCallbacks(mTickRunnable);
+        if (mRegistrations.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (mLastTickMinute == -1) {
+            mLastTickMinute = now / GRANULARITY_MINUTE;
+        }
+        int period = mSecondListenersCount > 0 ? GRANULARITY_SECOND : GRANULARITY_MINUTE;
+        long delay = period - now % period + TICK_DELAY;
+        mHandler.postDelayed(mTickRunnable, delay);
+    }
+
+    private int indexOf(TimeListener listener) {
+        for (int i = mRegistrations.size() - 1; i >= 0; i--) {
+            if (mRegistrations.get(i).listener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        Registration r = mRegistrations.remove(index);
+        r.active = false;
+        mRegistrationsChanged = true;
+        if (r.granularity == GRANULARITY_SECOND) {
+            mSecondListenersCount--;
+        }
+    }
+
+    private static class Registration {
+        private final TimeListener listener;
+        private final int granularity;
+        private boolean active = true;
+
+        private Registration(TimeListener listener, int granularity) {
+            this.listener = listener;
+            this.granularity = granularity;
+        }
+    }
+
+    private static class CachedFormat {
+        private final SimpleDateFormat format;
+        private long second = Long.MIN_VALUE;
+        private String text;
+
+        private CachedFormat(SimpleDateFormat format) {
+            this.format = format;
+        }
+    }
+}
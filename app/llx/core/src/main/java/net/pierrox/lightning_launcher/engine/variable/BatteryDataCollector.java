@@ -51,6 +51,15 @@ import net.pierrox.lightning_launcher.R;
 
     }
 
+    @Override
+    public void refresh() {
+        // the last battery status is sticky, no need to register for real
+        Intent intent = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (intent != null) {
+            mBatteryReceiver.onReceive(mContext, intent);
+        }
+    }
+
     @Override
     public BuiltinVariable[] getBuiltinVariables(Resources resources) {
         return new BuiltinVariable[]{
@@ -3,11 +3,29 @@ package net.pierrox.lightning_launcher.engine.variable;
 import android.content.Context;
 import android.content.res.Resources;
 import android.os.Handler;
+import android.os.Process;
 import android.util.Pair;
 
 import net.pierrox.lightning_launcher.R;
+import net.pierrox.lightning_launcher.engine.TimeScheduler;
 
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Owner of builtin variable collectors.
+ * A collector only runs while the engine is resumed and some binding depends on one of its
+ * variables: VariableManager reports targets using builtin variables. Scripts reading a variable
+ * of a stopped collector trigger a single refresh. The battery collector only listens to a
+ * broadcast and is not worth gating: it runs whenever the engine is resumed.
+ * Blocking reads are made on a background scheduler shared by polling collectors.
+ */
 public class BuiltinDataCollectors {
+    public static final long CPU_POLLING_PERIOD = 3000;
+    public static final long STORAGE_POLLING_PERIOD = 10000;
+
     private static final String VAR_SCREEN_ORIENTATION = "screen_orient";
     private static final String VAR_SCREEN_WIDTH = "screen_width";
     private static final String VAR_SCREEN_HEIGHT = "screen_height";
@@ -16,16 +34,37 @@ public class BuiltinDataCollectors {
     private final Handler mHandler;
     private final VariableManager mVariableManager;
     private final DataCollector[] mDataCollectors;
+    private final ScheduledExecutorService mScheduler;
+    private final TimeDataCollector mTimeDataCollector;
+    private final BatteryDataCollector mBatteryDataCollector;
+    private final HashMap<String, CollectorState> mCollectorsByVariable = new HashMap<>();
     private int mResumedCount;
 
-    public BuiltinDataCollectors(Context context, VariableManager vm) {
+    public BuiltinDataCollectors(Context context, TimeScheduler timeScheduler, VariableManager vm) {
         mVariableManager = vm;
         mHandler = new Handler();
 
-        TimeDataCollector timeDataCollector = new TimeDataCollector(mHandler, mVariableManager);
-        StorageDataCollector storageDataCollector = new StorageDataCollector(context, mHandler, mVariableManager);
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "LL-collectors");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        TimeDataCollector timeDataCollector = new TimeDataCollector(timeScheduler, mVariableManager);
+        StorageDataCollector storageDataCollector = new StorageDataCollector(context, STORAGE_POLLING_PERIOD, mScheduler, mHandler, mVariableManager);
         BatteryDataCollector batteryDataCollector = new BatteryDataCollector(context, mVariableManager);
-        CpuDataCollector cpuDataCollector = new CpuDataCollector(mHandler, mVariableManager);
+        CpuDataCollector cpuDataCollector = new CpuDataCollector(CPU_POLLING_PERIOD, mScheduler, mHandler, mVariableManager);
+        mTimeDataCollector = timeDataCollector;
+        mBatteryDataCollector = batteryDataCollector;
         mDataCollectors = new DataCollector[]{
                 timeDataCollector,
                 storageDataCollector,
@@ -41,6 +80,16 @@ public class BuiltinDataCollectors {
                 new BuiltinVariable(VAR_SCREEN_HEIGHT, resources.getString(R.string.gb_h)),
         };
 
+        for (DataCollector collector : mDataCollectors) {
+            if (collector == batteryDataCollector) {
+                continue;
+            }
+            CollectorState state = new CollectorState(collector);
+            for (BuiltinVariable v : collector.getBuiltinVariables(resources)) {
+                mCollectorsByVariable.put(v.name, state);
+            }
+        }
+
         mBuiltinVariables = new Pair[]{
                 new Pair<>(resources.getString(R.string.bvc_dt), timeDataCollector.getBuiltinVariables(resources)),
                 new Pair<>(resources.getString(R.string.bvc_screen), screen_variables),
@@ -52,19 +101,85 @@ public class BuiltinDataCollectors {
 
     public void end() {
         for (DataCollector collector : mDataCollectors) collector.end();
+        mScheduler.shutdown();
     }
 
     public void resume() {
-        if (mResumedCount == 0) {
-            for (DataCollector collector : mDataCollectors) collector.onResume();
-        }
         mResumedCount++;
+        if (mResumedCount == 1) {
+            mBatteryDataCollector.onResume();
+            updateCollectorsState();
+        }
     }
 
     public void pause() {
         mResumedCount--;
         if (mResumedCount == 0) {
-            for (DataCollector collector : mDataCollectors) collector.onPause();
+            mBatteryDataCollector.onPause();
+            updateCollectorsState();
+        }
+    }
+
+    /**
+     * A binding target starts using this variable.
+     */
+    /*package*/ void onVariableReferenced(String name) {
+        CollectorState state = mCollectorsByVariable.get(name);
+        if (state != null) {
+            state.demand++;
+            if (state.collector == mTimeDataCollector) {
+                mTimeDataCollector.onVariableDemandChanged(name, 1);
+            }
+            if (state.demand == 1) {
+                updateCollectorState(state);
+            }
+        }
+    }
+
+    /**
+     * A binding target does not use this variable anymore.
+     */
+    /*package*/ void onVariableReleased(String name) {
+        CollectorState state = mCollectorsByVariable.get(name);
+        if (state != null) {
+            state.demand--;
+            if (state.collector == mTimeDataCollector) {
+                mTimeDataCollector.onVariableDemandChanged(name, -1);
+            }
+            if (state.demand == 0) {
+                updateCollectorState(state);
+            }
+        }
+    }
+
+    /**
+     * A script reads this variable: make sure it is not left with a very old value.
+     * Time variables are always refreshed: while only minutes are bound, the collector ticks once
+     * per minute and seconds would be stale, and setting them is cheap anyway.
+     */
+    /*package*/ void onVariableRead(String name) {
+        CollectorState state = mCollectorsByVariable.get(name);
+        if (state != null && (!state.running || state.collector == mTimeDataCollector)) {
+            state.collector.refresh();
+        }
+    }
+
+    private void updateCollectorsState() {
+        // a collector may provide several variables, hence appear several times
+        for (CollectorState state : mCollectorsByVariable.values()) {
+            updateCollectorState(state);
+        }
+    }
+
+    private void updateCollectorState(CollectorState state) {
+        boolean run = mResumedCount > 0 && state.demand > 0;
+        if (run != state.running) {
+            state.running = run;
+            if (run) {
+                state.collector.onResume();
+            } else {
+                state.collector.onPause();
+            }
         }
     }
 
@@ -79,4 +194,14 @@ public class BuiltinDataCollectors {
         mVariableManager.setVariable(VAR_SCREEN_HEIGHT, height);
         mVariableManager.commit();
     }
+
+    private static class CollectorState {
+        private final DataCollector collector;
+        private int demand;
+        private boolean running;
+
+        private CollectorState(DataCollector collector) {
+            this.collector = collector;
+        }
+    }
 }
@@ -2,12 +2,14 @@ package net.pierrox.lightning_launcher.engine.variable;
 
 import android.content.res.Resources;
 import android.os.Handler;
+import android.os.SystemClock;
 
 import net.pierrox.lightning_launcher.R;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class CpuDataCollector extends PollingDataCollector {
     //    private static String VAR_COUNT = "cpu_count";
@@ -19,38 +21,27 @@ public class CpuDataCollector extends PollingDataCollector {
     private static final String VAR_IOWAIT = "cpu_iowait";
     private static final String VAR_IRQ = "cpu_irq";
     private static final String VAR_SOFTIRQ = "cpu_softirq";
+    // delay between two samples when the previous one is too old
+    private static final long RESAMPLE_DELAY = 500;
+
+    // only accessed from the collector thread
     private CpuUsage mPreviousUsage;
     private CpuUsage mCurrentUsage;
-    private final Runnable mSetVariablesRunnable = new Runnable() {
-        @Override
-        public void run() {
-            long delta = mCurrentUsage.total - mPreviousUsage.total;
-            if (delta != 0) {
-                long user = (mCurrentUsage.total - mCurrentUsage.idle) - (mPreviousUsage.total - mPreviousUsage.idle);
-                mVariableManager.edit();
-                mVariableManager.setVariable(VAR_USAGE, percent(user, delta));
-                mVariableManager.setVariable(VAR_USER, percent(mCurrentUsage.user - mPreviousUsage.user, delta));
-                mVariableManager.setVariable(VAR_NICE, percent(mCurrentUsage.nice - mPreviousUsage.nice, delta));
-                mVariableManager.setVariable(VAR_SYSTEM, percent(mCurrentUsage.system - mPreviousUsage.system, delta));
-                mVariableManager.setVariable(VAR_IDLE, percent(mCurrentUsage.idle - mPreviousUsage.idle, delta));
-                mVariableManager.setVariable(VAR_IOWAIT, percent(mCurrentUsage.iowait - mPreviousUsage.iowait, delta));
-                mVariableManager.setVariable(VAR_IRQ, percent(mCurrentUsage.irq - mPreviousUsage.irq, delta));
-                mVariableManager.setVariable(VAR_SOFTIRQ, percent(mCurrentUsage.softirq - mPreviousUsage.softirq, delta));
-                mVariableManager.commit();
-
-                CpuUsage tmp = mPreviousUsage;
-                mPreviousUsage = mCurrentUsage;
-                mCurrentUsage = tmp;
-            }
-        }
-    };
+    private long mPreviousTime;
 
-    public CpuDataCollector(Handler handler, VariableManager vm) {
-        super(2500, handler, vm);
+    public CpuDataCollector(long period, ScheduledExecutorService scheduler, Handler handler, VariableManager vm) {
+        // faster refresh at startup
+        super(period, 500, scheduler, handler, vm);
 
         mPreviousUsage = new CpuUsage();
         mCurrentUsage = new CpuUsage();
-        readProcStat(mPreviousUsage);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                readProcStat(mPreviousUsage);
+                mPreviousTime = SystemClock.uptimeMillis();
+            }
+        });
     }
 
     private static int percent(long value, long total) {
@@ -59,15 +50,56 @@ public class CpuDataCollector extends PollingDataCollector {
 
     @Override
     protected void collectData() {
-        try {
-            // the normal period will be 2500+500, the initial collect time will be 500 only (faster refresh at startup)
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            // pass
+        long now = SystemClock.uptimeMillis();
+        readProcStat(mCurrentUsage);
+
+        if (now - mPreviousTime > 2 * getPeriod()) {
+            // the collector has been stopped meanwhile: the difference with the previous sample
+            // would be a long term average, not the current usage. Use this sample as the new
+            // reference and measure again shortly, keeping the last values until then.
+            CpuUsage tmp = mPreviousUsage;
+            mPreviousUsage = mCurrentUsage;
+            mCurrentUsage = tmp;
+            mPreviousTime = now;
+            collectLater(RESAMPLE_DELAY);
+            return;
         }
 
-        readProcStat(mCurrentUsage);
-        mHandler.post(mSetVariablesRunnable);
+        long delta = mCurrentUsage.total - mPreviousUsage.total;
+        if (delta != 0) {
+            long user = (mCurrentUsage.total - mCurrentUsage.idle) - (mPreviousUsage.total - mPreviousUsage.idle);
+            final int[] values = new int[]{
+                    percent(user, delta),
+                    percent(mCurrentUsage.user - mPreviousUsage.user, delta),
+                    percent(mCurrentUsage.nice - mPreviousUsage.nice, delta),
+                    percent(mCurrentUsage.system - mPreviousUsage.system, delta),
+                    percent(mCurrentUsage.idle - mPreviousUsage.idle, delta),
+                    percent(mCurrentUsage.iowait - mPreviousUsage.iowait, delta),
+                    percent(mCurrentUsage.irq - mPreviousUsage.irq, delta),
+                    percent(mCurrentUsage.softirq - mPreviousUsage.softirq, delta),
+            };
+
+            CpuUsage tmp = mPreviousUsage;
+            mPreviousUsage = mCurrentUsage;
+            mCurrentUsage = tmp;
+            mPreviousTime = now;
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mVariableManager.edit();
+                    mVariableManager.setVariable(VAR_USAGE, values[0]);
+                    mVariableManager.setVariable(VAR_USER, values[1]);
+                    mVariableManager.setVariable(VAR_NICE, values[2]);
+                    mVariableManager.setVariable(VAR_SYSTEM, values[3]);
+                    mVariableManager.setVariable(VAR_IDLE, values[4]);
+                    mVariableManager.setVariable(VAR_IOWAIT, values[5]);
+                    mVariableManager.setVariable(VAR_IRQ, values[6]);
+                    mVariableManager.setVariable(VAR_SOFTIRQ, values[7]);
+                    mVariableManager.commit();
+                }
+            });
+        }
     }
 
     @Override
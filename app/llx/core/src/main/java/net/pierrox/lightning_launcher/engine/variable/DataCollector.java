@@ -9,5 +9,10 @@ public interface DataCollector {
 
     void end();
 
+    /**
+     * Update variables once while paused, the new values may be set asynchronously.
+     */
+    void refresh();
+
     BuiltinVariable[] getBuiltinVariables(Resources resources);
 }
@@ -0,0 +1,780 @@
+package net.pierrox.lightning_launcher.engine.variable;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+import java.util.ArrayList;
+
+/**
+ * Native evaluation of simple binding formulas, without going through Rhino.
+ * The supported subset is a JavaScript expression made of number, string, boolean and null
+ * literals, $variables, arithmetic, comparison, logical and ternary operators, and calls to
+ * common Math functions. Evaluation follows JavaScript semantics for this subset.
+ * Anything else (statements, other identifiers, property access, ...) is not compiled and
+ * stays handled by the script engine.
+ * <p>
+ * A compiled expression keeps a preallocated result slot per node: evaluating numbers and
+ * booleans does not allocate memory, except for boxing the final result.
+ * An expression instance is not thread safe.
+ */
+public class Expression {
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_NUMBER = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int TYPE_BOOLEAN = 3;
+
+    private final Node mRoot;
+
+    private Expression(Node root) {
+        mRoot = root;
+    }
+
+    /**
+     * @param formula        binding formula, using the $name syntax for variables
+     * @param variable_names variables referenced by the formula, the same order is used for values at evaluation time
+     * @return a compiled expression, or null if the formula is not in the supported subset
+     */
+    public static Expression compile(String formula, String[] variable_names) {
+        try {
+            Parser parser = new Parser(formula, variable_names);
+            Node root = parser.parseExpression();
+            parser.skipSpaces();
+            if (parser.pos != formula.length()) {
+                return null;
+            }
+            return new Expression(root);
+        } catch (UnsupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param variables variable values, in the same order as the names given at compile time
+     * @return the result as a Double, String, Boolean or null
+     */
+    public Object evaluate(Variable[] variables) {
+        mRoot.eval(variables);
+        Slot r = mRoot.result;
+        switch (r.type) {
+            case TYPE_NUMBER:
+                return r.boxed != null ? r.boxed : (Object) r.number;
+            case TYPE_STRING:
+                return r.string;
+            case TYPE_BOOLEAN:
+                return r.bool;
+            default:
+                return null;
+        }
+    }
+
+    private static final class Slot {
+        int type;
+        double number;
+        // number as given by a variable or a literal, returned as is like the script engine does
+        Object boxed;
+        String string;
+        boolean bool;
+
+        void setNumber(double n) {
+            type = TYPE_NUMBER;
+            number = n;
+            boxed = null;
+            string = null;
+        }
+
+        void setBoolean(boolean b) {
+            type = TYPE_BOOLEAN;
+            bool = b;
+            boxed = null;
+            string = null;
+        }
+
+        void setString(String s) {
+            type = TYPE_STRING;
+            string = s;
+            boxed = null;
+        }
+
+        void setNull() {
+            type = TYPE_NULL;
+            boxed = null;
+            string = null;
+        }
+
+        void set(Slot other) {
+            type = other.type;
+            number = other.number;
+            boxed = other.boxed;
+            string = other.string;
+            bool = other.bool;
+        }
+
+        void setObject(Object value) {
+            if (value == null) {
+                setNull();
+            } else if (value instanceof Number) {
+                setNumber(((Number) value).doubleValue());
+                boxed = value;
+            } else if (value instanceof Boolean) {
+                setBoolean((Boolean) value);
+            } else {
+                setString(value.toString());
+            }
+        }
+
+        double toNumber() {
+            switch (type) {
+                case TYPE_NUMBER:
+                    return number;
+                case TYPE_BOOLEAN:
+                    return bool ? 1 : 0;
+                case TYPE_STRING:
+                    return ScriptRuntime.toNumber(string);
+                default:
+                    return 0;
+            }
+        }
+
+        boolean toBoolean() {
+            switch (type) {
+                case TYPE_NUMBER:
+                    return number == number && number != 0;
+                case TYPE_BOOLEAN:
+                    return bool;
+                case TYPE_STRING:
+                    return string.length() > 0;
+                default:
+                    return false;
+            }
+        }
+
+        String toJsString() {
+            switch (type) {
+                case TYPE_NUMBER:
+                    return ScriptRuntime.toString(number);
+                case TYPE_BOOLEAN:
+                    return bool ? "true" : "false";
+                case TYPE_STRING:
+                    return string;
+                default:
+                    return "null";
+            }
+        }
+    }
+
+    private static abstract class Node {
+        final Slot result = new Slot();
+
+        abstract void eval(Variable[] variables);
+    }
+
+    private static final class Constant extends Node {
+        Constant(Object value) {
+            result.setObject(value);
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            // pass, the result never changes
+        }
+    }
+
+    private static final class VariableRef extends Node {
+        private final int mIndex;
+
+        VariableRef(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            result.setObject(variables[mIndex].value);
+        }
+    }
+
+    private static final class Unary extends Node {
+        private final char mOp;
+        private final Node mOperand;
+
+        Unary(char op, Node operand) {
+            mOp = op;
+            mOperand = operand;
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            mOperand.eval(variables);
+            Slot o = mOperand.result;
+            switch (mOp) {
+                case '-':
+                    result.setNumber(-o.toNumber());
+                    break;
+                case '+':
+                    result.setNumber(o.toNumber());
+                    break;
+                case '!':
+                    result.setBoolean(!o.toBoolean());
+                    break;
+            }
+        }
+    }
+
+    private static final int OP_ADD = 0;
+    private static final int OP_SUB = 1;
+    private static final int OP_MUL = 2;
+    private static final int OP_DIV = 3;
+    private static final int OP_MOD = 4;
+    private static final int OP_LT = 5;
+    private static final int OP_GT = 6;
+    private static final int OP_LE = 7;
+    private static final int OP_GE = 8;
+    private static final int OP_EQ = 9;
+    private static final int OP_NE = 10;
+    private static final int OP_SEQ = 11;
+    private static final int OP_SNE = 12;
+    private static final int OP_AND = 13;
+    private static final int OP_OR = 14;
+
+    private static final class Binary extends Node {
+        private final int mOp;
+        private final Node mLeft;
+        private final Node mRight;
+
+        Binary(int op, Node left, Node right) {
+            mOp = op;
+            mLeft = left;
+            mRight = right;
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            mLeft.eval(variables);
+            Slot l = mLeft.result;
+
+            // short circuit, the result is one of the operands
+            if (mOp == OP_AND || mOp == OP_OR) {
+                boolean b = l.toBoolean();
+                if ((mOp == OP_AND) != b) {
+                    result.set(l);
+                } else {
+                    mRight.eval(variables);
+                    result.set(mRight.result);
+                }
+                return;
+            }
+
+            mRight.eval(variables);
+            Slot r = mRight.result;
+            switch (mOp) {
+                case OP_ADD:
+                    if (l.type == TYPE_STRING || r.type == TYPE_STRING) {
+                        result.setString(l.toJsString().concat(r.toJsString()));
+                    } else {
+                        result.setNumber(l.toNumber() + r.toNumber());
+                    }
+                    break;
+                case OP_SUB:
+                    result.setNumber(l.toNumber() - r.toNumber());
+                    break;
+                case OP_MUL:
+                    result.setNumber(l.toNumber() * r.toNumber());
+                    break;
+                case OP_DIV:
+                    result.setNumber(l.toNumber() / r.toNumber());
+                    break;
+                case OP_MOD:
+                    result.setNumber(l.toNumber() % r.toNumber());
+                    break;
+                case OP_LT:
+                case OP_GT:
+                case OP_LE:
+                case OP_GE:
+                    result.setBoolean(compare(mOp, l, r));
+                    break;
+                case OP_EQ:
+                    result.setBoolean(looseEquals(l, r));
+                    break;
+                case OP_NE:
+                    result.setBoolean(!looseEquals(l, r));
+                    break;
+                case OP_SEQ:
+                    result.setBoolean(strictEquals(l, r));
+                    break;
+                case OP_SNE:
+                    result.setBoolean(!strictEquals(l, r));
+                    break;
+            }
+        }
+
+        private static boolean compare(int op, Slot l, Slot r) {
+            if (l.type == TYPE_STRING && r.type == TYPE_STRING) {
+                int c = l.string.compareTo(r.string);
+                switch (op) {
+                    case OP_LT: return c < 0;
+                    case OP_GT: return c > 0;
+                    case OP_LE: return c <= 0;
+                    default: return c >= 0;
+                }
+            } else {
+                // comparisons with NaN are always false
+                double a = l.toNumber();
+                double b = r.toNumber();
+                switch (op) {
+                    case OP_LT: return a < b;
+                    case OP_GT: return a > b;
+                    case OP_LE: return a <= b;
+                    default: return a >= b;
+                }
+            }
+        }
+
+        private static boolean strictEquals(Slot l, Slot r) {
+            if (l.type != r.type) {
+                return false;
+            }
+            switch (l.type) {
+                case TYPE_NUMBER:
+                    return l.number == r.number;
+                case TYPE_STRING:
+                    return l.string.equals(r.string);
+                case TYPE_BOOLEAN:
+                    return l.bool == r.bool;
+                default:
+                    return true;
+            }
+        }
+
+        private static boolean looseEquals(Slot l, Slot r) {
+            if (l.type == r.type) {
+                return strictEquals(l, r);
+            }
+            if (l.type == TYPE_NULL || r.type == TYPE_NULL) {
+                return false;
+            }
+            // remaining cases compare numbers: string, boolean and number mixed together
+            return l.toNumber() == r.toNumber();
+        }
+    }
+
+    private static final class Conditional extends Node {
+        private final Node mCondition;
+        private final Node mThen;
+        private final Node mElse;
+
+        Conditional(Node condition, Node then_node, Node else_node) {
+            mCondition = condition;
+            mThen = then_node;
+            mElse = else_node;
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            mCondition.eval(variables);
+            Node n = mCondition.result.toBoolean() ? mThen : mElse;
+            n.eval(variables);
+            result.set(n.result);
+        }
+    }
+
+    private static final int FN_ABS = 0;
+    private static final int FN_CEIL = 1;
+    private static final int FN_FLOOR = 2;
+    private static final int FN_ROUND = 3;
+    private static final int FN_SQRT = 4;
+    private static final int FN_SIN = 5;
+    private static final int FN_COS = 6;
+    private static final int FN_TAN = 7;
+    private static final int FN_ASIN = 8;
+    private static final int FN_ACOS = 9;
+    private static final int FN_ATAN = 10;
+    private static final int FN_EXP = 11;
+    private static final int FN_LOG = 12;
+    private static final int FN_POW = 13;
+    private static final int FN_ATAN2 = 14;
+    private static final int FN_MIN = 15;
+    private static final int FN_MAX = 16;
+
+    // name, function id, number of arguments (-1 for any)
+    private static final Object[][] MATH_FUNCTIONS = {
+            {"abs", FN_ABS, 1},
+            {"ceil", FN_CEIL, 1},
+            {"floor", FN_FLOOR, 1},
+            {"round", FN_ROUND, 1},
+            {"sqrt", FN_SQRT, 1},
+            {"sin", FN_SIN, 1},
+            {"cos", FN_COS, 1},
+            {"tan", FN_TAN, 1},
+            {"asin", FN_ASIN, 1},
+            {"acos", FN_ACOS, 1},
+            {"atan", FN_ATAN, 1},
+            {"exp", FN_EXP, 1},
+            {"log", FN_LOG, 1},
+            {"pow", FN_POW, 2},
+            {"atan2", FN_ATAN2, 2},
+            {"min", FN_MIN, -1},
+            {"max", FN_MAX, -1},
+    };
+
+    private static final class MathCall extends Node {
+        private final int mFunction;
+        private final Node[] mArguments;
+
+        MathCall(int function, Node[] arguments) {
+            mFunction = function;
+            mArguments = arguments;
+        }
+
+        @Override
+        void eval(Variable[] variables) {
+            for (Node a : mArguments) {
+                a.eval(variables);
+            }
+            double r;
+            switch (mFunction) {
+                case FN_ABS: r = Math.abs(arg(0)); break;
+                case FN_CEIL: r = Math.ceil(arg(0)); break;
+                case FN_FLOOR: r = Math.floor(arg(0)); break;
+                case FN_ROUND: r = round(arg(0)); break;
+                case FN_SQRT: r = Math.sqrt(arg(0)); break;
+                case FN_SIN: r = Math.sin(arg(0)); break;
+                case FN_COS: r = Math.cos(arg(0)); break;
+                case FN_TAN: r = Math.tan(arg(0)); break;
+                case FN_ASIN: r = Math.asin(arg(0)); break;
+                case FN_ACOS: r = Math.acos(arg(0)); break;
+                case FN_ATAN: r = Math.atan(arg(0)); break;
+                case FN_EXP: r = Math.exp(arg(0)); break;
+                case FN_LOG: r = Math.log(arg(0)); break;
+                case FN_POW: r = pow(arg(0), arg(1)); break;
+                case FN_ATAN2: r = Math.atan2(arg(0), arg(1)); break;
+                case FN_MIN:
+                    r = Double.POSITIVE_INFINITY;
+                    for (int i = 0; i < mArguments.length; i++) r = Math.min(r, arg(i));
+                    break;
+                case FN_MAX:
+                    r = Double.NEGATIVE_INFINITY;
+                    for (int i = 0; i < mArguments.length; i++) r = Math.max(r, arg(i));
+                    break;
+                default: r = Double.NaN; break;
+            }
+            result.setNumber(r);
+        }
+
+        private double arg(int index) {
+            return mArguments[index].result.toNumber();
+        }
+
+        private static double round(double d) {
+            // JavaScript rounds half up, NaN, infinities and integers are kept as is
+            double f = Math.floor(d);
+            if (d - f >= 0.5) {
+                f += 1;
+                // values in [-0.5, 0) round to -0
+                if (f == 0 && d < 0) {
+                    f = -0.0;
+                }
+            }
+            return f;
+        }
+
+        private static double pow(double x, double y) {
+            // unlike Java, JavaScript gives NaN for 1 and -1 raised to infinity
+            if (Double.isInfinite(y) && (x == 1 || x == -1)) {
+                return Double.NaN;
+            }
+            return Math.pow(x, y);
+        }
+    }
+
+    private static final class UnsupportedException extends Exception {
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Parser {
+        private final String mText;
+        private final String[] mVariableNames;
+        int pos;
+
+        Parser(String text, String[] variable_names) {
+            mText = text;
+            mVariableNames = variable_names;
+        }
+
+        void skipSpaces() {
+            int l = mText.length();
+            while (pos < l && Character.isWhitespace(mText.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean match(String token) {
+            skipSpaces();
+            if (mText.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private char peek() {
+            skipSpaces();
+            return pos < mText.length() ? mText.charAt(pos) : 0;
+        }
+
+        private char peekAt(int offset) {
+            int p = pos + offset;
+            return p < mText.length() ? mText.charAt(p) : 0;
+        }
+
+        Node parseExpression() throws UnsupportedException {
+            Node condition = parseOr();
+            if (match("?")) {
+                Node then_node = parseExpression();
+                if (!match(":")) throw new UnsupportedException();
+                Node else_node = parseExpression();
+                return new Conditional(condition, then_node, else_node);
+            }
+            return condition;
+        }
+
+        private Node parseOr() throws UnsupportedException {
+            Node n = parseAnd();
+            while (match("||")) {
+                n = new Binary(OP_OR, n, parseAnd());
+            }
+            return n;
+        }
+
+        private Node parseAnd() throws UnsupportedException {
+            Node n = parseEquality();
+            while (match("&&")) {
+                n = new Binary(OP_AND, n, parseEquality());
+            }
+            return n;
+        }
+
+        private Node parseEquality() throws UnsupportedException {
+            Node n = parseRelational();
+            for (; ; ) {
+                if (match("===")) n = new Binary(OP_SEQ, n, parseRelational());
+                else if (match("!==")) n = new Binary(OP_SNE, n, parseRelational());
+                else if (match("==")) n = new Binary(OP_EQ, n, parseRelational());
+                else if (match("!=")) n = new Binary(OP_NE, n, parseRelational());
+                else return n;
+            }
+        }
+
+        private Node parseRelational() throws UnsupportedException {
+            Node n = parseAdditive();
+            for (; ; ) {
+                if (match("<=")) n = new Binary(OP_LE, n, parseAdditive());
+                else if (match(">=")) n = new Binary(OP_GE, n, parseAdditive());
+                else if (peek() == '<' && peekAt(1) != '<') {
+                    pos++;
+                    n = new Binary(OP_LT, n, parseAdditive());
+                } else if (peek() == '>' && peekAt(1) != '>') {
+                    pos++;
+                    n = new Binary(OP_GT, n, parseAdditive());
+                } else return n;
+            }
+        }
+
+        private Node parseAdditive() throws UnsupportedException {
+            Node n = parseMultiplicative();
+            for (; ; ) {
+                char c = peek();
+                // reject ++, --, += and -=
+                if ((c == '+' || c == '-') && peekAt(1) != c && peekAt(1) != '=') {
+                    pos++;
+                    n = new Binary(c == '+' ? OP_ADD : OP_SUB, n, parseMultiplicative());
+                } else {
+                    return n;
+                }
+            }
+        }
+
+        private Node parseMultiplicative() throws UnsupportedException {
+            Node n = parseUnary();
+            for (; ; ) {
+                char c = peek();
+                if ((c == '*' || c == '/' || c == '%') && peekAt(1) != '=' && peekAt(1) != '*' && peekAt(1) != '/') {
+                    pos++;
+                    int op = c == '*' ? OP_MUL : (c == '/' ? OP_DIV : OP_MOD);
+                    n = new Binary(op, n, parseUnary());
+                } else {
+                    return n;
+                }
+            }
+        }
+
+        private Node parseUnary() throws UnsupportedException {
+            char c = peek();
+            if ((c == '-' || c == '+') && peekAt(1) != c) {
+                pos++;
+                return new Unary(c, parseUnary());
+            }
+            if (c == '!' && peekAt(1) != '=') {
+                pos++;
+                return new Unary(c, parseUnary());
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() throws UnsupportedException {
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                Node n = parseExpression();
+                if (!match(")")) throw new UnsupportedException();
+                return n;
+            }
+            if (c == '$') {
+                pos++;
+                String name = parseIdentifier();
+                for (int i = 0; i < mVariableNames.length; i++) {
+                    if (mVariableNames[i].equals(name)) {
+                        return new VariableRef(i);
+                    }
+                }
+                throw new UnsupportedException();
+            }
+            if (c == '"' || c == '\'') {
+                return new Constant(parseString(c));
+            }
+            if ((c >= '0' && c <= '9') || c == '.') {
+                return new Constant(parseNumber());
+            }
+            if (Character.isLetter(c) || c == '_') {
+                String identifier = parseIdentifier();
+                switch (identifier) {
+                    case "true":
+                        return new Constant(Boolean.TRUE);
+                    case "false":
+                        return new Constant(Boolean.FALSE);
+                    case "null":
+                        return new Constant(null);
+                    case "Math":
+                        return parseMath();
+                }
+            }
+            throw new UnsupportedException();
+        }
+
+        private Node parseMath() throws UnsupportedException {
+            if (peek() != '.') throw new UnsupportedException();
+            pos++;
+            skipSpaces();
+            String name = parseIdentifier();
+            if (name.equals("PI")) return new Constant(Math.PI);
+            if (name.equals("E")) return new Constant(Math.E);
+
+            for (Object[] f : MATH_FUNCTIONS) {
+                if (f[0].equals(name)) {
+                    if (!match("(")) throw new UnsupportedException();
+                    ArrayList<Node> arguments = new ArrayList<>(2);
+                    if (!match(")")) {
+                        do {
+                            arguments.add(parseExpression());
+                        } while (match(","));
+                        if (!match(")")) throw new UnsupportedException();
+                    }
+                    int count = (Integer) f[2];
+                    if (count != -1 && arguments.size() != count) {
+                        // missing or extra arguments: let the script engine deal with it
+                        throw new UnsupportedException();
+                    }
+                    return new MathCall((Integer) f[1], arguments.toArray(new Node[0]));
+                }
+            }
+            throw new UnsupportedException();
+        }
+
+        private String parseIdentifier() throws UnsupportedException {
+            int start = pos;
+            int l = mText.length();
+            while (pos < l) {
+                char c = mText.charAt(pos);
+                if (c == '_' || Character.isLetterOrDigit(c)) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos == start) throw new UnsupportedException();
+            return mText.substring(start, pos);
+        }
+
+        private String parseString(char quote) throws UnsupportedException {
+            pos++;
+            StringBuilder sb = new StringBuilder();
+            int l = mText.length();
+            while (pos < l) {
+                char c = mText.charAt(pos++);
+                if (c == quote) {
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    if (pos == l) break;
+                    c = mText.charAt(pos++);
+                    switch (c) {
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        case '\\':
+                        case '\'':
+                        case '"':
+                            sb.append(c);
+                            break;
+                        default:
+                            // other escapes are rare, do not bother
+                            throw new UnsupportedException();
+                    }
+                } else if (c == '\n' || c == '$') {
+                    // '$' is stripped from the whole formula when converted to a script, even in strings
+                    break;
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw new UnsupportedException();
+        }
+
+        private Double parseNumber() throws UnsupportedException {
+            int start = pos;
+            int l = mText.length();
+            boolean digits = false;
+            while (pos < l && Character.isDigit(mText.charAt(pos))) {
+                pos++;
+                digits = true;
+            }
+            if (pos < l && mText.charAt(pos) == '.') {
+                pos++;
+                while (pos < l && Character.isDigit(mText.charAt(pos))) {
+                    pos++;
+                    digits = true;
+                }
+            }
+            if (!digits) throw new UnsupportedException();
+            if (pos < l && (mText.charAt(pos) == 'e' || mText.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < l && (mText.charAt(pos) == '+' || mText.charAt(pos) == '-')) {
+                    pos++;
+                }
+                int exp_start = pos;
+                while (pos < l && Character.isDigit(mText.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == exp_start) throw new UnsupportedException();
+            }
+            // hex, octal and numbers directly followed by an identifier are left to the script engine
+            if (pos < l && (Character.isLetterOrDigit(mText.charAt(pos)) || mText.charAt(pos) == '_')) {
+                throw new UnsupportedException();
+            }
+            String literal = mText.substring(start, pos);
+            if (literal.length() > 1 && literal.charAt(0) == '0' && Character.isDigit(literal.charAt(1))) {
+                throw new UnsupportedException();
+            }
+            return Double.valueOf(literal);
+        }
+    }
+}
@@ -1,65 +1,107 @@
 package net.pierrox.lightning_launcher.engine.variable;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
-/*package*/ abstract class PollingDataCollector extends Thread implements DataCollector {
-    private final int mPeriod;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for collectors reading data periodically. Data is read on a background scheduler
+ * shared by all collectors, and variables are set on the UI thread through the handler.
+ */
+/*package*/ abstract class PollingDataCollector implements DataCollector {
+    private final ScheduledExecutorService mScheduler;
     protected Handler mHandler;
     protected VariableManager mVariableManager;
-    private boolean mPaused;
-    private boolean mEnd;
+    private long mPeriod;
+    private final long mInitialDelay;
+    private ScheduledFuture<?> mTask;
+    private volatile long mLastCollectTime;
 
-    public PollingDataCollector(int period, Handler handler, VariableManager vm) {
+    private final Runnable mCollectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mLastCollectTime = SystemClock.uptimeMillis();
+            try {
+                collectData();
+            } catch (Throwable e) {
+                // keep the schedule alive
+                e.printStackTrace();
+            }
+        }
+    };
+
+    public PollingDataCollector(long period, long initial_delay, ScheduledExecutorService scheduler, Handler handler, VariableManager vm) {
         mPeriod = period;
+        mInitialDelay = initial_delay;
+        mScheduler = scheduler;
         mHandler = handler;
         mVariableManager = vm;
-
-        start();
     }
 
-    @Override
-    public void run() {
-        do {
-            collectData();
+    /**
+     * Change the polling period, applied immediately if running.
+     */
+    public void setPeriod(long period) {
+        mPeriod = period;
+        if (mTask != null) {
+            stop();
+            start();
+        }
+    }
 
-            if (mEnd) break;
+    public long getPeriod() {
+        return mPeriod;
+    }
 
-            try {
-                sleep(mPeriod);
-            } catch (InterruptedException e) {
-                // interrupted, will likely end
-            }
+    @Override
+    public void onResume() {
+        if (mTask == null) {
+            start();
+        }
+    }
 
-            if (mPaused) {
-                synchronized (this) {
-                    try {
-                        wait();
-                    } catch (InterruptedException e) {
-                        // interrupted, will likely end
-                    }
-                }
-            }
-        } while (!mEnd);
+    @Override
+    public void onPause() {
+        stop();
     }
 
     @Override
     public void end() {
-        mEnd = true;
-        interrupt();
+        stop();
     }
 
     @Override
-    public void onPause() {
-        mPaused = true;
+    public void refresh() {
+        // at most once per period, never blocking the caller: it gets the last values meanwhile
+        if (mTask == null && SystemClock.uptimeMillis() - mLastCollectTime >= mPeriod) {
+            mLastCollectTime = SystemClock.uptimeMillis();
+            mScheduler.execute(mCollectRunnable);
+        }
     }
 
-    @Override
-    public void onResume() {
-        synchronized (this) {
-            mPaused = false;
-            notify();
+    /**
+     * Collect data once more after a delay, whether running or not.
+     */
+    protected void collectLater(long delay) {
+        mScheduler.schedule(mCollectRunnable, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void start() {
+        mTask = mScheduler.scheduleWithFixedDelay(mCollectRunnable, mInitialDelay, mPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
         }
     }
 
+    /**
+     * Read data and post variable updates to the handler. Called on the background scheduler thread.
+     */
     protected abstract void collectData();
 }
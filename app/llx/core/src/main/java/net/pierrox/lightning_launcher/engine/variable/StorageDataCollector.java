@@ -10,6 +10,7 @@ import android.text.format.Formatter;
 import net.pierrox.lightning_launcher.R;
 
 import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
 
 /*package*/ class StorageDataCollector extends PollingDataCollector {
     private static final String VAR_EXT_TOTAL = "ext_total";
@@ -22,69 +23,73 @@ import java.io.File;
     private static final String VAR_INT_FREE_H = "int_free_h";
 
     private final Context mContext;
-    private final Runnable mSetVariablesRunnable = new Runnable() {
-        @Override
-        public void run() {
-            long int_free;
-            long int_total;
-            long ext_free;
-            long ext_total;
 
-            File path;
-            StatFs stat;
-            long block_size;
-            long total_blocks;
-            long available_blocks;
-
-            path = Environment.getDataDirectory();
-            try {
-                stat = new StatFs(path.getPath());
-                block_size = stat.getBlockSize();
-                total_blocks = stat.getBlockCount();
-                available_blocks = stat.getAvailableBlocks();
-                int_free = available_blocks * block_size;
-                int_total = total_blocks * block_size;
-            } catch (IllegalArgumentException e) {
-                int_free = 0;
-                int_total = 0;
-            }
-
-            path = Environment.getExternalStorageDirectory();
-            try {
-                stat = new StatFs(path.getPath());
-                block_size = stat.getBlockSize();
-                total_blocks = stat.getBlockCount();
-                available_blocks = stat.getAvailableBlocks();
-                ext_free = available_blocks * block_size;
-                ext_total = total_blocks * block_size;
-            } catch (IllegalArgumentException e) {
-                ext_free = 0;
-                ext_total = 0;
-            }
-
-            mVariableManager.edit();
-            mVariableManager.setVariable(VAR_EXT_TOTAL, ext_total);
-            mVariableManager.setVariable(VAR_EXT_FREE, ext_free);
-            mVariableManager.setVariable(VAR_INT_TOTAL, int_total);
-            mVariableManager.setVariable(VAR_INT_FREE, int_free);
-            mVariableManager.setVariable(VAR_EXT_TOTAL_H, Formatter.formatFileSize(mContext, ext_total));
-            mVariableManager.setVariable(VAR_EXT_FREE_H, Formatter.formatFileSize(mContext, ext_free));
-            mVariableManager.setVariable(VAR_INT_TOTAL_H, Formatter.formatFileSize(mContext, int_total));
-            mVariableManager.setVariable(VAR_INT_FREE_H, Formatter.formatFileSize(mContext, int_free));
-            mVariableManager.commit();
-        }
-    };
-
-    public StorageDataCollector(Context context, Handler handler, VariableManager vm) {
-        super(10000, handler, vm);
+    public StorageDataCollector(Context context, long period, ScheduledExecutorService scheduler, Handler handler, VariableManager vm) {
+        super(period, 0, scheduler, handler, vm);
         mContext = context;
 
-        mSetVariablesRunnable.run();
+        refresh();
     }
 
     @Override
     protected void collectData() {
-        mHandler.post(mSetVariablesRunnable);
+        final long int_free;
+        final long int_total;
+        final long ext_free;
+        final long ext_total;
+
+        File path;
+        StatFs stat;
+        long block_size;
+        long total_blocks;
+        long available_blocks;
+
+        path = Environment.getDataDirectory();
+        long free, total;
+        try {
+            stat = new StatFs(path.getPath());
+            block_size = stat.getBlockSize();
+            total_blocks = stat.getBlockCount();
+            available_blocks = stat.getAvailableBlocks();
+            free = available_blocks * block_size;
+            total = total_blocks * block_size;
+        } catch (IllegalArgumentException e) {
+            free = 0;
+            total = 0;
+        }
+        int_free = free;
+        int_total = total;
+
+        path = Environment.getExternalStorageDirectory();
+        try {
+            stat = new StatFs(path.getPath());
+            block_size = stat.getBlockSize();
+            total_blocks = stat.getBlockCount();
+            available_blocks = stat.getAvailableBlocks();
+            free = available_blocks * block_size;
+            total = total_blocks * block_size;
+        } catch (IllegalArgumentException e) {
+            free = 0;
+            total = 0;
+        }
+        ext_free = free;
+        ext_total = total;
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mVariableManager.edit();
+                mVariableManager.setVariable(VAR_EXT_TOTAL, ext_total);
+                mVariableManager.setVariable(VAR_EXT_FREE, ext_free);
+                mVariableManager.setVariable(VAR_INT_TOTAL, int_total);
+                mVariableManager.setVariable(VAR_INT_FREE, int_free);
+                mVariableManager.setVariable(VAR_EXT_TOTAL_H, Formatter.formatFileSize(mContext, ext_total));
+                mVariableManager.setVariable(VAR_EXT_FREE_H, Formatter.formatFileSize(mContext, ext_free));
+                mVariableManager.setVariable(VAR_INT_TOTAL_H, Formatter.formatFileSize(mContext, int_total));
+                mVariableManager.setVariable(VAR_INT_FREE_H, Formatter.formatFileSize(mContext, int_free));
+                mVariableManager.commit();
+            }
+        });
     }
 
     public BuiltinVariable[] getBuiltinVariables(Resources resources) {
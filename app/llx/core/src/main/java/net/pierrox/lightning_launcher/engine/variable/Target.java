@@ -14,6 +14,8 @@ public class Target {
     public String field;
     public Object value;
     public Script script;
+    // formulas simple enough to be evaluated without the script engine, script is null in this case
+    public Expression expression;
     public int dateComputed = -1;
 
     public Target(ItemView itemView, String field, Variable[] variables, Script script) {
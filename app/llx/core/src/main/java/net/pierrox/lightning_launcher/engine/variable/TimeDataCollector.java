@@ -1,14 +1,11 @@
 package net.pierrox.lightning_launcher.engine.variable;
 
 import android.content.res.Resources;
-import android.os.Handler;
 
 import net.pierrox.lightning_launcher.R;
+import net.pierrox.lightning_launcher.engine.TimeScheduler;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
-public class TimeDataCollector extends PollingDataCollector {
+public class TimeDataCollector implements DataCollector, TimeScheduler.TimeListener {
     private static final String VAR_TIMESTAMP = "ll_timestamp";
     private static final String VAR_SECOND = "ll_second";
     private static final String VAR_MINUTE = "ll_minute";
@@ -22,54 +19,48 @@ public class TimeDataCollector extends PollingDataCollector {
     private static final String VAR_DAY_NAME = "ll_day_name";
     private static final String VAR_MONTH_NAME = "ll_month_name";
 
-    private final SimpleDateFormat mDfSecond = new SimpleDateFormat("ss");
-    private final SimpleDateFormat mDfMinute = new SimpleDateFormat("mm");
-    private final SimpleDateFormat mDfHour12 = new SimpleDateFormat("hh");
-    private final SimpleDateFormat mDfHour24 = new SimpleDateFormat("HH");
-    private final SimpleDateFormat mDfDay = new SimpleDateFormat("dd");
-    private final SimpleDateFormat mDfMonth = new SimpleDateFormat("MM");
-    private final SimpleDateFormat mDfWeek = new SimpleDateFormat("w");
-    private final SimpleDateFormat mDfYear = new SimpleDateFormat("yyyy");
-    private final SimpleDateFormat mDfAmPm = new SimpleDateFormat("a");
-    private final SimpleDateFormat mDfDayName = new SimpleDateFormat("EEEE");
-    private final SimpleDateFormat mDfMonthName = new SimpleDateFormat("MMMM");
-
-    private int mPreviousSecond = -1;
-    private final Runnable mSetVariablesRunnable = new Runnable() {
-        @Override
-        public void run() {
-            // text fields, but some of them can be converted to integer
-            Date now = new Date();
-            int second = now.getSeconds();
-            mVariableManager.edit();
-            mVariableManager.setVariable(VAR_SECOND, mDfSecond.format(now));
-            mVariableManager.setVariable(VAR_TIMESTAMP, now.getTime() / 1000);
-            if (mPreviousSecond == -1 || second < mPreviousSecond) {
-                mVariableManager.setVariable(VAR_MINUTE, mDfMinute.format(now));
-                mVariableManager.setVariable(VAR_HOUR12, mDfHour12.format(now));
-                mVariableManager.setVariable(VAR_HOUR24, mDfHour24.format(now));
-                mVariableManager.setVariable(VAR_DAY, mDfDay.format(now));
-                mVariableManager.setVariable(VAR_WEEK, mDfWeek.format(now));
-                mVariableManager.setVariable(VAR_MONTH, mDfMonth.format(now));
-                mVariableManager.setVariable(VAR_YEAR, mDfYear.format(now));
-                mVariableManager.setVariable(VAR_AM_PM, mDfAmPm.format(now));
-                mVariableManager.setVariable(VAR_DAY_NAME, mDfDayName.format(now));
-                mVariableManager.setVariable(VAR_MONTH_NAME, mDfMonthName.format(now));
-            }
-            mPreviousSecond = second;
-            mVariableManager.commit();
-        }
-    };
+    private final TimeScheduler mTimeScheduler;
+    private final VariableManager mVariableManager;
 
-    public TimeDataCollector(Handler handler, VariableManager vm) {
-        super(1000, handler, vm);
+    // local date and time at the minute, detects time zone changes too
+    private String mPreviousMinute;
+    private boolean mRunning;
+    // number of targets using variables changing every second
+    private int mSecondsDemand;
 
-        mSetVariablesRunnable.run();
+    public TimeDataCollector(TimeScheduler timeScheduler, VariableManager vm) {
+        mTimeScheduler = timeScheduler;
+        mVariableManager = vm;
+
+        setVariables(System.currentTimeMillis());
+    }
+
+    private void setVariables(long now) {
+        // text fields, but some of them can be converted to integer
+        TimeScheduler ts = mTimeScheduler;
+        String minute = ts.format("yyyyMMddHHmm", now);
+        mVariableManager.edit();
+        mVariableManager.setVariable(VAR_SECOND, ts.format("ss", now));
+        mVariableManager.setVariable(VAR_TIMESTAMP, now / 1000);
+        if (!minute.equals(mPreviousMinute)) {
+            mVariableManager.setVariable(VAR_MINUTE, ts.format("mm", now));
+            mVariableManager.setVariable(VAR_HOUR12, ts.format("hh", now));
+            mVariableManager.setVariable(VAR_HOUR24, ts.format("HH", now));
+            mVariableManager.setVariable(VAR_DAY, ts.format("dd", now));
+            mVariableManager.setVariable(VAR_WEEK, ts.format("w", now));
+            mVariableManager.setVariable(VAR_MONTH, ts.format("MM", now));
+            mVariableManager.setVariable(VAR_YEAR, ts.format("yyyy", now));
+            mVariableManager.setVariable(VAR_AM_PM, ts.format("a", now));
+            mVariableManager.setVariable(VAR_DAY_NAME, ts.format("EEEE", now));
+            mVariableManager.setVariable(VAR_MONTH_NAME, ts.format("MMMM", now));
+        }
+        mPreviousMinute = minute;
+        mVariableManager.commit();
     }
 
     @Override
-    protected void collectData() {
-        mHandler.post(mSetVariablesRunnable);
+    public void onTimeTick(long now) {
+        setVariables(now);
     }
 
     public BuiltinVariable[] getBuiltinVariables(Resources resources) {
@@ -92,7 +83,41 @@ public class TimeDataCollector extends PollingDataCollector {
     @Override
     public void onResume() {
         // force an immediate update
-        mPreviousSecond = -1;
-        super.onResume();
+        mPreviousMinute = null;
+        setVariables(System.currentTimeMillis());
+        mRunning = true;
+        register();
+    }
+
+    @Override
+    public void onPause() {
+        mRunning = false;
+        mTimeScheduler.unregister(this);
+    }
+
+    @Override
+    public void end() {
+        onPause();
+    }
+
+    @Override
+    public void refresh() {
+        setVariables(System.currentTimeMillis());
+    }
+
+    /**
+     * Wake up every second only when variables changing every second are used.
+     */
+    /*package*/ void onVariableDemandChanged(String name, int delta) {
+        if (VAR_SECOND.equals(name) || VAR_TIMESTAMP.equals(name)) {
+            mSecondsDemand += delta;
+            if (mRunning) {
+                register();
+            }
+        }
+    }
+
+    private void register() {
+        mTimeScheduler.register(this, mSecondsDemand > 0 ? TimeScheduler.GRANULARITY_SECOND : TimeScheduler.GRANULARITY_MINUTE);
     }
 }
@@ -1,7 +1,7 @@
 package net.pierrox.lightning_launcher.engine.variable;
 
-import android.os.Handler;
 import android.util.Pair;
+import android.view.Choreographer;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.AnimationUtils;
@@ -20,6 +20,7 @@ import net.pierrox.lightning_launcher.engine.Screen;
 import net.pierrox.lightning_launcher.script.Script;
 import net.pierrox.lightning_launcher.script.ScriptExecutor;
 import net.pierrox.lightning_launcher.script.ScriptManager;
+import net.pierrox.lightning_launcher.script.ScriptProfiler;
 import net.pierrox.lightning_launcher.script.api.Lightning;
 import net.pierrox.lightning_launcher.script.api.Property;
 import net.pierrox.lightning_launcher.script.api.PropertyEditor;
@@ -38,6 +39,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 public class VariableManager {
     private static final String TOK_VARIABLES = "v";
@@ -58,20 +61,23 @@ public class VariableManager {
     private final HashMap<String, Variable> mVariables;
     private final HashMap<String, ArrayList<Target>> mVariableTargets;
     private final StringBuilder mTmpStringBuilder = new StringBuilder();
-    private final Handler mHandler;
     private final ArrayList<Animator> mAnimators;
     private final File mValuesFile;
     private int mDate;
     private HashSet<Variable> mModifiedVariables;
+    // variables committed since the last frame, their targets are computed and applied once per frame
+    private final HashSet<Variable> mPendingVariables = new HashSet<>();
     private boolean mUpdatesPaused;
     private boolean mAnimateScheduled;
+    private boolean mFrameScheduled;
     private ArrayList<Target> mTmpModifiedTargets = new ArrayList<>(); // limit allocations
+    private final IdentityHashMap<ItemView, PropertyEditor> mTmpEditors = new IdentityHashMap<>();
+    private final ArrayList<PropertyEditor> mTmpEditorsOrder = new ArrayList<>();
 
     public VariableManager(LightningEngine engine, File load_values_from) {
         mEngine = engine;
         mVariables = new HashMap<>();
         mVariableTargets = new HashMap<>();
-        mHandler = new Handler();
         mAnimators = new ArrayList<>();
 
         mValuesFile = load_values_from;
@@ -118,7 +124,7 @@ public class VariableManager {
             }
             JSONObject jdata = new JSONObject();
             jdata.put(TOK_VARIABLES, jvariables);
-            FileUtils.saveStringToFile(jdata.toString(), mValuesFile);
+            mEngine.getPersistenceExecutor().saveStringToFile(jdata.toString(), mValuesFile);
         } catch (Exception e) {
             mValuesFile.delete();
         }
@@ -144,6 +150,15 @@ public class VariableManager {
         return var;
     }
 
+    /**
+     * Same as getVariable, for a value which will be read right away: builtin variables which
+     * are not updated continuously are refreshed.
+     */
+    public Variable readVariable(String name) {
+        mEngine.getBuiltinDataCollectors().onVariableRead(name);
+        return getVariable(name);
+    }
+
     public Collection<Variable> getAllVariables() {
         return mVariables.values();
     }
@@ -247,35 +262,50 @@ public class VariableManager {
         }
         if (animate && !mAnimateScheduled) {
             mAnimateScheduled = true;
-            mHandler.post(mAnimate);
+            scheduleFrame();
         }
         animator.setLastValue(result, mDate);
         return result;
     }
 
-    private final Runnable mAnimate = new Runnable() {
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
         @Override
-        public void run() {
-            edit();
-            for (Animator a : mAnimators) {
-                mModifiedVariables.add(getVariable(a.varName));
-            }
-            commit();
-            int done_count = 0;
-            for (int i = mAnimators.size() - 1; i >= 0; i--) {
-                Animator a = mAnimators.get(i);
-                if (a.done) {
-                    done_count++;
-                }
-            }
-            if (mAnimators.size() > done_count) {
-                mHandler.post(mAnimate);
-            } else {
-                mAnimateScheduled = false;
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            if (mAnimateScheduled) {
+                animate();
             }
+            applyPendingVariables();
         }
     };
 
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void animate() {
+        edit();
+        for (Animator a : mAnimators) {
+            mModifiedVariables.add(getVariable(a.varName));
+        }
+        commit();
+        int done_count = 0;
+        for (int i = mAnimators.size() - 1; i >= 0; i--) {
+            Animator a = mAnimators.get(i);
+            if (a.done) {
+                done_count++;
+            }
+        }
+        if (mAnimators.size() > done_count) {
+            scheduleFrame();
+        } else {
+            mAnimateScheduled = false;
+        }
+    }
+
     private Animator findAnimator(String name) {
         for (Animator a : mAnimators) {
             if (name.equals(a.name)) {
@@ -286,50 +316,81 @@ public class VariableManager {
         return null;
     }
 
+    /**
+     * Schedule the update of targets bound to variables modified since the last call to {@link #edit()}.
+     * Targets are computed and applied on the next frame, so that several commits in the same
+     * frame only cause one update per target.
+     */
     public void commit() {
-        if (!mUpdatesPaused) {
-            if (mTmpModifiedTargets == null) {
-                mTmpModifiedTargets = new ArrayList<>();
-            } else {
-                mTmpModifiedTargets.clear();
-            }
+        if (!mUpdatesPaused && mModifiedVariables != null && mModifiedVariables.size() > 0) {
+            mPendingVariables.addAll(mModifiedVariables);
+            mModifiedVariables.clear();
+            scheduleFrame();
+        }
+    }
 
-            for (Variable variable : mModifiedVariables) {
-                ArrayList<Target> targets = getTargetsForVariable(variable.name);
-                // during traversal, the array can be modified if a binding triggers a script which
-                // modifies the item and forces the view to be rebuilt, and as a consequence bindings
-                // to be rebuilt. This should be safe since the number and order of bindings remain
-                // the same. It is forbidden to modify bindings in a script triggered by a binding.
-                for (int i = targets.size() - 1; i >= 0; i--) {
-                    Target target = targets.get(i);
-                    if (target.dateComputed != mDate) {
-                        Object old_value = target.value;
-                        computeTarget(target, target.itemView.getParentItemLayout().getScreen());
-                        Object new_value = target.value;
-                        if ((old_value == null && new_value != null) || (old_value != null && !old_value.equals(new_value))) {
-                            mTmpModifiedTargets.add(target);
-                        }
+    private void applyPendingVariables() {
+        if (mPendingVariables.isEmpty()) {
+            return;
+        }
+
+        if (mUpdatesPaused) {
+            // keep them until updates are resumed
+            edit();
+            mModifiedVariables.addAll(mPendingVariables);
+            mPendingVariables.clear();
+            return;
+        }
+
+        if (mTmpModifiedTargets == null) {
+            mTmpModifiedTargets = new ArrayList<>();
+        } else {
+            mTmpModifiedTargets.clear();
+        }
+
+        // each target is computed once even if several of its variables changed (see dateComputed)
+        mDate++;
+        // variables committed while computing targets will be handled in the next frame
+        ArrayList<Variable> variables = new ArrayList<>(mPendingVariables);
+        mPendingVariables.clear();
+        for (Variable variable : variables) {
+            ArrayList<Target> targets = getTargetsForVariable(variable.name);
+            // during traversal, the array can be modified if a binding triggers a script which
+            // modifies the item and forces the view to be rebuilt, and as a consequence bindings
+            // to be rebuilt. This should be safe since the number and order of bindings remain
+            // the same. It is forbidden to modify bindings in a script triggered by a binding.
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                Target target = targets.get(i);
+                if (target.dateComputed != mDate) {
+                    Object old_value = target.value;
+                    computeTarget(target, target.itemView.getParentItemLayout().getScreen());
+                    Object new_value = target.value;
+                    if ((old_value == null && new_value != null) || (old_value != null && !old_value.equals(new_value))) {
+                        mTmpModifiedTargets.add(target);
                     }
                 }
             }
-
-            applyTargets(mTmpModifiedTargets);
-
-            mModifiedVariables.clear();
         }
+
+        applyTargets(mTmpModifiedTargets);
     }
 
     private void applyTargets(ArrayList<Target> targets) {
-        // TODO sort targets per page/item in order to group properties changes
+        // group property changes per item: each item is modified only once, whatever the number of its bound properties
         ScriptExecutor se = mEngine.getScriptExecutor();
         Lightning ll = se.getLightning();
-        for (Target target : targets) {
-            PropertySet ps = ll.getCachedItem(target.itemView).getProperties();
-            Object value = target.value;
-            if (value != null) {
-                String field = target.field;
-                PropertyEditor editor = ps.edit();
-                try {
+        try {
+            for (Target target : targets) {
+                Object value = target.value;
+                if (value != null) {
+                    PropertyEditor editor = mTmpEditors.get(target.itemView);
+                    if (editor == null) {
+                        PropertySet ps = ll.getCachedItem(target.itemView).getProperties();
+                        editor = ps.edit();
+                        mTmpEditors.put(target.itemView, editor);
+                        mTmpEditorsOrder.add(editor);
+                    }
+                    String field = target.field;
                     switch (Property.getType(field)) {
                         case Property.TYPE_BOOLEAN:
                             editor.setBoolean(field, Value.asBoolean(value));
@@ -344,12 +405,18 @@ public class VariableManager {
                             editor.setString(field, Value.asString(value));
                             break;
                     }
-                } catch (RhinoException e) {
-                    se.displayScriptError(e);
-                    return;
                 }
-                editor.commit();
             }
+        } catch (RhinoException e) {
+            se.displayScriptError(e);
+        }
+
+        // copy first, committing may trigger scripts which apply other targets
+        ArrayList<PropertyEditor> editors = new ArrayList<>(mTmpEditorsOrder);
+        mTmpEditors.clear();
+        mTmpEditorsOrder.clear();
+        for (PropertyEditor editor : editors) {
+            editor.commit();
         }
     }
 
@@ -395,7 +462,9 @@ public class VariableManager {
         // remove old targets
         if (removeOldTargets) {
             ScriptManager sm = mEngine.getScriptManager();
-            for (ArrayList<Target> targets : mVariableTargets.values()) {
+            BuiltinDataCollectors bdc = mEngine.getBuiltinDataCollectors();
+            for (Map.Entry<String, ArrayList<Target>> entry : mVariableTargets.entrySet()) {
+                ArrayList<Target> targets = entry.getValue();
                 for (int l = targets.size() - 1; l >= 0; l--) {
                     Target target = targets.get(l);
                     if (target.itemView == itemView) {
@@ -403,6 +472,7 @@ public class VariableManager {
                             sm.deleteScript(target.script);
                         }
                         targets.remove(l);
+                        bdc.onVariableReleased(entry.getKey());
                     }
                 }
             }
@@ -444,11 +514,18 @@ public class VariableManager {
                 // this is a function, convert it to a script and extract variable names
                 Pair<String, String[]> p = convertFormulaToScript(formula);
 
-                // create a script from this
-                Script script = sm.createScriptForBinding(itemView, binding);
-                script.setProcessedText(p.first);
+                Expression expression = Expression.compile(formula, p.second);
+                if (expression != null) {
+                    // simple enough to be evaluated without the script engine
+                    target = addTarget(itemView, field, p.second, null);
+                    target.expression = expression;
+                } else {
+                    // create a script from this
+                    Script script = sm.createScriptForBinding(itemView, binding);
+                    script.setProcessedText(p.first);
 
-                target = addTarget(itemView, field, p.second, script);
+                    target = addTarget(itemView, field, p.second, script);
+                }
             } else {
                 // this is a single variable
                 target = addTarget(itemView, field, new String[]{simple_identifier}, null);
@@ -474,8 +551,10 @@ public class VariableManager {
         }
 
         Target target = new Target(itemView, field, variables, script);
+        BuiltinDataCollectors bdc = mEngine.getBuiltinDataCollectors();
         for (Variable v : variables) {
             getTargetsForVariable(v.name).add(target);
+            bdc.onVariableReferenced(v.name);
         }
 
         return target;
@@ -491,7 +570,12 @@ public class VariableManager {
     }
 
     private void computeTarget(Target target, Screen fromScreen) {
-        if (target.script == null) {
+        if (target.expression != null) {
+            Object result = target.expression.evaluate(target.variables);
+            if (result != null) {
+                target.value = result;
+            }
+        } else if (target.script == null) {
             target.value = target.variables[0].value;
         } else {
             int l = target.variables.length;
@@ -511,7 +595,19 @@ public class VariableManager {
                 mTmpStringBuilder.append(',');
                 mTmpStringBuilder.append(variable.name);
             }
-            Object result = se.runScriptAsFunction(fromScreen, target.script.id, mTmpStringBuilder.toString(), arguments, false, true);
+            ScriptProfiler profiler = se.getProfiler();
+            boolean profiling = profiler.isEnabled();
+            if (profiling) {
+                profiler.pushTrigger("binding " + target.field, target.itemView.getItem().getId());
+            }
+            Object result;
+            try {
+                result = se.runScriptAsFunction(fromScreen, target.script.id, mTmpStringBuilder.toString(), arguments, false, true);
+            } finally {
+                if (profiling) {
+                    profiler.popTrigger();
+                }
+            }
             if (result != null) {
                 target.value = result;
             }
@@ -30,6 +30,7 @@ public class Script extends JsonLoader {
     public static final int FLAG_APP_MENU = net.pierrox.lightning_launcher.api.Script.FLAG_APP_MENU;
     public static final int FLAG_ITEM_MENU = net.pierrox.lightning_launcher.api.Script.FLAG_ITEM_MENU;
     public static final int FLAG_CUSTOM_MENU = net.pierrox.lightning_launcher.api.Script.FLAG_CUSTOM_MENU;
+    public static final int FLAG_COMPILED = net.pierrox.lightning_launcher.api.Script.FLAG_COMPILED;
     private final ScriptManager mScriptManager;
     // public fields use for JSON serialization
     public int id = Script.NO_ID;
@@ -93,6 +94,11 @@ public class Script extends JsonLoader {
         } else {
             flags &= ~flag;
         }
+        if (flag == FLAG_COMPILED) {
+            // switch between interpreted and compiled code on next run
+            compiledScript = null;
+            compiledFunction = null;
+        }
     }
 
     /**
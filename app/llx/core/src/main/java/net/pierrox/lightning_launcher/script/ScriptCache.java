@@ -0,0 +1,323 @@
+package net.pierrox.lightning_launcher.script;
+
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import com.faendir.rhino_android.DexScriptCompiler;
+
+import net.pierrox.lightning_launcher.data.FileUtils;
+import net.pierrox.lightning_launcher.data.Utils;
+import net.pierrox.lightning_launcher.engine.LightningEngine;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Disk cache of compiled scripts and functions, holding serialized interpreter bytecode so that
+ * scripts are not parsed again after each process start.
+ * Entries are keyed by a hash of the source text, the source name, the language version and the
+ * versions of Rhino and of the app: a modified script, or a new version of the interpreter, simply misses the cache.
+ * Entries are loaded lazily, the first time a script is run. Files are written by the
+ * persistence executor, and the oldest ones are deleted when there are too many.
+ * <p>
+ * Scripts can also be compiled to dalvik bytecode with the Rhino optimizer. All classes of a
+ * script are packed in a single dex file, built once on a background thread and stored in this
+ * cache too, with the same key and a ".dex" suffix.
+ */
+public class ScriptCache {
+    // increment when the serialized form changes without a change in versions below
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_ENTRIES = 512;
+
+    private static final String COMPILED_CLASS_PREFIX = "org.mozilla.javascript.gen.c";
+
+    private final LightningEngine mEngine;
+    private final File mDir;
+    private final Handler mHandler;
+    private String mVersionTag;
+
+    // dex files are loaded in the application class loader, at most once per process
+    private final HashMap<String, Class<?>> mCompiledClasses = new HashMap<>();
+    private final HashSet<String> mPendingCompilations = new HashSet<>();
+    // scripts which could not be compiled or loaded, they stay interpreted until the next start
+    private final HashSet<String> mFailedCompilations = new HashSet<>();
+    private ExecutorService mCompiler;
+
+    /*package*/ ScriptCache(LightningEngine engine, File dir) {
+        mEngine = engine;
+        mDir = dir;
+        mHandler = new Handler();
+    }
+
+    /**
+     * Compile a script to interpreter bytecode, or restore it from the cache.
+     */
+    public org.mozilla.javascript.Script getOrCompileScript(Context cx, String source, String name) {
+        if (cx.getDebugger() != null) {
+            return cx.compileString(source, name, 0, null);
+        }
+        return cx.createInterpretedScript(getOrCompileBytecode(cx, source, name, false));
+    }
+
+    /**
+     * Compile a function to interpreter bytecode, or restore it from the cache.
+     */
+    public Function getOrCompileFunction(Context cx, Scriptable scope, String source, String name) {
+        if (cx.getDebugger() != null) {
+            return cx.compileFunction(scope, source, name, 0, null);
+        }
+        return cx.createInterpretedFunction(scope, getOrCompileBytecode(cx, source, name, true));
+    }
+
+    /**
+     * Get the optimizer compiled version of a script, loaded from its dex file.
+     * The first time, the dex file is built in the background and this returns null: the script
+     * should be run in interpreted mode meanwhile. onReady is called on the UI thread once the
+     * dex file is available.
+     */
+    public org.mozilla.javascript.Script getCompiledScript(Context cx, String source, String name, Runnable onReady) {
+        Class<?> cl = getCompiledClass(cx, source, name, onReady);
+        if (cl == null) {
+            return null;
+        }
+        try {
+            return (org.mozilla.javascript.Script) cl.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #getCompiledScript(Context, String, String, Runnable)} for a function
+     * expression, which is evaluated in the scope.
+     */
+    public Function getCompiledFunction(Context cx, Scriptable scope, String source, String name, Runnable onReady) {
+        org.mozilla.javascript.Script script = getCompiledScript(cx, "(" + source + ")", name, onReady);
+        if (script == null) {
+            return null;
+        }
+        Object function = script.exec(cx, scope);
+        return function instanceof Function ? (Function) function : null;
+    }
+
+    private Class<?> getCompiledClass(Context cx, final String source, final String name, final Runnable onReady) {
+        if (cx.getDebugger() != null) {
+            return null;
+        }
+
+        final String key = computeKey(cx, source, name, false);
+        Class<?> cl = mCompiledClasses.get(key);
+        if (cl != null) {
+            return cl;
+        }
+        if (mFailedCompilations.contains(key)) {
+            return null;
+        }
+
+        final String class_name = COMPILED_CLASS_PREFIX + key;
+        final File dex = new File(mDir, key + ".dex");
+        if (dex.exists()) {
+            try {
+                cl = DexScriptCompiler.load(cx, class_name, dex);
+                mCompiledClasses.put(key, cl);
+                return cl;
+            } catch (Throwable e) {
+                // catches IOException and linkage errors
+                Log.i("LL", "cannot load compiled script " + dex + ": " + e);
+                dex.delete();
+                // the same failure would happen with a new dex file, do not run dx again and again
+                mFailedCompilations.add(key);
+                return null;
+            }
+        }
+
+        if (mPendingCompilations.add(key)) {
+            final CompilerEnvirons env = DexScriptCompiler.createCompilerEnvirons(cx);
+            getCompiler().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean success;
+                    try {
+                        mDir.mkdirs();
+                        DexScriptCompiler.compile(env, source, name, class_name, dex);
+                        success = true;
+                    } catch (Throwable e) {
+                        // catches IOException and syntax errors, the script stays interpreted
+                        Log.i("LL", "cannot compile script " + name + ": " + e);
+                        success = false;
+                    }
+
+                    final boolean ready = success;
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPendingCompilations.remove(key);
+                            if (ready) {
+                                onReady.run();
+                            } else {
+                                mFailedCompilations.add(key);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        return null;
+    }
+
+    private ExecutorService getCompiler() {
+        if (mCompiler == null) {
+            mCompiler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "LL-script-compiler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return mCompiler;
+    }
+
+    private Object getOrCompileBytecode(Context cx, String source, String name, boolean function) {
+        final File file = new File(mDir, computeKey(cx, source, name, function));
+
+        Object bytecode = readBytecode(file);
+        if (bytecode != null) {
+            return bytecode;
+        }
+
+        final Serializable compiled = cx.compileToInterpreterBytecode(source, name, 0, function);
+
+        // bytecode is not modified once compiled, it can be serialized from another thread
+        mEngine.getPersistenceExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeBytecode(file, compiled);
+            }
+        });
+
+        return compiled;
+    }
+
+    private Object readBytecode(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return ois.readObject();
+        } catch (Exception e) {
+            // corrupted or incompatible entry
+            Log.i("LL", "cannot read script cache entry " + file + ": " + e);
+            file.delete();
+            return null;
+        } finally {
+            if (ois != null) try {
+                ois.close();
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    private void writeBytecode(File file, Serializable bytecode) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(bytecode);
+            oos.close();
+
+            mDir.mkdirs();
+            FileUtils.saveByteArrayToFile(baos.toByteArray(), file);
+        } catch (IOException e) {
+            // some values may not be serializable, the script will be compiled again next time
+            Log.i("LL", "cannot write script cache entry " + file + ": " + e);
+            file.delete();
+            return;
+        }
+
+        trim();
+    }
+
+    private void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) {
+            return;
+        }
+
+        final long[] dates = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            dates[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(dates[a], dates[b]);
+            }
+        });
+        for (int i = files.length - MAX_ENTRIES - 1; i >= 0; i--) {
+            files[order[i]].delete();
+        }
+    }
+
+    private String computeKey(Context cx, String source, String name, boolean function) {
+        if (mVersionTag == null) {
+            mVersionTag = cx.getImplementationVersion() + "/" + Utils.getMyPackageVersion(mEngine.getContext()) + "/" + FORMAT_VERSION;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(mVersionTag.getBytes(StandardCharsets.UTF_8));
+            digest.update(String.valueOf(cx.getLanguageVersion()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) (function ? 'f' : 's'));
+            digest.update(String.valueOf(name).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -41,6 +41,8 @@ import net.pierrox.android.lsvg.SvgDrawable;
 import net.pierrox.lightning_launcher.LLApp;
 import net.pierrox.lightning_launcher.R;
 import net.pierrox.lightning_launcher.activities.MultiPurposeTransparentActivity;
+import net.pierrox.lightning_launcher.data.FileUtils;
+import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.Utils;
 import net.pierrox.lightning_launcher.engine.LightningEngine;
 import net.pierrox.lightning_launcher.engine.Screen;
@@ -66,6 +68,7 @@ import net.pierrox.lightning_launcher.views.ItemLayout;
 import net.pierrox.lightning_launcher.views.SharedAsyncGraphicsDrawable;
 import net.pierrox.lightning_launcher.views.item.ItemView;
 
+import org.mozilla.javascript.BaseFunction;
 import org.mozilla.javascript.Callable;
 import org.mozilla.javascript.ContinuationPending;
 import org.mozilla.javascript.Function;
@@ -77,6 +80,7 @@ import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 public class ScriptExecutor {
@@ -88,8 +92,11 @@ public class ScriptExecutor {
     private final Lightning mScriptLightning;
     private final LL mScriptLL;
     private final Android mScriptAndroid;
+    private final ScriptCache mScriptCache;
+    private final ScriptProfiler mProfiler = new ScriptProfiler();
     private final StringBuilder mScriptBuilder = new StringBuilder();
     private final HashMap<Integer, Runnable> mScriptTimeouts = new HashMap<>();
+    private final ArrayList<ScriptWorker> mWorkers = new ArrayList<>();
     org.mozilla.javascript.Context mCurrentContext;
     private Scriptable mScriptScope;
     private Script mCurrentScript;
@@ -108,6 +115,7 @@ public class ScriptExecutor {
         mScriptLightning = new Lightning(engine);
         mScriptLL = new LL(mScriptLightning);
         mScriptAndroid = new Android(engine.getContext());
+        mScriptCache = new ScriptCache(engine, FileUtils.getScriptCacheDir(engine.getBaseDir()));
     }
 
     public static ScriptExecutor getCurrent() {
@@ -118,6 +126,10 @@ public class ScriptExecutor {
         return mEngine;
     }
 
+    public ScriptProfiler getProfiler() {
+        return mProfiler;
+    }
+
     public Scriptable prepareScriptScope() {
         if (mScriptScope == null) {
             org.mozilla.javascript.Context cx = RhinoAndroidHelper.prepareContext();
@@ -243,9 +255,25 @@ public class ScriptExecutor {
             mHandler.removeCallbacks(timeout);
         }
         mScriptTimeouts.clear();
+        for (ScriptWorker worker : mWorkers) {
+            worker.terminate();
+        }
+        mWorkers.clear();
         mScriptLightning.terminate();
     }
 
+    /**
+     * Keep track of a worker, so that it is stopped with this executor.
+     */
+    public void addWorker(ScriptWorker worker) {
+        for (int i = mWorkers.size() - 1; i >= 0; i--) {
+            if (mWorkers.get(i).isTerminated()) {
+                mWorkers.remove(i);
+            }
+        }
+        mWorkers.add(worker);
+    }
+
     public Handler getHandler() {
         return mHandler;
     }
@@ -281,14 +309,23 @@ public class ScriptExecutor {
             public void run() {
                 mScriptTimeouts.remove(this.hashCode());
                 org.mozilla.javascript.Context cx = RhinoAndroidHelper.prepareContext();
+                boolean profiled = mProfiler.begin(cx, getFunctionName(function), "timeout", Item.NO_ID);
                 try {
-                    cx.callFunctionWithContinuations((Callable) function, mScriptScope, new Object[]{});
+                    if (org.mozilla.javascript.Context.isInterpreted(function)) {
+                        cx.callFunctionWithContinuations((Callable) function, mScriptScope, new Object[]{});
+                    } else {
+                        // defined in compiled code, which cannot be paused
+                        ((Callable) function).call(cx, mScriptScope, mScriptScope, new Object[]{});
+                    }
                 } catch (ContinuationPending cp) {
                     // will happen when displaying a popup
                     mPausedScript = mCurrentScript;
                 } catch (RhinoException e) {
                     displayScriptError(e);
                 } finally {
+                    if (profiled) {
+                        mProfiler.end();
+                    }
                     // Exit from the context.
                     org.mozilla.javascript.Context.exit();
                 }
@@ -595,19 +632,31 @@ public class ScriptExecutor {
             ScriptableObject.putProperty(mScriptScope, "ev_il", il);
             ScriptableObject.putProperty(mScriptScope, "ev_iv", itemView);
 
+            boolean profiled = mProfiler.begin(cx, script.name, source, itemView == null ? Item.NO_ID : itemView.getItem().getId());
             try {
                 if (mCurrentScript.compiledScript == null) {
                     mScriptBuilder.setLength(0);
                     mScriptBuilder.append("javascript:(function() {var _event = createEvent(ev_sc, ev_se, ev_d, ev_t, ev_il, ev_iv); var getEvent = function() { return _event;};\n")
                             .append(mCurrentScript.getScriptText())
                             .append("\n})();");
-                    cx.setOptimizationLevel(-1);
-                    mCurrentScript.compiledScript = cx.compileString(mScriptBuilder.toString(), script.name, 0, null);
+                    String source = mScriptBuilder.toString();
+                    if (mCurrentScript.hasFlag(Script.FLAG_COMPILED)) {
+                        mCurrentScript.compiledScript = mScriptCache.getCompiledScript(cx, source, script.name, newCompiledCodeReadyCallback(mCurrentScript));
+                    }
+                    if (mCurrentScript.compiledScript == null) {
+                        cx.setOptimizationLevel(-1);
+                        mCurrentScript.compiledScript = mScriptCache.getOrCompileScript(cx, source, script.name);
+                    }
                 }
 
                 if (mCurrentScript.compiledScript != null) {
                     try {
-                        cx.executeScriptWithContinuations(mCurrentScript.compiledScript, mScriptScope);
+                        if (!org.mozilla.javascript.Context.isInterpreted(mCurrentScript.compiledScript)) {
+                            // compiled code cannot be paused
+                            mCurrentScript.compiledScript.exec(cx, mScriptScope);
+                        } else {
+                            cx.executeScriptWithContinuations(mCurrentScript.compiledScript, mScriptScope);
+                        }
                     } catch (ContinuationPending cp) {
                         // will happen when displaying a popup
                         mPausedScript = mCurrentScript;
@@ -621,6 +670,9 @@ public class ScriptExecutor {
                 displayScriptError(e);
                 e.printStackTrace();
             } finally {
+                if (profiled) {
+                    mProfiler.end();
+                }
                 // Exit from the context.
                 org.mozilla.javascript.Context.exit();
                 mCurrentContext = null;
@@ -696,11 +748,23 @@ public class ScriptExecutor {
                             .append(mCurrentScript.getScriptText())
                             .append("\n}");
 
-                    cx.setOptimizationLevel(-1);
-                    mCurrentScript.compiledFunction = cx.compileFunction(mScriptScope, mScriptBuilder.toString(), script.name, 0, null);
+                    String source = mScriptBuilder.toString();
+                    if (mCurrentScript.getType() == Script.TYPE_IN_MEMORY) {
+                        // one shot code, not worth a cache entry
+                        cx.setOptimizationLevel(-1);
+                        mCurrentScript.compiledFunction = cx.compileFunction(mScriptScope, source, script.name, 0, null);
+                    } else {
+                        if (mCurrentScript.hasFlag(Script.FLAG_COMPILED)) {
+                            mCurrentScript.compiledFunction = mScriptCache.getCompiledFunction(cx, mScriptScope, source, script.name, newCompiledCodeReadyCallback(mCurrentScript));
+                        }
+                        if (mCurrentScript.compiledFunction == null) {
+                            cx.setOptimizationLevel(-1);
+                            mCurrentScript.compiledFunction = mScriptCache.getOrCompileFunction(cx, mScriptScope, source, script.name);
+                        }
+                    }
                 }
 
-                return runFunction(mCurrentScript.compiledFunction, arguments, allow_continuation, display_errors);
+                return runFunction(mCurrentScript.compiledFunction, script.name, arguments, allow_continuation, display_errors);
             } catch (RhinoException e) {
                 if (display_errors) {
                     displayScriptError(e);
@@ -715,7 +779,25 @@ public class ScriptExecutor {
         return null;
     }
 
+    private Runnable newCompiledCodeReadyCallback(final Script script) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                // interpreted code will be replaced with compiled code on next run
+                script.compiledScript = null;
+                script.compiledFunction = null;
+            }
+        };
+    }
+
     public Object runFunction(Function function, Object[] arguments, boolean allow_continuation, boolean display_errors) {
+        return runFunction(function, null, arguments, allow_continuation, display_errors);
+    }
+
+    /**
+     * @param name name under which the run is profiled, the function name if null
+     */
+    private Object runFunction(Function function, String name, Object[] arguments, boolean allow_continuation, boolean display_errors) {
         if (!canRunScriptGlobally()) {
             return null;
         }
@@ -725,8 +807,9 @@ public class ScriptExecutor {
         org.mozilla.javascript.Context cx = RhinoAndroidHelper.prepareContext();
         mCurrentContext = cx;
         sCurrentScriptExecutor = this;
+        boolean profiled = mProfiler.begin(cx, name == null ? getFunctionName(function) : name, null, Item.NO_ID);
         try {
-            if (allow_continuation) {
+            if (allow_continuation && org.mozilla.javascript.Context.isInterpreted(function)) {
                 try {
                     return cx.callFunctionWithContinuations(function, mScriptScope, arguments);
                 } catch (IllegalStateException e) {
@@ -748,6 +831,9 @@ public class ScriptExecutor {
             }
             t.printStackTrace();
         } finally {
+            if (profiled) {
+                mProfiler.end();
+            }
             // Exit from the context.
             org.mozilla.javascript.Context.exit();
             mCurrentContext = null;
@@ -756,6 +842,11 @@ public class ScriptExecutor {
         return null;
     }
 
+    private static String getFunctionName(Object function) {
+        String name = function instanceof BaseFunction ? ((BaseFunction) function).getFunctionName() : null;
+        return name == null || name.length() == 0 ? "anonymous" : name;
+    }
+
     public boolean canRunScriptGlobally() {
         return mEngine.canRunScripts();
     }
@@ -0,0 +1,318 @@
+package net.pierrox.lightning_launcher.script;
+
+import android.os.Debug;
+
+import net.pierrox.lightning_launcher.data.Item;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mozilla.javascript.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Measures script executions while enabled: invocation counts, wall and CPU time histograms,
+ * allocation estimates and Rhino instruction counts, per script and per trigger. A trigger is the
+ * event (for instance "i.tap", a binding or a drawing callback) and the item that caused the run.
+ * <p>
+ * Executions are nested: {@link #begin(Context, String, String, int)} and {@link #end()} delimit
+ * one run, {@link #pushTrigger(String, int)} and {@link #popTrigger()} let callers which are not
+ * scripts (bindings, drawables) attribute the runs they cause. Times and allocations are
+ * inclusive of nested runs, instructions are counted for the innermost run only. The last runs
+ * are also kept in a ring buffer and can be exported as a trace in the Chrome trace event format.
+ * <p>
+ * Allocations are estimated from the variation of the used heap, they are approximate and
+ * ignore memory reclaimed by the garbage collector meanwhile. Instructions are only counted for
+ * interpreted scripts and for compiled scripts built while profiling was enabled.
+ * This object must be used from the UI thread.
+ */
+public class ScriptProfiler {
+    // bucket i counts durations in [2^i, 2^(i+1)) microseconds, the last one also longer durations
+    public static final int HISTOGRAM_BUCKETS = 21;
+
+    private static final int INSTRUCTION_OBSERVER_THRESHOLD = 1000;
+    private static final int TRACE_CAPACITY = 16384;
+
+    private boolean mEnabled;
+    private long mStartTime;
+
+    private final HashMap<String, Stats> mStats = new HashMap<>();
+    private final ArrayList<Frame> mFrames = new ArrayList<>();
+    private int mDepth;
+
+    // ring buffer of the last runs, times in nanoseconds
+    private final Stats[] mTraceStats = new Stats[TRACE_CAPACITY];
+    private final long[] mTraceStarts = new long[TRACE_CAPACITY];
+    private final long[] mTraceDurations = new long[TRACE_CAPACITY];
+    private final long[] mTraceCpuDurations = new long[TRACE_CAPACITY];
+    private int mTraceCount;
+
+    /**
+     * Clear previous measures and start recording.
+     */
+    public void start() {
+        mStats.clear();
+        Arrays.fill(mTraceStats, null);
+        mTraceCount = 0;
+        mStartTime = System.nanoTime();
+        mEnabled = true;
+    }
+
+    /**
+     * Stop recording, measures are kept until the next start.
+     */
+    public void stop() {
+        mEnabled = false;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Called from the context factory each time a number of instructions has been run.
+     */
+    public static void observeInstructionCount(Context cx, int instructionCount) {
+        Object profiler = cx.getThreadLocal(ScriptProfiler.class);
+        if (profiler instanceof ScriptProfiler) {
+            ((ScriptProfiler) profiler).addInstructions(instructionCount);
+        }
+    }
+
+    /**
+     * Start measuring a run.
+     *
+     * @param name  script or function name
+     * @param event triggering event, or null to inherit the trigger of the enclosing run
+     * @param item  triggering item id, ignored if event is null
+     * @return true if the run is measured, in which case {@link #end()} must be called
+     */
+    public boolean begin(Context cx, String name, String event, int item) {
+        if (!mEnabled) {
+            return false;
+        }
+
+        cx.setInstructionObserverThreshold(INSTRUCTION_OBSERVER_THRESHOLD);
+        cx.putThreadLocal(ScriptProfiler.class, this);
+
+        if (event == null) {
+            Frame parent = mDepth == 0 ? null : mFrames.get(mDepth - 1);
+            event = parent == null ? "" : parent.event;
+            item = parent == null ? Item.NO_ID : parent.item;
+        }
+
+        String key = name + '\u0000' + event + '\u0000' + item;
+        Stats stats = mStats.get(key);
+        if (stats == null) {
+            stats = new Stats(name, event, item);
+            mStats.put(key, stats);
+        }
+
+        Frame frame = pushFrame(event, item);
+        frame.stats = stats;
+        Runtime runtime = Runtime.getRuntime();
+        frame.usedMemoryStart = runtime.totalMemory() - runtime.freeMemory();
+        frame.cpuStart = Debug.threadCpuTimeNanos();
+        frame.wallStart = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Stop measuring the current run.
+     */
+    public void end() {
+        long wall_end = System.nanoTime();
+        long cpu_end = Debug.threadCpuTimeNanos();
+        Runtime runtime = Runtime.getRuntime();
+        long used_memory_end = runtime.totalMemory() - runtime.freeMemory();
+
+        Frame frame = popFrame();
+        if (frame == null || frame.stats == null) {
+            // unbalanced calls
+            return;
+        }
+
+        long wall = wall_end - frame.wallStart;
+        long cpu = frame.cpuStart == -1 || cpu_end == -1 ? 0 : cpu_end - frame.cpuStart;
+        Stats stats = frame.stats;
+        stats.count++;
+        stats.wallTotal += wall;
+        stats.wallSelf += wall - frame.childrenWall;
+        stats.wallMax = Math.max(stats.wallMax, wall);
+        stats.cpuTotal += cpu;
+        stats.allocated += Math.max(0, used_memory_end - frame.usedMemoryStart);
+        stats.instructions += frame.instructions;
+        stats.wallHistogram[getHistogramBucket(wall)]++;
+        stats.cpuHistogram[getHistogramBucket(cpu)]++;
+
+        for (int i = mDepth - 1; i >= 0; i--) {
+            Frame parent = mFrames.get(i);
+            if (parent.stats != null) {
+                parent.childrenWall += wall;
+                break;
+            }
+        }
+
+        int index = mTraceCount % TRACE_CAPACITY;
+        mTraceStats[index] = stats;
+        mTraceStarts[index] = frame.wallStart;
+        mTraceDurations[index] = wall;
+        mTraceCpuDurations[index] = cpu;
+        mTraceCount++;
+
+        frame.stats = null;
+    }
+
+    /**
+     * Attribute runs started until the matching {@link #popTrigger()} to this event and item.
+     * Should only be called while enabled.
+     */
+    public void pushTrigger(String event, int item) {
+        pushFrame(event, item).stats = null;
+    }
+
+    public void popTrigger() {
+        popFrame();
+    }
+
+    /**
+     * @return measures per script and trigger, most expensive first, as a JSON array
+     */
+    public JSONArray getReport() throws JSONException {
+        ArrayList<Stats> all = new ArrayList<>(mStats.values());
+        Collections.sort(all, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                return Long.compare(b.wallTotal, a.wallTotal);
+            }
+        });
+
+        JSONArray report = new JSONArray();
+        for (Stats stats : all) {
+            JSONObject o = new JSONObject();
+            o.put("script", stats.name);
+            o.put("event", stats.event);
+            o.put("item", stats.item);
+            o.put("count", stats.count);
+            o.put("wallTotal", stats.wallTotal / 1e6);
+            o.put("wallSelf", stats.wallSelf / 1e6);
+            o.put("wallMax", stats.wallMax / 1e6);
+            o.put("cpuTotal", stats.cpuTotal / 1e6);
+            o.put("allocated", stats.allocated);
+            o.put("instructions", stats.instructions);
+            o.put("wallHistogram", toJSONArray(stats.wallHistogram));
+            o.put("cpuHistogram", toJSONArray(stats.cpuHistogram));
+            report.put(o);
+        }
+        return report;
+    }
+
+    /**
+     * @return the last runs in the Chrome trace event format, which can be opened with
+     * chrome://tracing or Perfetto
+     */
+    public String getTrace() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        int first = Math.max(0, mTraceCount - TRACE_CAPACITY);
+        for (int n = first; n < mTraceCount; n++) {
+            int index = n % TRACE_CAPACITY;
+            Stats stats = mTraceStats[index];
+            if (n != first) {
+                sb.append(",\n");
+            }
+            sb.append("{\"ph\":\"X\",\"pid\":1,\"tid\":1,\"name\":").append(JSONObject.quote(stats.name))
+                    .append(",\"cat\":").append(JSONObject.quote(stats.event))
+                    .append(",\"ts\":").append((mTraceStarts[index] - mStartTime) / 1000)
+                    .append(",\"dur\":").append(mTraceDurations[index] / 1000)
+                    .append(",\"args\":{\"item\":").append(stats.item)
+                    .append(",\"cpu\":").append(mTraceCpuDurations[index] / 1000)
+                    .append("}}");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private void addInstructions(int count) {
+        if (mDepth > 0) {
+            mFrames.get(mDepth - 1).instructions += count;
+        }
+    }
+
+    private Frame pushFrame(String event, int item) {
+        Frame frame;
+        if (mDepth == mFrames.size()) {
+            frame = new Frame();
+            mFrames.add(frame);
+        } else {
+            frame = mFrames.get(mDepth);
+        }
+        mDepth++;
+        frame.event = event;
+        frame.item = item;
+        frame.childrenWall = 0;
+        frame.instructions = 0;
+        return frame;
+    }
+
+    private Frame popFrame() {
+        if (mDepth == 0) {
+            return null;
+        }
+        return mFrames.get(--mDepth);
+    }
+
+    private static int getHistogramBucket(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 1) {
+            return 0;
+        }
+        return Math.min(HISTOGRAM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static JSONArray toJSONArray(int[] values) {
+        JSONArray a = new JSONArray();
+        for (int v : values) {
+            a.put(v);
+        }
+        return a;
+    }
+
+    private static class Stats {
+        final String name;
+        final String event;
+        final int item;
+        int count;
+        long wallTotal;
+        long wallSelf;
+        long wallMax;
+        long cpuTotal;
+        long allocated;
+        long instructions;
+        final int[] wallHistogram = new int[HISTOGRAM_BUCKETS];
+        final int[] cpuHistogram = new int[HISTOGRAM_BUCKETS];
+
+        Stats(String name, String event, int item) {
+            this.name = name;
+            this.event = event;
+            this.item = item;
+        }
+    }
+
+    // frames are recycled, stats is null for trigger only frames
+    private static class Frame {
+        Stats stats;
+        String event;
+        int item;
+        long wallStart;
+        long cpuStart;
+        long usedMemoryStart;
+        long childrenWall;
+        long instructions;
+    }
+}
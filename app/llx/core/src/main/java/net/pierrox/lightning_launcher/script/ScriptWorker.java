@@ -0,0 +1,349 @@
+package net.pierrox.lightning_launcher.script;
+
+import android.os.Handler;
+import android.os.Process;
+
+import com.faendir.rhino_android.RhinoAndroidHelper;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs a script on its own thread, with its own Rhino context and scope.
+ * <p>
+ * The worker scope only holds the standard objects: no launcher API and no access to Java
+ * classes, hence workers cannot touch objects owned by the UI thread. The worker and the UI
+ * scope only communicate through messages, which are deep copies of plain data (primitives,
+ * arrays, plain objects and dates, cycles included): no object is shared between threads.
+ * <p>
+ * The worker script is run once, then the function it assigns to the global "onMessage" variable
+ * is called for each message. The worker sends messages with the global "postMessage" function.
+ * Each of these runs is limited in time, a worker running longer, or terminated, is stopped at
+ * the next instruction check. Listeners are called on the UI thread.
+ */
+public class ScriptWorker {
+    public interface Listener {
+        void onWorkerMessage(ScriptWorker worker, Object message);
+
+        void onWorkerError(ScriptWorker worker, String message);
+    }
+
+    private static final int INSTRUCTION_OBSERVER_THRESHOLD = 10000;
+
+    private static final Object TERMINATE = new Object();
+
+    // names of the standard objects giving access to Java, removed from the worker scope
+    private static final String[] JAVA_ACCESS_NAMES = {
+            "Packages", "getClass", "JavaAdapter", "JavaImporter", "Continuation",
+            "java", "javax", "org", "com", "edu", "net", "android"
+    };
+
+    private final String mSource;
+    private final String mName;
+    private final long mTimeLimit;
+    private final Handler mHandler;
+    private final Listener mListener;
+    private final LinkedBlockingQueue<Object> mMessages = new LinkedBlockingQueue<>();
+    private final Thread mThread;
+
+    // set when the worker stops, for whatever reason
+    private volatile boolean mTerminated;
+    // set when the worker has been terminated on purpose, in which case it stays silent
+    private volatile boolean mCancelled;
+    private volatile long mRunStartTime;
+
+    /**
+     * Must be created from the UI thread, call {@link #start()} to run the script.
+     *
+     * @param timeLimit maximum duration of a run in milliseconds, 0 for no limit
+     */
+    public ScriptWorker(String source, String name, long timeLimit, Listener listener) {
+        mSource = source;
+        mName = name;
+        mTimeLimit = timeLimit;
+        mHandler = new Handler();
+        mListener = listener;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runWorker();
+            }
+        }, "LL-worker-" + name);
+        mThread.setDaemon(true);
+    }
+
+    public void start() {
+        mThread.start();
+    }
+
+    /**
+     * Send a message to the worker. Called from the UI thread.
+     *
+     * @param message a value from the UI scope, it is copied
+     * @throws EvaluatorException if the message holds values which cannot be copied
+     */
+    public void postMessage(Object message) {
+        if (!mTerminated) {
+            mMessages.offer(toTransferable(message, new IdentityHashMap<Object, Object>()));
+        }
+    }
+
+    /**
+     * Stop the worker, pending messages are dropped. A running script is interrupted.
+     */
+    public void terminate() {
+        mCancelled = true;
+        mTerminated = true;
+        mMessages.clear();
+        mMessages.offer(TERMINATE);
+    }
+
+    public boolean isTerminated() {
+        return mTerminated;
+    }
+
+    /**
+     * Called from the context factory each time a number of instructions has been run.
+     */
+    public static void observeInstructionCount(Context cx) {
+        Object worker = cx.getThreadLocal(ScriptWorker.class);
+        if (worker instanceof ScriptWorker) {
+            ((ScriptWorker) worker).checkRun();
+        }
+    }
+
+    /**
+     * @return true if this context runs a worker script
+     */
+    public static boolean isWorkerContext(Context cx) {
+        return cx.getThreadLocal(ScriptWorker.class) != null;
+    }
+
+    /**
+     * Convert a value received from a worker into a value of the given scope.
+     */
+    public static Object toScriptValue(Context cx, Scriptable scope, Object transferable) {
+        return fromTransferable(cx, scope, transferable, new IdentityHashMap<Object, Object>());
+    }
+
+    private void checkRun() {
+        if (mTerminated) {
+            throw new WorkerStoppedError("terminated");
+        }
+        if (mTimeLimit > 0 && System.currentTimeMillis() - mRunStartTime > mTimeLimit) {
+            mTerminated = true;
+            throw new WorkerStoppedError("time limit of " + mTimeLimit + "ms exceeded");
+        }
+    }
+
+    private void runWorker() {
+        Context cx = RhinoAndroidHelper.prepareContext();
+        try {
+            cx.setOptimizationLevel(-1);
+            cx.setInstructionObserverThreshold(INSTRUCTION_OBSERVER_THRESHOLD);
+            cx.putThreadLocal(ScriptWorker.class, this);
+
+            Scriptable scope = createScope(cx);
+
+            mRunStartTime = System.currentTimeMillis();
+            cx.evaluateString(scope, mSource, mName, 0, null);
+
+            while (!mTerminated) {
+                Object message = mMessages.take();
+                if (message == TERMINATE) {
+                    break;
+                }
+                Object on_message = ScriptableObject.getProperty(scope, "onMessage");
+                if (on_message instanceof Function) {
+                    mRunStartTime = System.currentTimeMillis();
+                    Object value = fromTransferable(cx, scope, message, new IdentityHashMap<Object, Object>());
+                    ((Function) on_message).call(cx, scope, scope, new Object[]{value});
+                }
+            }
+        } catch (WorkerStoppedError e) {
+            if (!mCancelled) {
+                reportError(e.getMessage());
+            }
+        } catch (RhinoException e) {
+            reportError(e.getMessage());
+        } catch (InterruptedException e) {
+            // pass, stop
+        } catch (Throwable t) {
+            // catches runtime exceptions and OOM Error, this thread must not crash the app
+            reportError(t.toString());
+        } finally {
+            mTerminated = true;
+            mMessages.clear();
+            Context.exit();
+        }
+    }
+
+    private Scriptable createScope(Context cx) {
+        ScriptableObject root = cx.initStandardObjects(null, false);
+        for (String name : JAVA_ACCESS_NAMES) {
+            root.delete(name);
+        }
+        WorkerFunction post_message = new WorkerFunction(this);
+        ScriptRuntime.setFunctionProtoAndParent(post_message, root);
+        ScriptableObject.putProperty(root, "postMessage", post_message);
+        root.sealObject();
+
+        Scriptable scope = cx.newObject(root);
+        scope.setPrototype(root);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    private void reportError(final String message) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onWorkerError(ScriptWorker.this, message);
+                }
+            }
+        });
+    }
+
+    private void sendToUi(Object message) {
+        final Object transferable = toTransferable(message, new IdentityHashMap<Object, Object>());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onWorkerMessage(ScriptWorker.this, transferable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deep copy of a script value into plain Java objects, which do not reference any scope.
+     * Arrays become ArrayList, objects LinkedHashMap and dates Date.
+     */
+    private static Object toTransferable(Object value, IdentityHashMap<Object, Object> copies) {
+        if (value == null || value == Undefined.instance || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof CharSequence) {
+            return value.toString();
+        }
+        if (value instanceof Wrapper || value instanceof Function || !(value instanceof Scriptable)) {
+            throw Context.reportRuntimeError("cannot send " + ScriptRuntime.typeof(value) + " in a worker message: " + Context.toString(value));
+        }
+
+        Object copy = copies.get(value);
+        if (copy != null) {
+            return copy;
+        }
+
+        Scriptable object = (Scriptable) value;
+        String class_name = object.getClassName();
+        if ("Date".equals(class_name)) {
+            copy = new Date((long) Context.toNumber(object));
+            copies.put(value, copy);
+        } else if ("Array".equals(class_name)) {
+            ArrayList<Object> list = new ArrayList<>();
+            copies.put(value, list);
+            long length = (long) Context.toNumber(ScriptableObject.getProperty(object, "length"));
+            for (int i = 0; i < length; i++) {
+                Object item = ScriptableObject.getProperty(object, i);
+                list.add(toTransferable(item == Scriptable.NOT_FOUND ? Undefined.instance : item, copies));
+            }
+            copy = list;
+        } else if ("Object".equals(class_name)) {
+            LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+            copies.put(value, map);
+            for (Object id : object.getIds()) {
+                String key = id.toString();
+                Object item = id instanceof Integer ? object.get((Integer) id, object) : object.get(key, object);
+                if (!(item instanceof Function)) {
+                    map.put(key, toTransferable(item, copies));
+                }
+            }
+            copy = map;
+        } else {
+            throw Context.reportRuntimeError("cannot send a " + class_name + " in a worker message");
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object fromTransferable(Context cx, Scriptable scope, Object transferable, IdentityHashMap<Object, Object> copies) {
+        if (!(transferable instanceof Date || transferable instanceof ArrayList || transferable instanceof LinkedHashMap)) {
+            return transferable;
+        }
+
+        Object copy = copies.get(transferable);
+        if (copy != null) {
+            return copy;
+        }
+
+        if (transferable instanceof Date) {
+            copy = cx.newObject(scope, "Date", new Object[]{(double) ((Date) transferable).getTime()});
+            copies.put(transferable, copy);
+        } else if (transferable instanceof ArrayList) {
+            ArrayList<Object> list = (ArrayList<Object>) transferable;
+            int length = list.size();
+            Scriptable array = cx.newArray(scope, length);
+            copies.put(transferable, array);
+            for (int i = 0; i < length; i++) {
+                array.put(i, array, fromTransferable(cx, scope, list.get(i), copies));
+            }
+            copy = array;
+        } else {
+            Scriptable object = cx.newObject(scope);
+            copies.put(transferable, object);
+            for (Map.Entry<String, Object> entry : ((LinkedHashMap<String, Object>) transferable).entrySet()) {
+                ScriptableObject.putProperty(object, entry.getKey(), fromTransferable(cx, scope, entry.getValue(), copies));
+            }
+            copy = object;
+        }
+        return copy;
+    }
+
+    // "postMessage" in the worker scope
+    private static class WorkerFunction extends org.mozilla.javascript.BaseFunction {
+        private final ScriptWorker mWorker;
+
+        WorkerFunction(ScriptWorker worker) {
+            mWorker = worker;
+        }
+
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+            mWorker.sendToUi(args.length == 0 ? Undefined.instance : args[0]);
+            return Undefined.instance;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "postMessage";
+        }
+    }
+
+    // not an exception: scripts cannot catch it, and it runs no finally block
+    private static class WorkerStoppedError extends Error {
+        WorkerStoppedError(String message) {
+            super(message);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package net.pierrox.lightning_launcher.script.api;
 
 import android.app.Activity;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
@@ -28,6 +29,7 @@ import net.pierrox.lightning_launcher.script.api.screen.Screen;
 import net.pierrox.lightning_launcher.views.ItemLayout;
 import net.pierrox.lightning_launcher.views.item.ItemView;
 
+import org.json.JSONException;
 import org.mozilla.javascript.ContinuationPending;
 import org.mozilla.javascript.Interpreter;
 import org.mozilla.javascript.NativeJavaObject;
@@ -707,6 +709,118 @@ public class Lightning {
         mEngine.getScriptExecutor().clearTimeout(id);
     }
 
+    /**
+     * Returns the most frequently launched apps, best first.
+     * Apps are ranked by a score which decays over time: each launch counts for 1, and this value is halved every two weeks, so that recent habits weigh more than old launches.
+     *
+     * @param count maximum number of components to return
+     * @return an array of component names, flattened in their short form (for instance "com.android.settings/.Settings")
+     */
+    public String[] getMostLaunchedApps(int count) {
+        ComponentName[] components = mEngine.getLaunchStatistics().getTopComponents(count);
+        int l = components.length;
+        String[] names = new String[l];
+        for (int i = 0; i < l; i++) {
+            names[i] = components[i].flattenToShortString();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the number of times an app has been launched from the launcher.
+     *
+     * @param component a component name, as returned by {@link #getMostLaunchedApps(int)}
+     * @return the launch count, 0 if never launched or if the component name is invalid
+     */
+    public int getLaunchCount(String component) {
+        ComponentName cn = ComponentName.unflattenFromString(component);
+        return cn == null ? 0 : mEngine.getLaunchStatistics().getLaunchCount(cn);
+    }
+
+    /**
+     * Run a script in the background, with a time limit of 30 seconds per run.
+     *
+     * @see #createWorker(Script, int)
+     */
+    public Worker createWorker(Script script) {
+        return createWorker(script, 30000);
+    }
+
+    /**
+     * Run a script in the background, on its own thread, and exchange messages with it. See {@link Worker} for details.
+     *
+     * @param script    the script to run in the worker
+     * @param timeLimit maximum duration in milliseconds of the initial run of the script and of each message handling, 0 for no limit
+     * @return a worker, already started
+     */
+    public Worker createWorker(Script script, int timeLimit) {
+        net.pierrox.lightning_launcher.script.Script s = script.getScript();
+        return new Worker(mEngine, s.getScriptText(), s.name, timeLimit);
+    }
+
+    /**
+     * Start measuring script executions, for instance to find which scripts are slow. Previous measures are cleared.
+     * Measuring has a small cost: it should not be left enabled.
+     */
+    public void startProfiling() {
+        mEngine.getScriptExecutor().getProfiler().start();
+    }
+
+    /**
+     * Stop measuring script executions. Measures are kept and can still be retrieved with {@link #getProfilingReport()} and {@link #exportProfilingTrace()}.
+     */
+    public void stopProfiling() {
+        mEngine.getScriptExecutor().getProfiler().stop();
+    }
+
+    /**
+     * Returns true if script executions are being measured.
+     */
+    public boolean isProfiling() {
+        return mEngine.getScriptExecutor().getProfiler().isEnabled();
+    }
+
+    /**
+     * Returns measures of script executions since profiling has been started, as a JSON array, most expensive scripts first.
+     * There is one object per script, event and item, with these fields:
+     * <ul>
+     *     <li>script: script or function name</li>
+     *     <li>event: source of the execution, for instance "i.tap", "binding x" or "draw"</li>
+     *     <li>item: identifier of the item for which the script ran, or -1</li>
+     *     <li>count: number of executions</li>
+     *     <li>wallTotal, wallSelf, wallMax, cpuTotal: times in milliseconds, wallSelf excludes scripts run from this script</li>
+     *     <li>allocated: estimate of the allocated memory, in bytes</li>
+     *     <li>instructions: number of interpreted instructions</li>
+     *     <li>wallHistogram, cpuHistogram: number of executions per duration range, index i counting executions between 2^i and 2^(i+1) microseconds</li>
+     * </ul>
+     * Use JSON.parse to read the result.
+     */
+    public String getProfilingReport() {
+        try {
+            return mEngine.getScriptExecutor().getProfiler().getReport().toString();
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the last measured script executions to a trace file, which can be opened with chrome://tracing or Perfetto.
+     * The path is not configurable and is: &lt;external storage&gt;/LightningLauncher/script/trace.json.
+     *
+     * @return the path of the trace file, or null if it cannot be written
+     */
+    public String exportProfilingTrace() {
+        File file = new File(FileUtils.LL_EXT_SCRIPT_DIR, "trace.json");
+        try {
+            FileUtils.LL_EXT_SCRIPT_DIR.mkdirs();
+            FileUtils.saveStringToFile(mEngine.getScriptExecutor().getProfiler().getTrace(), file);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * return the typeface used to draw icons.
      */
@@ -25,6 +25,7 @@ import net.pierrox.lightning_launcher.views.SharedAsyncGraphicsDrawable;
 import net.pierrox.lightning_launcher.views.item.ItemView;
 import net.pierrox.lightning_launcher.views.item.ShortcutView;
 
+import org.json.JSONObject;
 import org.mozilla.javascript.ScriptRuntime;
 
 import java.lang.reflect.Field;
@@ -672,6 +673,9 @@ public class PropertyEditor {
             }
         }
 
+        // keep the current config to find out what changed when reloading the page
+        JSONObject old_page_config = type == PropertySet.Type.CONTAINER ? page.getConfigAsJSONObject() : null;
+
         boolean modified = false;
 //        boolean apply_icon_pack = false;
         for (String key : keys) {
@@ -713,7 +717,7 @@ public class PropertyEditor {
                 case CONTAINER:
                     page.setModified();
                     page.saveConfig();
-                    page.reload();
+                    page.reloadIncrementally(old_page_config);
                     break;
                 case GLOBAL_CONFIG:
                     // pass
@@ -18,6 +18,12 @@ public class Script {
     public static final int FLAG_APP_MENU = net.pierrox.lightning_launcher.script.Script.FLAG_APP_MENU;
     public static final int FLAG_ITEM_MENU = net.pierrox.lightning_launcher.script.Script.FLAG_ITEM_MENU;
     public static final int FLAG_CUSTOM_MENU = net.pierrox.lightning_launcher.script.Script.FLAG_CUSTOM_MENU;
+    /**
+     * Run this script as compiled code instead of interpreting it, which is faster for heavy scripts.
+     * Compilation happens in the background the first time and its result is kept on disk: the script is interpreted until then.
+     * Compiled scripts cannot pause, hence dialogs waiting for the user, such as pickers, are not available.
+     */
+    public static final int FLAG_COMPILED = net.pierrox.lightning_launcher.script.Script.FLAG_COMPILED;
 
     private final LightningEngine mEngine;
     private final net.pierrox.lightning_launcher.script.Script mScript;
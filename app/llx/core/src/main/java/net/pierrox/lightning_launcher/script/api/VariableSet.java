@@ -22,7 +22,7 @@ public class VariableSet {
     }
 
     public String getType(String name) {
-        Object value = mVariableManager.getVariable(name).value;
+        Object value = mVariableManager.readVariable(name).value;
         if (value == null) {
             return "UNSET";
         } else {
@@ -42,19 +42,19 @@ public class VariableSet {
     }
 
     public boolean getBoolean(String name) {
-        return Value.asBoolean(mVariableManager.getVariable(name).value);
+        return Value.asBoolean(mVariableManager.readVariable(name).value);
     }
 
     public float getFloat(String name) {
-        return Value.asFloat(mVariableManager.getVariable(name).value);
+        return Value.asFloat(mVariableManager.readVariable(name).value);
     }
 
     public int getInteger(String name) {
-        return Value.asInteger(mVariableManager.getVariable(name).value);
+        return Value.asInteger(mVariableManager.readVariable(name).value);
     }
 
     public String getString(String name) {
-        return Value.asString(mVariableManager.getVariable(name).value);
+        return Value.asString(mVariableManager.readVariable(name).value);
     }
 
     public VariableEditor edit() {
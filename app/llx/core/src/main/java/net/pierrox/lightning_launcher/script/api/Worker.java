@@ -0,0 +1,120 @@
+package net.pierrox.lightning_launcher.script.api;
+
+import com.faendir.rhino_android.RhinoAndroidHelper;
+
+import net.pierrox.lightning_launcher.engine.LightningEngine;
+import net.pierrox.lightning_launcher.script.ScriptExecutor;
+import net.pierrox.lightning_launcher.script.ScriptWorker;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * A worker runs a script in the background, on its own thread, so that long computations (parsing data, heavy math, etc.) do not freeze the launcher.
+ * Warning: this API is currently experimental.
+ * <p>
+ * The worker script runs in its own, isolated scope: it can use the standard JavaScript objects (Math, JSON, RegExp, etc.), but not the launcher API nor Java classes.
+ * The worker and the script which created it exchange messages, which can hold numbers, strings, booleans, arrays, dates and plain objects. Messages are copied: an object modified after having been sent is not modified on the other side.
+ * <p>
+ * In the worker script, assign a function to the global variable onMessage to receive messages, and call postMessage(message) to send them:
+ * <pre>
+ * onMessage = function(data) {
+ *     postMessage(data.a * data.b);
+ * }
+ * </pre>
+ * On the launcher side:
+ * <pre>
+ * var worker = createWorker(getScriptByName("multiply"));
+ * worker.setOnMessage(function(result) { alert(result); });
+ * worker.postMessage({a: 6, b: 7});
+ * </pre>
+ * The initial run of the worker script, and each call to its onMessage function, are limited in time: a worker running longer is stopped and its error handler is called.
+ * <p>
+ * An instance of this object can be created with {@link Lightning#createWorker(Script)} or {@link Lightning#createWorker(Script, int)}.
+ */
+public class Worker {
+    private final LightningEngine mEngine;
+    private final ScriptWorker mWorker;
+    private Function mOnMessage;
+    private Function mOnError;
+
+    /**
+     * @hide
+     */
+    /*package*/ Worker(LightningEngine engine, String source, String name, int timeLimit) {
+        mEngine = engine;
+        mWorker = new ScriptWorker(source, name, timeLimit, new ScriptWorker.Listener() {
+            @Override
+            public void onWorkerMessage(ScriptWorker worker, Object message) {
+                if (mOnMessage == null) {
+                    return;
+                }
+                ScriptExecutor se = mEngine.getScriptExecutor();
+                Scriptable scope = se.prepareScriptScope();
+                Context cx = RhinoAndroidHelper.prepareContext();
+                Object value;
+                try {
+                    value = ScriptWorker.toScriptValue(cx, scope, message);
+                } finally {
+                    Context.exit();
+                }
+                se.runFunction(mOnMessage, new Object[]{value}, false, true);
+            }
+
+            @Override
+            public void onWorkerError(ScriptWorker worker, String message) {
+                ScriptExecutor se = mEngine.getScriptExecutor();
+                if (mOnError == null) {
+                    se.displayScriptError(message, 0);
+                } else {
+                    se.runFunction(mOnError, new Object[]{message}, false, true);
+                }
+            }
+        });
+        mEngine.getScriptExecutor().addWorker(mWorker);
+        mWorker.start();
+    }
+
+    /**
+     * Send a message to the worker. The message is copied.
+     *
+     * @param message a number, string, boolean, array, date or plain object
+     */
+    public void postMessage(Object message) {
+        mWorker.postMessage(message);
+    }
+
+    /**
+     * Set the function called with messages sent by the worker.
+     *
+     * @param handler a function receiving the message as argument, or null
+     */
+    public void setOnMessage(Function handler) {
+        mOnMessage = handler;
+    }
+
+    /**
+     * Set the function called when the worker script fails, or exceeds its time limit. The worker is stopped.
+     * When no function is set, the error is displayed.
+     *
+     * @param handler a function receiving the error message as argument, or null
+     */
+    public void setOnError(Function handler) {
+        mOnError = handler;
+    }
+
+    /**
+     * Stop the worker. Pending messages are dropped and a running script is interrupted.
+     */
+    public void terminate() {
+        mWorker.terminate();
+    }
+
+    /**
+     * Return true if the worker has been terminated, or has stopped because of an error.
+     */
+    public boolean isTerminated() {
+        return mWorker.isTerminated();
+    }
+}
@@ -51,6 +51,7 @@ import net.pierrox.lightning_launcher.data.EmbeddedFolder;
 import net.pierrox.lightning_launcher.data.Folder;
 import net.pierrox.lightning_launcher.data.Item;
 import net.pierrox.lightning_launcher.data.Page;
+import net.pierrox.lightning_launcher.data.PageChangeSet;
 import net.pierrox.lightning_launcher.data.PageIndicator;
 import net.pierrox.lightning_launcher.data.Shortcut;
 import net.pierrox.lightning_launcher.data.StopPoint;
@@ -71,6 +72,8 @@ import net.pierrox.lightning_launcher.views.item.WidgetView;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 public class ItemLayout extends ViewGroup {
     public static final int POSITION_FREE = 0;
@@ -93,6 +96,23 @@ public class ItemLayout extends ViewGroup {
     private static final DecelerateInterpolator mDecelerateInterpolator = new DecelerateInterpolator();
     private static final BounceInterpolator mBounceInterpolator = new BounceInterpolator();
     private static final int DELAYED_VIEW_INIT_DELAY = 50;
+    private static final int DELAYED_VIEW_INIT_BATCH = 20;
+    // smaller batches while flinging, so that frames are not skipped
+    private static final int DELAYED_VIEW_INIT_BATCH_FLINGING = 3;
+    // how far ahead in the fling direction views are prepared, in seconds of fling velocity
+    private static final float PREFETCH_LOOKAHEAD = 0.3f;
+    // on containers with at least this number of items, graphics of item views farther than
+    // FAR_VIEWS_EVICTION_DISTANCE viewport diagonals are released
+    private static final int FAR_VIEWS_MIN_ITEM_VIEWS = 100;
+    private static final float FAR_VIEWS_EVICTION_DISTANCE = 3;
+    private static final float FAR_VIEWS_RELOAD_DISTANCE = 1.5f;
+    private static final int FAR_VIEWS_UPDATE_DELAY = 100;
+    private static final Comparator<ItemView> sFarthestItemViewFirst = new Comparator<ItemView>() {
+        @Override
+        public int compare(ItemView iv1, ItemView iv2) {
+            return Float.compare(iv2.mDistanceToViewport, iv1.mDistanceToViewport);
+        }
+    };
     private static final long ANIMATION_ITEM_ROTATION = 200;
     private static final int sMeasureUnspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
     private static final float sMinScrollThreshold = 0.5f;
@@ -149,6 +169,9 @@ public class ItemLayout extends ViewGroup {
     private final Rect mAutoScrollRect = new Rect();
     private final Matrix mTempMatrix = new Matrix();
     private final RectF mTempRectF2 = new RectF();
+    private final SpatialIndex mSpatialIndex = new SpatialIndex(this);
+    private final ArrayList<View> mTmpDrawnChildren = new ArrayList<>();
+    private final ArrayList<View> mTmpTouchedChildren = new ArrayList<>();
     private final Matrix mTempInverseMatrix = new Matrix();
     private final float[] mScreenCornersFrom = new float[4];
     private final float[] mScreenCornersTo = new float[4];
@@ -289,8 +312,18 @@ public class ItemLayout extends ViewGroup {
                 }
                 return;
             }
+            if (!mDelayedItemViewsSorted) {
+                // nearest views, or views about to be revealed by the fling, at the end of the list
+                computeViewportFocus();
+                for (ItemView itemView : mDelayedItemViews) {
+                    computeDistanceToViewport(itemView);
+                }
+                Collections.sort(mDelayedItemViews, sFarthestItemViewFirst);
+                mDelayedItemViewsSorted = true;
+            }
             int l = mDelayedItemViews.size();
-            int batch = l > 20 ? 20 : l;
+            int max_batch = mFlinging ? DELAYED_VIEW_INIT_BATCH_FLINGING : DELAYED_VIEW_INIT_BATCH;
+            int batch = l > max_batch ? max_batch : l;
             for (int i = 0; i < batch; i++) {
                 l--;
                 ItemView itemView = mDelayedItemViews.remove(l);
@@ -324,11 +357,25 @@ public class ItemLayout extends ViewGroup {
                     // it may have been scheduled in the meantime, because of the call to invalidate triggered by ensureItemViewReady
                     mDelayedItemViewLoadScheduled = true;
 //                    mSkipNextMeasureAndLayout = true;
-                    post(mLoadDelayedItemView);
+                    if (mFlinging) {
+                        postDelayed(mLoadDelayedItemView, DELAYED_VIEW_INIT_DELAY);
+                    } else {
+                        post(mLoadDelayedItemView);
+                    }
                 }
             }
         }
     };
+    private boolean mFarItemViewsUpdateScheduled;
+    private final Runnable mUpdateFarItemViews = new Runnable() {
+        @Override
+        public void run() {
+            mFarItemViewsUpdateScheduled = false;
+            updateFarItemViews();
+        }
+    };
+    private float mViewportFocusX;
+    private float mViewportFocusY;
     private boolean mChildOverscrollHorizontal;
     private float mPrevTouchX;
     private float mPrevTouchY;
@@ -406,6 +453,11 @@ public class ItemLayout extends ViewGroup {
             mDelayedItemViews = null;
         }
 
+        if (mFarItemViewsUpdateScheduled) {
+            mFarItemViewsUpdateScheduled = false;
+            removeCallbacks(mUpdateFarItemViews);
+        }
+
         mAnimatingNavigation = false;
         mFlinging = false;
 
@@ -527,6 +579,8 @@ public class ItemLayout extends ViewGroup {
         Page oldPage = mPage;
         mPage = page;
 
+        mScreen.onItemLayoutPageChanged(this, oldPage, mPage);
+
         mAlwaysShowStopPoints = LLApp.get().getSystemConfig().alwaysShowStopPoints;
         // TODO register for alwaysShowStopPoints changes
 
@@ -552,17 +606,7 @@ public class ItemLayout extends ViewGroup {
         computeCurrentLocalTransformValues();
 //		loadWallpaper();
 
-        switch (mPage.config.overScrollMode) {
-            case BOUNCE:
-                mOverScrollInterpolator = mBounceInterpolator;
-                break;
-            case DECELERATE:
-                mOverScrollInterpolator = mDecelerateInterpolator;
-                break;
-            default:
-                mOverScrollInterpolator = mBounceInterpolator;
-                break;
-        }
+        configureOverScroll();
 
         mStopPoints = new ArrayList<>();
         mPageIndicators = new ArrayList<>();
@@ -616,6 +660,28 @@ public class ItemLayout extends ViewGroup {
             loadNextItemViewLater();
         }
 
+        configureWallpaperOffset();
+
+        if (BuildConfig.IS_BETA) {
+            Log.i("LL", "ItemLayout.loadPage " + mPage.id + " in " + (SystemClock.uptimeMillis() - t1) + "ms");
+        }
+    }
+
+    private void configureOverScroll() {
+        switch (mPage.config.overScrollMode) {
+            case BOUNCE:
+                mOverScrollInterpolator = mBounceInterpolator;
+                break;
+            case DECELERATE:
+                mOverScrollInterpolator = mDecelerateInterpolator;
+                break;
+            default:
+                mOverScrollInterpolator = mBounceInterpolator;
+                break;
+        }
+    }
+
+    private void configureWallpaperOffset() {
         if (mPage.config.bgSystemWPScroll && !mPage.isFolder() && mPage.id != mPage.getEngine().getGlobalConfig().lwpScreen) {
             if (mWallpaperManager == null) {
                 mWallpaperManager = WallpaperManager.getInstance(getContext());
@@ -631,10 +697,6 @@ public class ItemLayout extends ViewGroup {
                 mSetWallpaperOffsetThread = null;
             }
         }
-
-        if (BuildConfig.IS_BETA) {
-            Log.i("LL", "ItemLayout.loadPage " + mPage.id + " in " + (SystemClock.uptimeMillis() - t1) + "ms");
-        }
     }
 
     public void setAllowDelayedViewInit(boolean allow) {
@@ -676,6 +738,7 @@ public class ItemLayout extends ViewGroup {
                 i.getPage().getEngine().getVariableManager().updateBindings(v, bindings, true, mScreen, false);
             }
             mItemViews.put(i.getId(), v);
+            mScreen.onItemLayoutItemViewAdded(this, v);
             int max = getChildCount() - 1;
             if (index > max) {
 //                index = max;
@@ -683,6 +746,7 @@ public class ItemLayout extends ViewGroup {
             addView(v, index);
             if (allowDelayedInit && (v instanceof ShortcutView || v instanceof WidgetView) && i.getItemConfig().onGrid && !hasBindings) {
                 mDelayedItemViews.add(v);
+                mDelayedItemViewsSorted = false;
             } else {
                 v.init();
                 if (mIsResumed) v.resume();
@@ -691,6 +755,7 @@ public class ItemLayout extends ViewGroup {
             bringChildToFront(v);
             if (!v.isInitDone() && mDelayedItemViews != null) {
                 mDelayedItemViews.add(v);
+                mDelayedItemViewsSorted = false;
             }
         }
 
@@ -768,6 +833,85 @@ public class ItemLayout extends ViewGroup {
         }
     }
 
+    /**
+     * The point around which views are prepared first: the viewport center, moved ahead in the fling
+     * direction since this is where new views will appear.
+     */
+    private void computeViewportFocus() {
+        mViewportFocusX = mMyRect.centerX();
+        mViewportFocusY = mMyRect.centerY();
+        if (mFlinging) {
+            mViewportFocusX -= mScrollVelocityX * PREFETCH_LOOKAHEAD;
+            mViewportFocusY -= mScrollVelocityY * PREFETCH_LOOKAHEAD;
+        }
+    }
+
+    private void computeDistanceToViewport(ItemView itemView) {
+        Matrix transform = getTransformForItemView(itemView);
+        itemView.getHitRect(mTempRect);
+        mTempRectF.set(mTempRect);
+        if (transform != null) transform.mapRect(mTempRectF);
+        float dx = mViewportFocusX - mTempRectF.centerX();
+        float dy = mViewportFocusY - mTempRectF.centerY();
+        itemView.mDistanceToViewport = dx * dx + dy * dy;
+    }
+
+    private void scheduleFarItemViewsUpdate() {
+        // throttled rather than delayed, so that it also runs while scrolling
+        if (!mFarItemViewsUpdateScheduled && mIsResumed && mItemViews.size() >= FAR_VIEWS_MIN_ITEM_VIEWS) {
+            mFarItemViewsUpdateScheduled = true;
+            postDelayed(mUpdateFarItemViews, FAR_VIEWS_UPDATE_DELAY);
+        }
+    }
+
+    /**
+     * On large containers, release icons of item views far from the viewport, and load them again
+     * asynchronously before they come back into view. Only unshared static icons are released, the
+     * item view itself is kept.
+     */
+    private void updateFarItemViews() {
+        if (mPage == null || mItemViews.size() < FAR_VIEWS_MIN_ITEM_VIEWS) {
+            return;
+        }
+
+        computeViewportFocus();
+        float diagonal2 = mMyRect.width() * mMyRect.width() + mMyRect.height() * mMyRect.height();
+        float eviction_distance = diagonal2 * FAR_VIEWS_EVICTION_DISTANCE * FAR_VIEWS_EVICTION_DISTANCE;
+        float reload_distance = diagonal2 * FAR_VIEWS_RELOAD_DISTANCE * FAR_VIEWS_RELOAD_DISTANCE;
+        for (int i = mItemViews.size() - 1; i >= 0; i--) {
+            ItemView itemView = mItemViews.valueAt(i);
+            if (!itemView.isInitDone()) {
+                continue;
+            }
+            Item item = itemView.getItem();
+            Class<? extends Item> cls = item.getClass();
+            if (cls != Shortcut.class && cls != Folder.class) {
+                continue;
+            }
+
+            computeDistanceToViewport(itemView);
+            float distance = itemView.mDistanceToViewport;
+            if (distance > eviction_distance) {
+                if (itemView.isSelected() || itemView.isDragged() || item.getItemConfig().bindings != null) {
+                    continue;
+                }
+                // the drawable belongs to the item, it may be displayed by another item layout
+                if (mScreen.getItemViewsForItem(item).length != 1) {
+                    continue;
+                }
+                SharedAsyncGraphicsDrawable sbd = ((Shortcut) item).getSharedAsyncGraphicsDrawable();
+                if (sbd != null && sbd.getType() == SharedAsyncGraphicsDrawable.TYPE_BITMAP && sbd.canReload()) {
+                    sbd.reset();
+                }
+            } else if (distance < reload_distance) {
+                SharedAsyncGraphicsDrawable sbd = ((Shortcut) item).getSharedAsyncGraphicsDrawable();
+                if (sbd != null && sbd.needToLoadGraphics()) {
+                    sbd.loadGraphicsAsync();
+                }
+            }
+        }
+    }
+
     public int getAppDrawerHiddenHandling() {
         return mAppDrawerHiddenHandling;
     }
@@ -1741,6 +1885,7 @@ public class ItemLayout extends ViewGroup {
         itemView.layout(left, top, right, bottom);
         item.setViewWidth(right - left);
         item.setViewHeight(bottom - top);
+        updateSpatialIndex(itemView);
         if (itemView == mHandleItemView && mHandleViewVisible) {
             layoutHandleView();
         }
@@ -1772,11 +1917,77 @@ public class ItemLayout extends ViewGroup {
         if (item.getViewHeight() == 0) {
             item.setViewHeight((int) ((cb - ct) * getCurrentScale()));
         }
+        updateSpatialIndex(itemView);
         if (itemView == mHandleItemView && mHandleViewVisible) {
             layoutHandleView();
         }
     }
 
+    /**
+     * Item views drawn with the local transform are indexed at their layout position. Other item
+     * views (pinned, or embedded folders which need to animate even when not visible) are returned
+     * by all queries.
+     */
+    private void updateSpatialIndex(ItemView itemView) {
+        Item item = itemView.getItem();
+        ItemConfig ic = item.getItemConfig();
+        if (ic.pinMode != ItemConfig.PinMode.NONE || itemView.isAlwaysPinnedAndVisible() || itemView.getClass() == EmbeddedFolderView.class) {
+            mSpatialIndex.setUnbounded(itemView);
+        } else if (ic.rotate) {
+            // the view rotates around its center without being laid out again
+            int cx = (itemView.getLeft() + itemView.getRight()) / 2;
+            int cy = (itemView.getTop() + itemView.getBottom()) / 2;
+            int w = itemView.getWidth();
+            int h = itemView.getHeight();
+            int r = (int) Math.ceil(Math.sqrt(w * w + h * h) / 2);
+            mSpatialIndex.setBounds(itemView, cx - r, cy - r, cx + r, cy + r);
+        } else {
+            mSpatialIndex.setBounds(itemView, itemView.getLeft(), itemView.getTop(), itemView.getRight(), itemView.getBottom());
+        }
+    }
+
+    /**
+     * Retrieve children possibly intersecting a rect, in drawing order. The result is a superset of
+     * the children whose transformed hit rect intersects the rect.
+     *
+     * @param rect a rect in the coordinates of this view
+     * @param out cleared then filled with matching children
+     */
+    public void getChildrenInRect(RectF rect, ArrayList<View> out) {
+        if (mPage != null && (mPage.config.wrapX || mPage.config.wrapY) && mAllowWrap) {
+            // positions depend on the item and the bounding box, the index cannot be used
+            out.clear();
+            int count = getChildCount();
+            for (int n = 0; n < count; n++) {
+                out.add(getChildAt(n));
+            }
+            return;
+        }
+
+        mTempRectF2.set(rect);
+        mLocalInverseTransform.mapRect(mTempRectF2);
+        // one more pixel because of the rounding of cell positions
+        mSpatialIndex.query(mTempRectF2.left - 1, mTempRectF2.top - 1, mTempRectF2.right + 1, mTempRectF2.bottom + 1, out);
+    }
+
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        mSpatialIndex.add(child);
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        mSpatialIndex.remove(child);
+    }
+
+    @Override
+    public void bringChildToFront(View child) {
+        super.bringChildToFront(child);
+        mSpatialIndex.invalidateZOrder();
+    }
+
     private void layoutHandleView() {
         final View v = mHandleItemView;
         mTempRectF.set(v.getLeft(), v.getTop(), v.getRight(), v.getBottom());
@@ -2179,9 +2390,11 @@ public class ItemLayout extends ViewGroup {
     }
 
     private void drawItems(Canvas canvas) {
-        int count = getChildCount();
+        ArrayList<View> children = mTmpDrawnChildren;
+        getChildrenInRect(mMyRect, children);
+        int count = children.size();
         for (int n = 0; n < count; n++) {
-            View childView = getChildAt(n);
+            View childView = children.get(n);
             if (!(childView instanceof ItemView)) continue;
 
             ItemView itemView = (ItemView) childView;
@@ -2203,18 +2416,12 @@ public class ItemLayout extends ViewGroup {
             mTempRectF.set(mTempRect);
             if (transform != null) transform.mapRect(mTempRectF);
             if (!RectF.intersects(mMyRect, mTempRectF)) {
-                if (itemView.isInitDone()) {
-                    if (itemView.getClass() == EmbeddedFolderView.class) {
-                        // don't draw the item, but allow it to continue its animation if needed
-                        ItemLayout e_il = ((EmbeddedFolderView) itemView).getEmbeddedItemLayout();
-                        if (e_il.computeAnimations()) {
-                            invalidate();
-                        }
+                if (itemView.isInitDone() && itemView.getClass() == EmbeddedFolderView.class) {
+                    // don't draw the item, but allow it to continue its animation if needed
+                    ItemLayout e_il = ((EmbeddedFolderView) itemView).getEmbeddedItemLayout();
+                    if (e_il.computeAnimations()) {
+                        invalidate();
                     }
-                } else {
-                    float dx = mMyRect.centerX() - mTempRectF.centerX();
-                    float dy = mMyRect.centerY() - mTempRectF.centerY();
-                    itemView.mDistanceToViewport = dx * dx + dy * dy;
                 }
                 continue;
             }
@@ -2387,6 +2594,7 @@ public class ItemLayout extends ViewGroup {
                 canvas.restore();
             }
         }
+        children.clear();
     }
 
     @Override
@@ -2508,9 +2716,12 @@ public class ItemLayout extends ViewGroup {
 
                 mGestureMode = GESTURE_MAYBE_DRAG;
 
-                final int count = getChildCount();
+                ArrayList<View> children = mTmpTouchedChildren;
+                mTempRectF.set(ex, ey, ex + 1, ey + 1);
+                getChildrenInRect(mTempRectF, children);
+                final int count = children.size();
                 for (int i = count - 1; i >= 0; i--) {
-                    View child = getChildAt(i);
+                    View child = children.get(i);
                     if (child.getVisibility() == View.VISIBLE) {
                         if (dispatchTransformedEventToMotionTarget(child, ev, false)) {
                             if (child.getParent() == null) {
@@ -2522,11 +2733,13 @@ public class ItemLayout extends ViewGroup {
                                 if (child instanceof ItemView) {
                                     mLastTouchedItemView = (ItemView) child;
                                 }
+                                children.clear();
                                 return true;
                             }
                         }
                     }
                 }
+                children.clear();
 
                 // no child did want to process the down, so start our long press action for ourself
                 mHasLongClicked = false;
@@ -3575,6 +3788,8 @@ public class ItemLayout extends ViewGroup {
             mCurrentX = x;
             mCurrentY = y;
             mCurrentScaleS = s;
+            mDelayedItemViewsSorted = false;
+            scheduleFarItemViewsUpdate();
             if (!mEditMode) {
                 // do not call onItemLayoutPositionChanged now, but in another loop so that new layout requests are not issued in the middle of a onMeasure/onLayout cycle
 //                removeCallbacks(mDelayedOnItemLayoutPositionChanged);
@@ -3995,7 +4210,8 @@ public class ItemLayout extends ViewGroup {
     @Override
     public void invalidate() {
         if (!mInvalidated) {
-            if (mDelayedItemViews != null) {
+            if (mDelayedItemViews != null && !(mFlinging && mDelayedItemViewLoadScheduled)) {
+                // while flinging keep the pending load, otherwise it would be postponed until the fling ends
                 cancelDelayedItemViewLoad();
                 loadNextItemViewLater();
             }
@@ -4009,7 +4225,7 @@ public class ItemLayout extends ViewGroup {
     @Override
     public void invalidate(int l, int t, int r, int b) {
         if (!mInvalidated) {
-            if (mDelayedItemViews != null) {
+            if (mDelayedItemViews != null && !(mFlinging && mDelayedItemViewLoadScheduled)) {
                 cancelDelayedItemViewLoad();
                 loadNextItemViewLater();
             }
@@ -4048,6 +4264,85 @@ public class ItemLayout extends ViewGroup {
         mScreen.onItemLayoutPageLoaded(this, mPage, mPage);
     }
 
+    /**
+     * Apply changes made by an incremental page reload: only views for added, removed and changed items
+     * are created or released, other views are kept and laid out again.
+     */
+    public void onPageModified(PageChangeSet changes) {
+        if (mAllowMergeViews) {
+            // views are not only those of the page items
+            onPageModified();
+            return;
+        }
+
+        for (Item item : changes.getRemovedItems()) {
+            if (mSelectedItem == item) {
+                setMasterSelectedItem(null);
+            }
+            removeViewForItem(item);
+        }
+
+        ArrayList<Item> changedItems = changes.getChangedItems();
+        ArrayList<Item> replacedItems = changes.getReplacedItems();
+        for (int i = changedItems.size() - 1; i >= 0; i--) {
+            replaceViewForItem(replacedItems.get(i), changedItems.get(i));
+        }
+
+        for (Item item : changes.getAddedItems()) {
+            setupItemView(item, mPage.items.indexOf(item), false, null);
+        }
+
+        if (changes.isReordered()) {
+            for (Item item : mPage.items) {
+                ItemView itemView = getItemView(item);
+                if (itemView != null) {
+                    bringChildToFront(itemView);
+                }
+            }
+            bringChildToFront(mHandleView);
+        }
+
+        if (changes.isPageConfigChanged()) {
+            onLocalTransformModified();
+            computeCurrentLocalTransformValues();
+            configureOverScroll();
+            configureWallpaperOffset();
+            configureScroll();
+            invalidate();
+        }
+
+        onItemViewChanged(null);
+        mScreen.onItemLayoutPageLoaded(this, mPage, mPage);
+    }
+
+    private void replaceViewForItem(Item oldItem, Item newItem) {
+        ItemView itemView = getItemView(oldItem);
+        if (itemView == null) {
+            setupItemView(newItem, mPage.items.indexOf(newItem), false, null);
+            return;
+        }
+
+        boolean selected = itemView.isSelected();
+        boolean hadHandle = mHandleItemView == itemView;
+        boolean wasLastTouchedItemView = mLastTouchedItemView == itemView;
+        boolean wasMasterSelected = mSelectedItem == oldItem;
+
+        net.pierrox.lightning_launcher.script.api.Item cachedItem = mPage.getEngine().getScriptExecutor().getLightning().getCachedItem(itemView);
+        removeViewForItem(oldItem);
+        ItemView newItemView = setupItemView(newItem, mPage.items.indexOf(newItem), false, cachedItem);
+
+        newItemView.setSelected(selected, false);
+        if (wasMasterSelected) {
+            setMasterSelectedItem(newItem);
+        }
+        if (hadHandle) {
+            showHandleViewForItemView(newItemView);
+        }
+        if (wasLastTouchedItemView) {
+            mLastTouchedItemView = newItemView;
+        }
+    }
+
     public void onPageItemAdded(Item item) {
         setupItemView(item, mPage.items.indexOf(item), false, null);
         onItemViewChanged(item);
@@ -4094,6 +4389,7 @@ public class ItemLayout extends ViewGroup {
             }
             itemView.destroy();
             mItemViews.remove(item.getId());
+            mScreen.onItemLayoutItemViewRemoved(this, itemView);
             removeView(itemView);
             itemView.setItemLayout(null);
         }
@@ -4187,6 +4483,13 @@ public class ItemLayout extends ViewGroup {
 
         void onItemLayoutMasterSelectedItemChanged(Item masterSelectedItem);
 
+        // called before item views for the new page are set up
+        void onItemLayoutPageChanged(ItemLayout itemLayout, Page oldPage, Page newPage);
+
+        void onItemLayoutItemViewAdded(ItemLayout itemLayout, ItemView itemView);
+
+        void onItemLayoutItemViewRemoved(ItemLayout itemLayout, ItemView itemView);
+
         void onItemLayoutPageLoaded(ItemLayout itemLayout, Page oldPage, Page newPage);
 
         void onItemLayoutAppShortcutDropped(ItemLayout itemLayout, Object shortcutInfo, float x, float y);
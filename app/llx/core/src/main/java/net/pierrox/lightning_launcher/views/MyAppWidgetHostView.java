@@ -2,9 +2,13 @@ package net.pierrox.lightning_launcher.views;
 
 import android.appwidget.AppWidgetHostView;
 import android.content.Context;
+import android.graphics.Rect;
 import android.view.View;
+import android.view.ViewParent;
 import android.widget.RemoteViews;
 
+import net.pierrox.lightning_launcher.views.item.WidgetView;
+
 import java.util.ArrayList;
 
 /**
@@ -45,6 +49,34 @@ public final class MyAppWidgetHostView extends AppWidgetHostView {
         for (View parent : mParents) {
             parent.invalidate();
         }
+        notifyParentsContentChanged();
+    }
+
+    @Override
+    public void onDescendantInvalidated(View child, View target) {
+        super.onDescendantInvalidated(child, target);
+        notifyParentsContentChanged();
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        // software rendering path
+        notifyParentsContentChanged();
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        notifyParentsContentChanged();
+    }
+
+    private void notifyParentsContentChanged() {
+        for (View parent : mParents) {
+            if (parent instanceof WidgetView) {
+                ((WidgetView) parent).notifyContentChanged();
+            }
+        }
     }
 
     public boolean isReparentAllowed(View parent) {
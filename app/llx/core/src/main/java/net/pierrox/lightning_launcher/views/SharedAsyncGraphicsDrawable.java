@@ -16,6 +16,7 @@ import android.util.Pair;
 
 import net.pierrox.android.lsvg.SvgDrawable;
 import net.pierrox.lightning_launcher.script.ScriptExecutor;
+import net.pierrox.lightning_launcher.script.ScriptProfiler;
 import net.pierrox.lightning_launcher.script.api.ImageScript;
 import net.pierrox.lightning_launcher.script.api.Item;
 import net.pierrox.lightning_launcher.util.AnimationDecoder;
@@ -23,8 +24,8 @@ import net.pierrox.lightning_launcher.util.AnimationDecoder;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 
 public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Callback {
@@ -58,6 +59,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
     private ScriptExecutor mScriptExecutor;
     private Scriptable mScriptObject;
     private ImageScript.DrawingContext mScriptDrawingContext;
+    private int mScriptItemId;
     private int mMaxWidthHint;
     private int mMaxHeightHint;
     private int mResumeCount;
@@ -95,6 +97,27 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         sCachedBitmapPool = new CachedBitmapPool(size);
     }
 
+    /**
+     * @return number of bitmap requests served by reusing a pooled bitmap of the same size
+     */
+    public static long getPoolHitCount() {
+        return sCachedBitmapPool.mHitCount;
+    }
+
+    /**
+     * @return number of bitmap requests which needed a new pool entry
+     */
+    public static long getPoolMissCount() {
+        return sCachedBitmapPool.mMissCount;
+    }
+
+    /**
+     * @return number of bitmaps freed to make room, their content being kept in native memory
+     */
+    public static long getPoolEvictionCount() {
+        return sCachedBitmapPool.mEvictionCount;
+    }
+
     public void registerListener(SharedAsyncGraphicsDrawableListener listener) {
         if (mListeners == null) {
             mListeners = new ArrayList<>(1);
@@ -142,7 +165,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
     private void pauseScript() {
         Object pause = mScriptObject.get("pause", mScriptObject);
         if (pause instanceof Function) {
-            mScriptExecutor.runFunction((Function) pause, new Object[]{mScriptDrawingContext}, false, true);
+            runScriptCallback("pause", (Function) pause);
         }
     }
 
@@ -160,7 +183,23 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
     private void resumeScript() {
         Object resume = mScriptObject.get("resume", mScriptObject);
         if (resume instanceof Function) {
-            mScriptExecutor.runFunction((Function) resume, new Object[]{mScriptDrawingContext}, false, true);
+            runScriptCallback("resume", (Function) resume);
+        }
+    }
+
+    private void runScriptCallback(String name, Function callback) {
+        // attribute the time spent in the script to this item
+        ScriptProfiler profiler = mScriptExecutor.getProfiler();
+        boolean profiling = profiler.isEnabled();
+        if (profiling) {
+            profiler.pushTrigger(name, mScriptItemId);
+        }
+        try {
+            mScriptExecutor.runFunction(callback, new Object[]{mScriptDrawingContext}, false, true);
+        } finally {
+            if (profiling) {
+                profiler.popTrigger();
+            }
         }
     }
 
@@ -231,7 +270,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
                 Object draw = mScriptObject.get("draw", mScriptObject);
                 if (draw instanceof Function) {
                     mScriptDrawingContext.setDrawingInfo(canvas, bounds.width(), bounds.height());
-                    mScriptExecutor.runFunction((Function) draw, new Object[]{mScriptDrawingContext}, false, true);
+                    runScriptCallback("draw", (Function) draw);
                     mScriptDrawingContext.setDrawingInfo(null, 0, 0);
                 }
                 break;
@@ -270,6 +309,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
     protected void finalize() throws Throwable {
         super.finalize();
 
+        releaseCachedBitmap();
         NativeImage.deleteImage(mId);
     }
 
@@ -294,6 +334,14 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         return mIntrinsicHeight;
     }
 
+    /**
+     * @return true if graphics come from a provider, and hence can be released and loaded again.
+     * Bitmaps set directly (by scripts for instance) cannot.
+     */
+    public boolean canReload() {
+        return mGraphicsProvider != null;
+    }
+
     public boolean needToLoadGraphics() {
         return mType == TYPE_NOT_YET_KNOWN && !mLoadingGraphics;
     }
@@ -451,6 +499,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         mScriptExecutor = scriptExecutor;
         mScriptObject = scriptObject;
         mScriptDrawingContext = new ImageScript.DrawingContext(this, item);
+        mScriptItemId = item == null ? net.pierrox.lightning_launcher.data.Item.NO_ID : item.getId();
         mIntrinsicWidth = width;
         mIntrinsicHeight = height;
         if (mResumeCount > 0) {
@@ -484,7 +533,9 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
                     }
                     NativeImage.nativeSetImage(mId, bitmap);
                 } else {
+                    CachedBitmap old_cached_bitmap = mCachedBitmap;
                     mCachedBitmap = sCachedBitmapPool.getCachedBitmap(mId, bitmap);
+                    CachedBitmapPool.release(old_cached_bitmap);
                 }
             } else {
                 mCachedBitmap = sCachedBitmapPool.getCachedBitmap(mId, bitmap);
@@ -533,7 +584,7 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
 
     public void reset() {
         mType = TYPE_NOT_YET_KNOWN;
-        mCachedBitmap = null;
+        releaseCachedBitmap();
         mNinePatchDrawable = null;
         mAnimationDecoder = null;
         mGifBitmap = null;
@@ -634,7 +685,9 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         Bitmap bitmap = mCachedBitmap.bitmap;
         if (bitmap == null) {
             // bitmap has been freed, reload it
+            CachedBitmap old_cached_bitmap = mCachedBitmap;
             mCachedBitmap = sCachedBitmapPool.getCachedBitmap(mId, null);
+            CachedBitmapPool.release(old_cached_bitmap);
         } else {
             if (mCachedBitmap.id != mId) {
                 // bitmap allocated but not the same picture
@@ -648,6 +701,14 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         }
     }
 
+    private void releaseCachedBitmap() {
+        CachedBitmap cached_bitmap = mCachedBitmap;
+        mCachedBitmap = null;
+        if (cached_bitmap != null) {
+            CachedBitmapPool.release(cached_bitmap);
+        }
+    }
+
     // a child drawable has been invalidated
     @Override
     public void invalidateDrawable(Drawable drawable) {
@@ -681,98 +742,100 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
         public int id;
         public boolean shared;
 
+        // pool bookkeeping
+        private CachedBitmapPool pool;
+        private int refCount;
+        private long key;
+        private long size;
+        private CachedBitmap lruPrev, lruNext;
+        private CachedBitmap bucketPrev, bucketNext;
+
         public CachedBitmap(Bitmap bitmap) {
             this.bitmap = bitmap;
         }
     }
 
-    private static class CachedBitmapRef extends WeakReference<CachedBitmap> {
-        public long size;
-
-        public CachedBitmapRef(CachedBitmap r, long size) {
-            super(r);
-            this.size = size;
-        }
+    // bitmaps of the same size and config, least recently used first
+    private static class Bucket {
+        private CachedBitmap head, tail;
     }
 
+    /**
+     * Bitmaps are shared between drawables: when the pool is full, a drawable borrows a bitmap of
+     * the same size from another one, whose picture is saved in native memory and restored later
+     * (see ensureBitmapReadyToDraw). Entries are reference counted by drawables, and dropped from
+     * the pool when no drawable uses them anymore.
+     * All operations are O(1): entries are linked in a global LRU list and in a LRU list per size.
+     */
     private static class CachedBitmapPool {
 
         private final long mMaxSize;
-        private LinkedList<CachedBitmapRef> mCachedBitmaps;
+        private final HashMap<Long, Bucket> mBuckets;
+        private CachedBitmap mLruHead, mLruTail;
+        private int mCount;
         private long mCurrentSize;
 
+        private long mHitCount;
+        private long mMissCount;
+        private long mEvictionCount;
+
         public CachedBitmapPool(long max_size) {
             mMaxSize = max_size;
             mCurrentSize = 0;
-            if (max_size != 0) {
-                mCachedBitmaps = new LinkedList<>();
+            mBuckets = max_size == 0 ? null : new HashMap<Long, Bucket>();
+        }
+
+        public static void release(CachedBitmap cached_bitmap) {
+            CachedBitmapPool pool = cached_bitmap.pool;
+            if (pool == null) {
+                cached_bitmap.refCount--;
+            } else {
+                synchronized (pool) {
+                    cached_bitmap.refCount--;
+                    if (cached_bitmap.refCount <= 0 && cached_bitmap.pool == pool) {
+                        // nobody uses it anymore: forget it but do not recycle, the bitmap may have been given away through getBitmap
+                        pool.remove(cached_bitmap);
+                    }
+                }
             }
         }
 
-        public CachedBitmap getCachedBitmap(int id, Bitmap from) {
+        public synchronized CachedBitmap getCachedBitmap(int id, Bitmap from) {
             if (mMaxSize == 0) {
                 CachedBitmap cachedBitmap = new CachedBitmap(from);
                 cachedBitmap.id = id;
                 return cachedBitmap;
             }
-            CachedBitmapRef cached_bitmap_ref;
             CachedBitmap cached_bitmap;
             int width, height;
+            Bitmap.Config config;
             if (from == null) {
                 width = NativeImage.nativeGetImageWidth(id);
                 height = NativeImage.nativeGetImageHeight(id);
+                config = Bitmap.Config.ARGB_8888;
             } else {
                 width = from.getWidth();
                 height = from.getHeight();
+                config = from.getConfig();
             }
             long size = getBitmapSize(width, height);
-
-            // clear cached bitmaps that have been garbage collected
-            for (int l = mCachedBitmaps.size() - 1; l >= 0; l--) {
-                CachedBitmapRef ref = mCachedBitmaps.get(l);
-                CachedBitmap cb = ref.get();
-                if (cb == null) {
-                    mCurrentSize -= ref.size;
-                    mCachedBitmaps.remove(l);
-                }
-            }
+            long key = getKey(width, height, config);
 
             if (from != null && (mCurrentSize + size) <= mMaxSize) {
                 // pool is not full, create a new entry
+                mMissCount++;
                 cached_bitmap = new CachedBitmap(from);
-                mCachedBitmaps.add(new CachedBitmapRef(cached_bitmap, size));
-                mCurrentSize += size;
+                add(cached_bitmap, key, size);
             } else {
-                // the pool is full
-
-                cached_bitmap_ref = null;
-                cached_bitmap = null;
-
-                // look for a matching bitmap in size
-                for (CachedBitmapRef ref : mCachedBitmaps) {
-                    CachedBitmap cb = ref.get();
-                    final Bitmap bitmap = cb.bitmap;
-                    if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
-                        cached_bitmap_ref = ref;
-                        cached_bitmap = cb;
-                        break;
-                    }
-                }
+                // the pool is full, look for the least recently used bitmap with a matching size
+                Bucket bucket = mBuckets.get(key);
+                cached_bitmap = bucket == null ? null : bucket.head;
 
                 if (cached_bitmap == null) {
                     // no matching bitmap found, need to free old bitmaps to make room for a new one
-                    while ((mCurrentSize + size) >= mMaxSize && mCachedBitmaps.size() > 1) {
-                        CachedBitmapRef ref = mCachedBitmaps.removeFirst();
-                        CachedBitmap cb = ref.get();
-                        int removed_id = cb.id;
-                        Bitmap bitmap = cb.bitmap;
-                        // store the bitmap data in native memory before to free the bitmap in java memory
-                        if (!NativeImage.hasImage(removed_id)) {
-                            NativeImage.nativeSetImage(removed_id, bitmap);
-                        }
-                        mCurrentSize -= ref.size;
-                        bitmap.recycle();
-                        cb.bitmap = null;
+                    mMissCount++;
+                    while ((mCurrentSize + size) >= mMaxSize && mCount > 1) {
+                        evict(mLruHead);
                     }
                     if (from == null) {
                         // allocate a new bitmap and recover its data from native memory using its id
@@ -783,10 +846,10 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
                         // add the provided bitmap in the cache
                         cached_bitmap = new CachedBitmap(from);
                     }
-                    mCachedBitmaps.add(new CachedBitmapRef(cached_bitmap, size));
-                    mCurrentSize += size;
+                    add(cached_bitmap, key, size);
                 } else {
                     // matching bitmap found, save it to native if needed
+                    mHitCount++;
                     Bitmap bitmap = cached_bitmap.bitmap;
                     if (bitmap != from) {
                         cached_bitmap.shared = true;
@@ -804,16 +867,88 @@ public class SharedAsyncGraphicsDrawable extends Drawable implements Drawable.Ca
                     }
 
                     // move it to front
-                    mCachedBitmaps.remove(cached_bitmap_ref);
-                    mCachedBitmaps.add(cached_bitmap_ref);
+                    touch(cached_bitmap);
                 }
             }
 
             cached_bitmap.id = id;
+            cached_bitmap.refCount++;
 
             return cached_bitmap;
         }
 
+        private void evict(CachedBitmap cb) {
+            int removed_id = cb.id;
+            Bitmap bitmap = cb.bitmap;
+            // store the bitmap data in native memory before to free the bitmap in java memory
+            if (!NativeImage.hasImage(removed_id)) {
+                NativeImage.nativeSetImage(removed_id, bitmap);
+            }
+            remove(cb);
+            bitmap.recycle();
+            cb.bitmap = null;
+            mEvictionCount++;
+        }
+
+        private void add(CachedBitmap cb, long key, long size) {
+            cb.pool = this;
+            cb.key = key;
+            cb.size = size;
+
+            cb.lruPrev = mLruTail;
+            cb.lruNext = null;
+            if (mLruTail == null) mLruHead = cb;
+            else mLruTail.lruNext = cb;
+            mLruTail = cb;
+
+            Bucket bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket();
+                mBuckets.put(key, bucket);
+            }
+            cb.bucketPrev = bucket.tail;
+            cb.bucketNext = null;
+            if (bucket.tail == null) bucket.head = cb;
+            else bucket.tail.bucketNext = cb;
+            bucket.tail = cb;
+
+            mCount++;
+            mCurrentSize += size;
+        }
+
+        private void remove(CachedBitmap cb) {
+            if (cb.lruPrev == null) mLruHead = cb.lruNext;
+            else cb.lruPrev.lruNext = cb.lruNext;
+            if (cb.lruNext == null) mLruTail = cb.lruPrev;
+            else cb.lruNext.lruPrev = cb.lruPrev;
+            cb.lruPrev = cb.lruNext = null;
+
+            Bucket bucket = mBuckets.get(cb.key);
+            if (cb.bucketPrev == null) bucket.head = cb.bucketNext;
+            else cb.bucketPrev.bucketNext = cb.bucketNext;
+            if (cb.bucketNext == null) bucket.tail = cb.bucketPrev;
+            else cb.bucketNext.bucketPrev = cb.bucketPrev;
+            cb.bucketPrev = cb.bucketNext = null;
+            if (bucket.head == null) {
+                mBuckets.remove(cb.key);
+            }
+
+            cb.pool = null;
+            mCount--;
+            mCurrentSize -= cb.size;
+        }
+
+        private void touch(CachedBitmap cb) {
+            long key = cb.key;
+            long size = cb.size;
+            remove(cb);
+            add(cb, key, size);
+        }
+
+        private static long getKey(int width, int height, Bitmap.Config config) {
+            return ((long) width << 36) | ((long) (height & 0xfffffff) << 8) | (config == null ? 0xff : config.ordinal());
+        }
+
         private long getBitmapSize(int width, int height) {
             return (long) width * height * 4;
         }
@@ -0,0 +1,232 @@
+package net.pierrox.lightning_launcher.views;
+
+import android.graphics.Rect;
+import android.util.LongSparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Uniform grid over the bounds of the children of a view group, in the coordinates of the group.
+ * Children are added without bounds, meaning that they can be anywhere: this is the case until
+ * their bounds are known, and for children which are not drawn at their layout position (pinned
+ * items for instance). Children without bounds are returned by all queries.
+ * Queries return children in drawing order, so that the cost of a query is proportional to the
+ * number of matching children rather than to the number of children.
+ * This class must be used from the UI thread.
+ */
+/*package*/ class SpatialIndex {
+    // 512 pixels
+    private static final int CELL_SIZE_SHIFT = 9;
+    // children covering more cells are not stored in cells, but tested by each query
+    private static final int MAX_CELLS_PER_ENTRY = 16;
+
+    private static final Comparator<Entry> sDrawingOrder = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return Integer.compare(e1.zOrder, e2.zOrder);
+        }
+    };
+
+    private final ViewGroup mParent;
+    private final HashMap<View, Entry> mEntries = new HashMap<>();
+    private final ArrayList<Entry> mAllEntries = new ArrayList<>();
+    private final LongSparseArray<ArrayList<Entry>> mCells = new LongSparseArray<>();
+    // entries without bounds or too large to be stored in cells
+    private final ArrayList<Entry> mOtherEntries = new ArrayList<>();
+    private final ArrayList<Entry> mTmpEntries = new ArrayList<>();
+    private boolean mZOrderValid;
+    private int mQueryStamp;
+
+    /*package*/ SpatialIndex(ViewGroup parent) {
+        mParent = parent;
+    }
+
+    public void add(View view) {
+        if (mEntries.containsKey(view)) {
+            return;
+        }
+        Entry e = new Entry(view);
+        mEntries.put(view, e);
+        mAllEntries.add(e);
+        mOtherEntries.add(e);
+        mZOrderValid = false;
+    }
+
+    public void remove(View view) {
+        Entry e = mEntries.remove(view);
+        if (e == null) {
+            return;
+        }
+        unlink(e);
+        mAllEntries.remove(e);
+        mZOrderValid = false;
+    }
+
+    /**
+     * Record the position of a child, it will only be returned by queries intersecting these bounds.
+     */
+    public void setBounds(View view, int left, int top, int right, int bottom) {
+        Entry e = mEntries.get(view);
+        if (e == null) {
+            return;
+        }
+        if (e.bounded && e.bounds.left == left && e.bounds.top == top && e.bounds.right == right && e.bounds.bottom == bottom) {
+            return;
+        }
+
+        unlink(e);
+        e.bounded = true;
+        e.bounds.set(left, top, right, bottom);
+        e.cl = left >> CELL_SIZE_SHIFT;
+        e.ct = top >> CELL_SIZE_SHIFT;
+        e.cr = (right - 1) >> CELL_SIZE_SHIFT;
+        e.cb = (bottom - 1) >> CELL_SIZE_SHIFT;
+        long cells = (long) (e.cr - e.cl + 1) * (e.cb - e.ct + 1);
+        e.inCells = e.cr >= e.cl && e.cb >= e.ct && cells <= MAX_CELLS_PER_ENTRY;
+        if (e.inCells) {
+            for (int cy = e.ct; cy <= e.cb; cy++) {
+                for (int cx = e.cl; cx <= e.cr; cx++) {
+                    long key = key(cx, cy);
+                    ArrayList<Entry> cell = mCells.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<>();
+                        mCells.put(key, cell);
+                    }
+                    cell.add(e);
+                }
+            }
+        } else {
+            mOtherEntries.add(e);
+        }
+    }
+
+    /**
+     * Forget the position of a child, it will be returned by all queries.
+     */
+    public void setUnbounded(View view) {
+        Entry e = mEntries.get(view);
+        if (e == null || !e.bounded) {
+            return;
+        }
+        unlink(e);
+        e.bounded = false;
+        mOtherEntries.add(e);
+    }
+
+    /**
+     * Must be called when children are reordered without being added or removed.
+     */
+    public void invalidateZOrder() {
+        mZOrderValid = false;
+    }
+
+    /**
+     * Retrieve children possibly intersecting a rect, in drawing order.
+     *
+     * @param out cleared then filled with matching children
+     */
+    public void query(float left, float top, float right, float bottom, ArrayList<View> out) {
+        out.clear();
+        if (!mZOrderValid) {
+            for (int n = mParent.getChildCount() - 1; n >= 0; n--) {
+                Entry e = mEntries.get(mParent.getChildAt(n));
+                if (e != null) {
+                    e.zOrder = n;
+                }
+            }
+            mZOrderValid = true;
+        }
+
+        int stamp = ++mQueryStamp;
+        ArrayList<Entry> result = mTmpEntries;
+        result.clear();
+
+        int cl = (int) Math.floor(left) >> CELL_SIZE_SHIFT;
+        int ct = (int) Math.floor(top) >> CELL_SIZE_SHIFT;
+        int cr = (int) Math.ceil(right) >> CELL_SIZE_SHIFT;
+        int cb = (int) Math.ceil(bottom) >> CELL_SIZE_SHIFT;
+        long cells = (long) (cr - cl + 1) * (cb - ct + 1);
+        if (cells > mCells.size()) {
+            // zoomed out: cheaper to test all entries than to look up empty cells
+            for (int i = mAllEntries.size() - 1; i >= 0; i--) {
+                collect(mAllEntries.get(i), stamp, left, top, right, bottom, result);
+            }
+        } else {
+            for (int cy = ct; cy <= cb; cy++) {
+                for (int cx = cl; cx <= cr; cx++) {
+                    ArrayList<Entry> cell = mCells.get(key(cx, cy));
+                    if (cell != null) {
+                        for (int i = cell.size() - 1; i >= 0; i--) {
+                            collect(cell.get(i), stamp, left, top, right, bottom, result);
+                        }
+                    }
+                }
+            }
+            for (int i = mOtherEntries.size() - 1; i >= 0; i--) {
+                collect(mOtherEntries.get(i), stamp, left, top, right, bottom, result);
+            }
+        }
+
+        Collections.sort(result, sDrawingOrder);
+        int l = result.size();
+        for (int i = 0; i < l; i++) {
+            out.add(result.get(i).view);
+        }
+        result.clear();
+    }
+
+    private static void collect(Entry e, int stamp, float left, float top, float right, float bottom, ArrayList<Entry> result) {
+        if (e.queryStamp == stamp) {
+            return;
+        }
+        e.queryStamp = stamp;
+        Rect b = e.bounds;
+        if (!e.bounded || (b.left < right && left < b.right && b.top < bottom && top < b.bottom)) {
+            result.add(e);
+        }
+    }
+
+    private void unlink(Entry e) {
+        if (e.bounded && e.inCells) {
+            for (int cy = e.ct; cy <= e.cb; cy++) {
+                for (int cx = e.cl; cx <= e.cr; cx++) {
+                    long key = key(cx, cy);
+                    ArrayList<Entry> cell = mCells.get(key);
+                    if (cell != null) {
+                        cell.remove(e);
+                        if (cell.isEmpty()) {
+                            mCells.remove(key);
+                        }
+                    }
+                }
+            }
+        } else {
+            mOtherEntries.remove(e);
+        }
+        e.inCells = false;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static class Entry {
+        private final View view;
+        private final Rect bounds = new Rect();
+        private boolean bounded;
+        private boolean inCells;
+        // covered cells, inclusive
+        private int cl, ct, cr, cb;
+        private int zOrder;
+        private int queryStamp;
+
+        private Entry(View view) {
+            this.view = view;
+        }
+    }
+}
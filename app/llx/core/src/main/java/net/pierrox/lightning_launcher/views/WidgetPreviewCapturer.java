@@ -0,0 +1,139 @@
+package net.pierrox.lightning_launcher.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.pierrox.lightning_launcher.data.FileUtils;
+import net.pierrox.lightning_launcher.engine.PersistenceExecutor;
+import net.pierrox.lightning_launcher.views.item.WidgetView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Capture widget previews, displayed in place of widgets which cannot be bound anymore.
+ * A preview is only captured when the hosted widget view has been redrawn since the last capture.
+ * Drawing happens on the calling thread (which must own the view), encoding is done by the
+ * persistence executor using bitmaps recycled from a small pool. The preview is only marked as
+ * captured once the file has been written.
+ */
+public class WidgetPreviewCapturer {
+    private static final int MAX_POOLED_BITMAPS = 3;
+
+    private static final ArrayList<Bitmap> sPool = new ArrayList<>(MAX_POOLED_BITMAPS);
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @return true if a new preview has been scheduled for writing
+     */
+    public static boolean capture(final WidgetView v, final int width, final int height, final File to, PersistenceExecutor executor, boolean webp) {
+        if (width <= 0 || height <= 0 || !v.isPreviewOutdated(width, height)) {
+            return false;
+        }
+
+        final int generation = v.getContentGeneration();
+        final Bitmap b = acquireBitmap(width, height);
+        Canvas canvas = new Canvas(b);
+        v.draw(canvas);
+
+        final Bitmap.CompressFormat format = webp ? getWebpFormat() : Bitmap.CompressFormat.PNG;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File tmp = FileUtils.getTempFile(to);
+                FileOutputStream fos = null;
+                boolean written = false;
+                try {
+                    fos = new FileOutputStream(tmp);
+                    if (b.compress(format, 100, fos)) {
+                        FileUtils.commitTempFile(fos, tmp, to);
+                        fos = null;
+                        written = true;
+                    }
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    if (fos != null) try {
+                        fos.close();
+                    } catch (IOException e) {
+                    }
+                    if (!written) {
+                        tmp.delete();
+                    }
+                    releaseBitmap(b);
+                }
+
+                if (written) {
+                    // the view is owned by the UI thread
+                    sMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            v.onPreviewCaptured(generation, width, height);
+                        }
+                    });
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getWebpFormat() {
+        // WEBP is lossless with quality 100 on older versions
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static Bitmap acquireBitmap(int width, int height) {
+        int needed = width * height * 4;
+        synchronized (sPool) {
+            // pick the smallest pooled bitmap large enough
+            int best = -1;
+            int best_size = Integer.MAX_VALUE;
+            for (int i = sPool.size() - 1; i >= 0; i--) {
+                int size = sPool.get(i).getAllocationByteCount();
+                if (size >= needed && size < best_size) {
+                    best = i;
+                    best_size = size;
+                }
+            }
+            if (best != -1) {
+                Bitmap b = sPool.remove(best);
+                b.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                b.eraseColor(0);
+                return b;
+            }
+        }
+
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private static void releaseBitmap(Bitmap b) {
+        synchronized (sPool) {
+            if (sPool.size() < MAX_POOLED_BITMAPS) {
+                sPool.add(b);
+                return;
+            }
+
+            // keep the largest bitmaps, they can be reused for any smaller size
+            int smallest = 0;
+            for (int i = 1; i < sPool.size(); i++) {
+                if (sPool.get(i).getAllocationByteCount() < sPool.get(smallest).getAllocationByteCount()) {
+                    smallest = i;
+                }
+            }
+            if (sPool.get(smallest).getAllocationByteCount() < b.getAllocationByteCount()) {
+                sPool.set(smallest, b).recycle();
+            } else {
+                b.recycle();
+            }
+        }
+    }
+}
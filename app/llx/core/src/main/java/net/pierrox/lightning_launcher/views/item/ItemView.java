@@ -236,6 +236,8 @@ public abstract class ItemView extends TransformLayout implements TouchEventInte
         if (alwaysPinnedAndVisible != mAlwaysPinnedAndVisible) {
             mAlwaysPinnedAndVisible = alwaysPinnedAndVisible;
             updateViewVisibility();
+            // the parent item layout indexes item views according to their pinning when laying them out
+            requestLayout();
         }
     }
 
@@ -26,6 +26,9 @@ public class ShortcutView extends ItemView {
     private final Shortcut mShortcut;
     protected IconLabelView mIconLabelView;
     private Bitmap mHighlightBitmap;
+    // highlighted part of the label, start is -1 when not highlighted
+    private int mHighlightStart = -1;
+    private int mHighlightLength;
 
     public ShortcutView(Context context, Item item, int std_icon_width, int std_icon_height) {
         super(context, item);
@@ -40,6 +43,7 @@ public class ShortcutView extends ItemView {
         ItemConfig ic = mItem.getItemConfig();
         ShortcutConfig sc = mShortcut.getShortcutConfig();
         mIconLabelView = new IconLabelView(getContext(), mShortcut.getLabel(), mStdIconWidth, mStdIconHeight, mShortcut.getSharedAsyncGraphicsDrawable(), ic, sc);
+        mHighlightStart = -1;
         setView(mIconLabelView);
 
         if (mResumed) {
@@ -95,6 +99,7 @@ public class ShortcutView extends ItemView {
             TextView tv = mIconLabelView.getTextView();
             if (tv != null) {
                 tv.setText(mShortcut.getLabel());
+                mHighlightStart = -1;
             }
         }
     }
@@ -167,21 +172,41 @@ public class ShortcutView extends ItemView {
     }
 
     public void highlightText(String text) {
+        if (text == null) {
+            highlightText(-1, 0);
+        } else {
+            highlightText(mShortcut.getLabel().toLowerCase().indexOf(text), text.length());
+        }
+    }
+
+    /**
+     * Highlight a part of the label, or remove the highlight if start is -1.
+     * The label text is only updated when the highlighted part changes.
+     */
+    public void highlightText(int start, int length) {
         if (!isInitDone()) {
             return;
         }
         TextView tv = mIconLabelView.getTextView();
         if (tv != null) {
             String label = mShortcut.getLabel();
-            if (text == null) {
+            if (start < 0 || start + length > label.length()) {
+                start = -1;
+                length = 0;
+            }
+            if (start == mHighlightStart && length == mHighlightLength) {
+                return;
+            }
+            if (start == -1) {
                 tv.setText(label);
             } else {
                 Spannable t = new SpannableStringBuilder(label);
                 BackgroundColorSpan hl_color = new BackgroundColorSpan(0x80808080);
-                int start = label.toLowerCase().indexOf(text);
-                t.setSpan(hl_color, start, start + text.length(), 0);
+                t.setSpan(hl_color, start, start + length, 0);
                 tv.setText(t);
             }
+            mHighlightStart = start;
+            mHighlightLength = length;
         }
     }
 
@@ -31,6 +31,12 @@ public class WidgetView extends ItemView {
     private View mWidgetView;
     private boolean mIsGood;
 
+    // used to capture the widget preview only when its content changed
+    private int mContentGeneration = 1;
+    private int mCapturedGeneration;
+    private int mCapturedWidth;
+    private int mCapturedHeight;
+
 
     public WidgetView(Context context, Widget widget) {
         super(context, widget);
@@ -121,6 +127,30 @@ public class WidgetView extends ItemView {
         return mIsGood;
     }
 
+    /**
+     * Called by the hosted widget view whenever it has been updated or redrawn.
+     */
+    public void notifyContentChanged() {
+        mContentGeneration++;
+    }
+
+    public boolean isPreviewOutdated(int width, int height) {
+        return mCapturedGeneration != mContentGeneration || mCapturedWidth != width || mCapturedHeight != height;
+    }
+
+    public int getContentGeneration() {
+        return mContentGeneration;
+    }
+
+    /**
+     * @param generation content generation at the time the preview has been drawn
+     */
+    public void onPreviewCaptured(int generation, int width, int height) {
+        mCapturedGeneration = generation;
+        mCapturedWidth = width;
+        mCapturedHeight = height;
+    }
+
 
     @Override
     public boolean dispatchTouchEvent(MotionEvent ev) {
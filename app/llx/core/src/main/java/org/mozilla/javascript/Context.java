@@ -20,6 +20,7 @@ import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
@@ -1489,6 +1490,18 @@ public class Context {
         return ScriptRuntime.doTopCall(function, this, scope, scope, args);
     }
 
+    /**
+     * Return true if the script or function has been compiled in interpreted mode
+     * (optimization level -1), and hence can be used with continuations.
+     *
+     * @param scriptOrFunction a {@link Script} or a {@link Callable}
+     * @see #executeScriptWithContinuations(Script, Scriptable)
+     * @see #callFunctionWithContinuations(Callable, Scriptable, Object[])
+     */
+    public static boolean isInterpreted(Object scriptOrFunction) {
+        return scriptOrFunction instanceof InterpretedFunction;
+    }
+
     /**
      * Capture a continuation from the current execution. The execution must
      * have been started via a call to
@@ -1693,6 +1706,76 @@ public class Context {
         }
     }
 
+    /**
+     * Compile a JavaScript script or function to interpreter bytecode.
+     * <p>
+     * Unlike {@link #compileString} and {@link #compileFunction}, the
+     * bytecode is always produced for the interpreter, whatever the
+     * optimization level, and no script or function object is created. The
+     * returned object is serializable: it can be stored and turned into a
+     * script or a function later, possibly in another process, with
+     * {@link #createInterpretedScript(Object)} or
+     * {@link #createInterpretedFunction(Scriptable, Object)}. Serialized
+     * bytecode is only valid for the same implementation version.
+     *
+     * @param source         the script source, or a single function definition
+     *                       if returnFunction is true
+     * @param sourceName     a string describing the source, such as a filename
+     * @param lineno         the starting line number
+     * @param returnFunction whether the source is a function definition
+     * @return the interpreter bytecode
+     */
+    public final Serializable compileToInterpreterBytecode(String source,
+                                                           String sourceName, int lineno,
+                                                           boolean returnFunction) {
+        if (lineno < 0) {
+            lineno = 0;
+        }
+        try {
+            return (Serializable) compileToBytecode(null, source, sourceName,
+                    lineno, returnFunction, createInterpreter(), null);
+        } catch (IOException ex) {
+            // Should not happen when dealing with source as string
+            throw new RuntimeException();
+        }
+    }
+
+    /**
+     * Create a script from bytecode returned by
+     * {@link #compileToInterpreterBytecode(String, String, int, boolean)}.
+     *
+     * @param bytecode interpreter bytecode of a script
+     * @return a script that may later be executed
+     */
+    public final Script createInterpretedScript(Object bytecode) {
+        InterpreterData idata = toInterpreterData(bytecode, false);
+        return InterpretedFunction.createScript(idata, null);
+    }
+
+    /**
+     * Create a function from bytecode returned by
+     * {@link #compileToInterpreterBytecode(String, String, int, boolean)}.
+     *
+     * @param scope    the scope of the function
+     * @param bytecode interpreter bytecode of a function
+     * @return a Function that may later be called
+     */
+    public final Function createInterpretedFunction(Scriptable scope, Object bytecode) {
+        InterpreterData idata = toInterpreterData(bytecode, true);
+        return InterpretedFunction.createFunction(this, scope, idata, null);
+    }
+
+    private static InterpreterData toInterpreterData(Object bytecode, boolean function) {
+        if (!(bytecode instanceof InterpreterData)) {
+            throw new IllegalArgumentException("not interpreter bytecode");
+        }
+        InterpreterData idata = (InterpreterData) bytecode;
+        if (idata.isFunction() != function) {
+            throw new IllegalArgumentException(function ? "not a function" : "not a script");
+        }
+        return idata;
+    }
+
     /**
      * Decompile the script.
      * <p>
@@ -2327,25 +2410,18 @@ public class Context {
         applicationClassLoader = loader;
     }
 
-    private Object compileImpl(Scriptable scope,
-                               Reader sourceReader, String sourceString,
-                               String sourceName, int lineno,
-                               Object securityDomain, boolean returnFunction,
-                               Evaluator compiler,
-                               ErrorReporter compilationErrorReporter)
+    private Object compileToBytecode(Reader sourceReader, String sourceString,
+                                     String sourceName, int lineno,
+                                     boolean returnFunction,
+                                     Evaluator compiler,
+                                     ErrorReporter compilationErrorReporter)
             throws IOException {
         if (sourceName == null) {
             sourceName = "unnamed script";
         }
-        if (securityDomain != null && getSecurityController() == null) {
-            throw new IllegalArgumentException(
-                    "securityDomain should be null if setSecurityController() was never called");
-        }
 
         // One of sourceReader or sourceString has to be null
         if ((sourceReader == null) == (sourceString == null)) Kit.codeBug();
-        // scope should be given if and only if compiling function
-        if ((scope == null) == returnFunction) Kit.codeBug();
 
         CompilerEnvirons compilerEnv = new CompilerEnvirons();
         compilerEnv.initFromContext(this);
@@ -2390,10 +2466,6 @@ public class Context {
         ast = null;
         irf = null;
 
-        if (compiler == null) {
-            compiler = createCompiler();
-        }
-
         Object bytecode = compiler.compile(compilerEnv,
                 tree, tree.getEncodedSource(),
                 returnFunction);
@@ -2407,6 +2479,32 @@ public class Context {
             }
         }
 
+        return bytecode;
+    }
+
+    private Object compileImpl(Scriptable scope,
+                               Reader sourceReader, String sourceString,
+                               String sourceName, int lineno,
+                               Object securityDomain, boolean returnFunction,
+                               Evaluator compiler,
+                               ErrorReporter compilationErrorReporter)
+            throws IOException {
+        if (securityDomain != null && getSecurityController() == null) {
+            throw new IllegalArgumentException(
+                    "securityDomain should be null if setSecurityController() was never called");
+        }
+
+        // scope should be given if and only if compiling function
+        if ((scope == null) == returnFunction) Kit.codeBug();
+
+        if (compiler == null) {
+            compiler = createCompiler();
+        }
+
+        Object bytecode = compileToBytecode(sourceReader, sourceString,
+                sourceName, lineno, returnFunction,
+                compiler, compilationErrorReporter);
+
         Object result;
         if (returnFunction) {
             result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
@@ -8,6 +8,9 @@ import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.Undefined;
 
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +34,18 @@ public class JreNativeRegExp extends IdScriptableObject implements Function {
             Id_test = 6,
 
     MAX_PROTOTYPE_ID = 6;
+
+    // Translated and compiled patterns, keyed by flags and source, least recently used first.
+    // RE objects are immutable once compiled, they are shared between regexps and threads.
+    private static final int RE_CACHE_SIZE = 128;
+    private static final LinkedHashMap<String, RE> RE_CACHE =
+            new LinkedHashMap<String, RE>(RE_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RE> eldest) {
+                    return size() > RE_CACHE_SIZE;
+                }
+            };
+
     RE re = new RE();
     double lastIndex;          /* index after last match, for //g iterator */
 
@@ -53,6 +68,30 @@ public class JreNativeRegExp extends IdScriptableObject implements Function {
         if (flags == null) {
             flags = "";
         }
+
+        for (int i = 0; i < flags.length(); i++) {
+            char c = flags.charAt(i);
+            if (c != 'g' && c != 'i' && c != 'm') {
+                reportError("msg.invalid.re.flag", String.valueOf(c));
+            }
+        }
+
+        // valid flags never contain '/', keys are unambiguous
+        String key = flags + '/' + regexp;
+        RE re;
+        synchronized (RE_CACHE) {
+            re = RE_CACHE.get(key);
+        }
+        if (re == null) {
+            re = translateRE(regexp, flags);
+            synchronized (RE_CACHE) {
+                RE_CACHE.put(key, re);
+            }
+        }
+        return re;
+    }
+
+    private static RE translateRE(String regexp, String flags) {
         RE re = new RE();
         re.source = regexp;
         re.flags = flags;
@@ -65,8 +104,6 @@ public class JreNativeRegExp extends IdScriptableObject implements Function {
                 iflags |= Pattern.CASE_INSENSITIVE;
             } else if (c == 'm') {
                 iflags |= Pattern.MULTILINE;
-            } else {
-                reportError("msg.invalid.re.flag", String.valueOf(c));
             }
         }
 
@@ -522,7 +559,10 @@ public class JreNativeRegExp extends IdScriptableObject implements Function {
     }
 }       // class JdkNativeRegExp
 
-class RE {
+// serializable because compiled regexp literals are part of the interpreter bytecode
+class RE implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     String source;
     String flags;
     Pattern pattern;
@@ -1,6 +1,7 @@
 package org.mozilla.javascript.regexp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,30 +37,37 @@ public class JreRegExpImpl implements RegExpProxy {
             Object[] args, int actionType) {
 
         String thisStr = ScriptRuntime.toString(thisObj);
-        JreNativeRegExp re;
+        RE re;
         Matcher m;
         switch (actionType) {
         case RA_MATCH:
             // str.match(regexp)
             // if not global flag, then RegExp.exec, else array with all matches
-            re = args2regexp(cx, scope, args, 0, -1, false);
-            if (!re.re.globalFlag) {
-                return JreNativeRegExp.js_exec(cx, scope, re, thisStr);
+            re = args2RE(cx, args, 0, -1, false);
+            if (!re.globalFlag) {
+                return JreNativeRegExp.js_exec(cx, scope, wrapRE(scope, args, 0, re), thisStr);
             }
 
-            // array with all matches
-            m = re.re.pattern.matcher(thisStr);
-            List<String> matchResult = new ArrayList<String>();
-            while (m.find()) {
-                matchResult.add(m.group());
+            // array with all matches, built without intermediate list
+            m = re.pattern.matcher(thisStr);
+            if (!m.find()) {
+                return null;
             }
-            return matchResult.size() > 0
-                ? cx.newArray(scope, matchResult.toArray()) : null;
+            Object[] matchResult = new Object[8];
+            int matchCount = 0;
+            do {
+                if (matchCount == matchResult.length) {
+                    matchResult = Arrays.copyOf(matchResult, matchCount * 2);
+                }
+                matchResult[matchCount++] = m.group();
+            } while (m.find());
+            return cx.newArray(scope, matchCount == matchResult.length
+                ? matchResult : Arrays.copyOf(matchResult, matchCount));
 
         case RA_SEARCH:
             // pos = search(regexp);
-            re = args2regexp(cx, scope, args, 0, -1, false);
-            m = re.re.pattern.matcher(thisStr);
+            re = args2RE(cx, args, 0, -1, false);
+            m = re.pattern.matcher(thisStr);
             if (m.find()) {
                 return m.start();
             } else {
@@ -68,8 +76,8 @@ public class JreRegExpImpl implements RegExpProxy {
         case RA_REPLACE:
             // str.replace(regexp|substr, newSubStr|function[, Non-standard flags]);
             // treat substr as string, not regexp, optional flags in args[0]
-            re = args2regexp(cx, scope, args, 0, 2, true);
-            m = re.re.pattern.matcher(thisStr);
+            re = args2RE(cx, args, 0, 2, true);
+            m = re.pattern.matcher(thisStr);
 
             String newSubStr = null;
             Function f = null;
@@ -81,9 +89,16 @@ public class JreRegExpImpl implements RegExpProxy {
                         args.length > 1 ? args[1] : Undefined.instance);
             }
 
-            StringBuilder replaceResult = new StringBuilder();
+            if (!m.find()) {
+                // nothing to replace, spare the copy
+                return thisStr;
+            }
+
+            // no '$' pattern: the replacement is copied as is
+            boolean literal = newSubStr != null && newSubStr.indexOf('$') == -1;
+            StringBuilder replaceResult = new StringBuilder(thisStr.length() + 16);
             int searchStart = 0;
-            while (m.find()) {
+            do {
                 // copy from searchStart to matchStart
                 replaceResult.append(thisStr, searchStart, m.start());
                 searchStart = m.end(); // update searchStart
@@ -100,6 +115,8 @@ public class JreRegExpImpl implements RegExpProxy {
 
                     // copy replacement
                     replaceResult.append(ScriptRuntime.toString(replacement));
+                } else if (literal) {
+                    replaceResult.append(newSubStr);
                 } else {
                     // substitute newSubStr
                     for (int i = 0; i < newSubStr.length();) {
@@ -160,10 +177,10 @@ public class JreRegExpImpl implements RegExpProxy {
                 }
 
                 // break after 1 match if no global
-                if (!re.re.globalFlag) {
+                if (!re.globalFlag) {
                     break;
                 }
-            }
+            } while (m.find());
             // copy from searchStart to end of string
             replaceResult.append(thisStr, searchStart, thisStr.length());
 
@@ -205,9 +222,17 @@ public class JreRegExpImpl implements RegExpProxy {
             return _cx.newArray(_scope, new Object[] {thisString});
         }
 
+        // plain string separator: no regexp needed
+        if (!(_args[0] instanceof JreNativeRegExp)) {
+            String separator = ScriptRuntime.toString(_args[0]);
+            if (separator.length() > 0) {
+                return splitByString(_cx, _scope, thisString, separator, limit);
+            }
+        }
+
         // step 8: if separator is str, then escape before converting to regexp
-        JreNativeRegExp re = args2regexp(_cx, _scope, _args, 0, -1, true);
-        Matcher m = re.re.pattern.matcher(thisString);
+        RE re = args2RE(_cx, _args, 0, -1, true);
+        Matcher m = re.pattern.matcher(thisString);
         List<String> result = new ArrayList<String>();
 
         // step 11: special handling if thisString == ''
@@ -249,21 +274,47 @@ public class JreRegExpImpl implements RegExpProxy {
     }
 
     /**
-     * Converts args to regexp
+     * Split a string around a non empty separator, same result as a split
+     * with the escaped separator as regexp.
+     */
+    private static Object splitByString(Context cx, Scriptable scope,
+            String str, String separator, long limit) {
+        Object[] pieces = new Object[8];
+        int count = 0;
+        int start = 0;
+        int index;
+        while (count < limit && (index = str.indexOf(separator, start)) != -1) {
+            if (count == pieces.length) {
+                pieces = Arrays.copyOf(pieces, count * 2);
+            }
+            pieces[count++] = str.substring(start, index);
+            start = index + separator.length();
+        }
+        if (count < limit) {
+            if (count == pieces.length) {
+                pieces = Arrays.copyOf(pieces, count + 1);
+            }
+            pieces[count++] = str.substring(start);
+        }
+        return cx.newArray(scope, count == pieces.length
+            ? pieces : Arrays.copyOf(pieces, count));
+    }
+
+    /**
+     * Converts args to a compiled regexp, without creating a RegExp object
      * @param cx context
-     * @param scope scope
      * @param args args to convert
      * @param regexpIndex index of regexp or convert to string
      * @param flagsIndex index of flags (-1 if no flags)
      * @param escapeStr if true, string is escaped before converted to regexp
-     * @return regexp
+     * @return compiled regexp, shared: must not be modified
      */
-    private JreNativeRegExp args2regexp(Context cx, Scriptable scope,
-            Object[] args, int regexpIndex, int flagsIndex, boolean escapeStr) {
+    private static RE args2RE(Context cx, Object[] args, int regexpIndex,
+            int flagsIndex, boolean escapeStr) {
 
         if (args.length > regexpIndex
                 && args[regexpIndex] instanceof JreNativeRegExp) {
-            return (JreNativeRegExp) args[regexpIndex];
+            return ((JreNativeRegExp) args[regexpIndex]).re;
         }
         String src = args.length > regexpIndex
             ? ScriptRuntime.toString(args[regexpIndex]) : "";
@@ -273,7 +324,18 @@ public class JreRegExpImpl implements RegExpProxy {
         String flags = flagsIndex >= 0 && flagsIndex < args.length
             ? ScriptRuntime.toString(args[flagsIndex]) : "";
 
-        return new JreNativeRegExp(ScriptableObject.getTopLevelScope(scope),
-                JreNativeRegExp.compileRE(cx, src, flags));
+        return JreNativeRegExp.compileRE(cx, src, flags);
+    }
+
+    /**
+     * @return the RegExp object passed as argument, or a new one for re
+     */
+    private static JreNativeRegExp wrapRE(Scriptable scope, Object[] args,
+            int regexpIndex, RE re) {
+        if (args.length > regexpIndex
+                && args[regexpIndex] instanceof JreNativeRegExp) {
+            return (JreNativeRegExp) args[regexpIndex];
+        }
+        return new JreNativeRegExp(ScriptableObject.getTopLevelScope(scope), re);
     }
 }
@@ -0,0 +1,44 @@
+package net.pierrox.lightning_launcher;
+
+import java.util.Locale;
+
+/**
+ * Minimal micro benchmark runner for JVM tests: numbers are indicative only, they are meant to
+ * compare two implementations run in the same conditions, not to be checked against thresholds.
+ */
+public final class Benchmark {
+    private static final int ROUNDS = 5;
+
+    // results are stored here so that the JIT cannot drop the measured code
+    private static volatile Object sSink;
+
+    private Benchmark() {
+    }
+
+    public interface Task {
+        Object run();
+    }
+
+    /**
+     * Run the task a number of times per round, after a warm up round, and print the best round.
+     *
+     * @return the best time per iteration, in nanoseconds
+     */
+    public static double run(String name, int iterations, Task task) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sSink = task.run();
+            }
+            long duration = System.nanoTime() - start;
+            // round 0 is the warm up
+            if (round > 0 && duration < best) {
+                best = duration;
+            }
+        }
+        double per_iteration = best / (double) iterations;
+        System.out.println(String.format(Locale.US, "%-60s %12.1f ns/op", name, per_iteration));
+        return per_iteration;
+    }
+}
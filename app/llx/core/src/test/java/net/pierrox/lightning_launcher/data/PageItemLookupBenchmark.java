@@ -0,0 +1,112 @@
+package net.pierrox.lightning_launcher.data;
+
+import net.pierrox.lightning_launcher.Benchmark;
+import net.pierrox.lightning_launcher.engine.LightningEngine;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cost of looking up items by id and allocating item ids through the page index, compared to
+ * the former linear scans of the items list, from small folders to very large desktops.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class PageItemLookupBenchmark {
+    private static final int[] ITEM_COUNTS = {10, 100, 1000, 10000};
+    private static final int LOOKUPS = 1024;
+
+    @Test
+    public void lookups() {
+        LightningEngine engine = mock(LightningEngine.class);
+        when(engine.getBaseDir()).thenReturn(new File(System.getProperty("java.io.tmpdir")));
+
+        for (int count : ITEM_COUNTS) {
+            final Page page = new Page(engine, Page.FIRST_DASHBOARD_PAGE);
+            page.items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Item item = new Shortcut(page);
+                item.setId(Page.composeItemId(page.id, i + 1));
+                page.items.add(item);
+            }
+
+            // same random ids for both implementations
+            Random random = new Random(count);
+            final int[] ids = new int[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                ids[i] = page.items.get(random.nextInt(count)).getId();
+            }
+            for (int id : ids) {
+                assertSame(findItemByIdLinear(page, id), page.findItemById(id));
+            }
+            assertEquals(findFreeItemIdLinear(page), page.findFreeItemId());
+
+            int iterations = 2000000 / count + 1000;
+            final int[] next = new int[1];
+            Benchmark.run("findItemById, " + count + " items", iterations, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return page.findItemById(ids[next[0]++ & (LOOKUPS - 1)]);
+                }
+            });
+            Benchmark.run("findItemById linear scan, " + count + " items", iterations, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return findItemByIdLinear(page, ids[next[0]++ & (LOOKUPS - 1)]);
+                }
+            });
+            Benchmark.run("findFreeItemId, " + count + " items", iterations, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return page.findFreeItemId();
+                }
+            });
+            Benchmark.run("findFreeItemId linear scan, " + count + " items", iterations, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return findFreeItemIdLinear(page);
+                }
+            });
+
+            // worst case for the index: the items list changes between each lookup
+            final Item extra = new Shortcut(page);
+            Benchmark.run("findItemById after an item was added, " + count + " items", iterations / 10, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    page.items.add(extra);
+                    Item item = page.findItemById(ids[next[0]++ & (LOOKUPS - 1)]);
+                    page.items.remove(page.items.size() - 1);
+                    return item;
+                }
+            });
+        }
+    }
+
+    // the former Page.findItemById()
+    private static Item findItemByIdLinear(Page page, int id) {
+        for (Item i : page.items) {
+            if (i.getId() == id) return i;
+        }
+        return null;
+    }
+
+    // the former Page.findFreeItemId(), without the monotonic allocation
+    private static int findFreeItemIdLinear(Page page) {
+        int max = 0;
+        for (Item i : page.items) {
+            if (i.getId() > max) max = i.getId();
+        }
+        return Page.composeItemId(page.id, max + 1);
+    }
+}
@@ -0,0 +1,114 @@
+package net.pierrox.lightning_launcher.data;
+
+import net.pierrox.lightning_launcher.Benchmark;
+import net.pierrox.lightning_launcher.configuration.JsonFields;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reading the page items file by streaming it one item at a time, compared to parsing it as a
+ * whole JSON document like it used to be. Both paths stop at the item JSON objects: building
+ * the items themselves costs the same in both cases.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class PageItemsCodecBenchmark {
+    private static final int[] ITEM_COUNTS = {50, 500, 5000};
+
+    @Test
+    public void streamingVsDom() throws IOException {
+        for (int count : ITEM_COUNTS) {
+            final File file = File.createTempFile("items", ".json");
+            try {
+                writeItems(file, count);
+
+                final int[] streamed = new int[1];
+                final PageItemsCodec.ItemObjectHandler handler = new PageItemsCodec.ItemObjectHandler() {
+                    @Override
+                    public void onItemObject(JSONObject o) {
+                        streamed[0]++;
+                    }
+                };
+                assertTrue(PageItemsCodec.readItemObjects(file, null, handler));
+                assertEquals(count, streamed[0]);
+                assertEquals(count, readDom(file));
+
+                int iterations = 250000 / count;
+                Benchmark.run("streaming, " + count + " items (" + file.length() / 1024 + " kB)", iterations, new Benchmark.Task() {
+                    @Override
+                    public Object run() {
+                        return PageItemsCodec.readItemObjects(file, null, handler);
+                    }
+                });
+                Benchmark.run("DOM, " + count + " items (" + file.length() / 1024 + " kB)", iterations, new Benchmark.Task() {
+                    @Override
+                    public Object run() {
+                        return readDom(file);
+                    }
+                });
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    // the former Page.loadItems() parsing
+    private static int readDom(File file) {
+        try {
+            JSONArray json_items = FileUtils.readJSONObjectFromFile(file).getJSONArray(JsonFields.ITEMS);
+            int l = json_items.length();
+            for (int i = 0; i < l; i++) {
+                json_items.getJSONObject(i);
+            }
+            return l;
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // items roughly shaped like shortcuts with a few customized properties
+    private static void writeItems(File file, int count) throws IOException {
+        ArrayList<String> encoded_items = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                JSONObject item_config = new JSONObject();
+                item_config.put("box", "0:0:0:0:0:0:0:0:0:0:0:0:0");
+                item_config.put("rotate", i % 3 == 0);
+                item_config.put("alpha", 255);
+
+                JSONArray tags = new JSONArray();
+                tags.put("tag" + (i % 7));
+                tags.put(i * 0.5);
+
+                JSONObject o = new JSONObject();
+                o.put(JsonFields.ITEM_ID, i + 1);
+                o.put(JsonFields.ITEM_TYPE, "Shortcut");
+                o.put(JsonFields.ITEM_CEll_P_X, i % 5);
+                o.put(JsonFields.ITEM_CEll_P_Y, i / 5);
+                o.put(JsonFields.ITEM_CEll_P_WIDTH, 1);
+                o.put(JsonFields.ITEM_CEll_P_HEIGHT, 1);
+                o.put(JsonFields.SHORTCUT_LABEL, "Application " + i);
+                o.put(JsonFields.SHORTCUT_INTENT, "#Intent;action=android.intent.action.MAIN;category=android.intent.category.LAUNCHER;component=com.example.app" + i + "/.MainActivity;end");
+                o.put("c", item_config);
+                o.put("tags", tags);
+                encoded_items.add(o.toString());
+            }
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        PageItemsCodec.writeEncodedItems(encoded_items, file, null);
+    }
+}
@@ -0,0 +1,72 @@
+package net.pierrox.lightning_launcher.engine.variable;
+
+import net.pierrox.lightning_launcher.Benchmark;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptableObject;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Cost of one binding evaluation, natively and with the script engine. Like bindings, the
+ * script is compiled once as a function taking variables as arguments, and run interpreted.
+ */
+public class ExpressionBenchmark {
+    private static final int ITERATIONS = 20000;
+
+    private static final String[] VARIABLE_NAMES = {"battery", "hour", "minute", "label"};
+    private static final Object[] VARIABLE_VALUES = {73, 9, 5, "Home"};
+
+    private static final String[] FORMULAS = {
+            "$battery * 2",
+            "$battery < 20 ? 'low' : 'ok'",
+            "$hour + ':' + ($minute < 10 ? '0' + $minute : $minute)",
+            "Math.round($battery / 100 * 360)",
+            "$label == 'Home' && $battery > 50",
+    };
+
+    @Test
+    public void nativeVersusScript() {
+        Variable[] variables = new Variable[VARIABLE_NAMES.length];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = new Variable(VARIABLE_NAMES[i], VARIABLE_VALUES[i]);
+        }
+        StringBuilder parameters = new StringBuilder();
+        for (String name : VARIABLE_NAMES) {
+            if (parameters.length() > 0) {
+                parameters.append(',');
+            }
+            parameters.append(name);
+        }
+
+        final Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            final ScriptableObject scope = cx.initStandardObjects();
+            for (String formula : FORMULAS) {
+                final Expression expression = Expression.compile(formula, VARIABLE_NAMES);
+                assertNotNull(formula, expression);
+                final Variable[] v = variables;
+                Benchmark.run("native  " + formula, ITERATIONS, new Benchmark.Task() {
+                    @Override
+                    public Object run() {
+                        return expression.evaluate(v);
+                    }
+                });
+
+                final Function function = cx.compileFunction(scope, "function(" + parameters + "){return " + formula.replace("$", "") + ";}", formula, 1, null);
+                final Object[] arguments = VARIABLE_VALUES.clone();
+                Benchmark.run("script  " + formula, ITERATIONS, new Benchmark.Task() {
+                    @Override
+                    public Object run() {
+                        return function.call(cx, scope, scope, arguments);
+                    }
+                });
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+}
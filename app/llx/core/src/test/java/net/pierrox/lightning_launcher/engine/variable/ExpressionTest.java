@@ -0,0 +1,266 @@
+package net.pierrox.lightning_launcher.engine.variable;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Natively evaluated formulas must give the same results as the script engine.
+ */
+public class ExpressionTest {
+    private static final String[] VARIABLE_NAMES = {"i", "d", "z", "s", "t", "e", "b", "n"};
+    private static final Object[] VARIABLE_VALUES = {5, 2.5, 0, "12", "abc", "", true, null};
+
+    private static final String[] COERCIONS = {
+            "$s * 2",
+            "$s - 1",
+            "$t * 1",
+            "$e * 1",
+            "$b + 1",
+            "$n + 1",
+            "$n * 2",
+            "+$s",
+            "-$t",
+            "!$e",
+            "!$t",
+            "!$z",
+            "!$n",
+            "!!$s",
+            "' 7 ' * 2",
+            "'0x10' * 1",
+            "'1e3' - 0",
+    };
+
+    private static final String[] STRING_NUMBER_ADDITIONS = {
+            "$i + $s",
+            "$s + $i",
+            "1 + 2 + 'a'",
+            "'a' + 1 + 2",
+            "$t + $b",
+            "$t + $n",
+            "$d + ''",
+            "0.1 + 0.2 + ''",
+            "1e21 + ''",
+            "1 / 3 + ''",
+            "-$z + ''",
+            "$i / 2 + 'x'",
+            "$b + $n",
+            "$s + $s",
+    };
+
+    private static final String[] EQUALITIES = {
+            "$i == '5'",
+            "$i === '5'",
+            "$i != '5'",
+            "$i !== '5'",
+            "$s == 12",
+            "$s === '12'",
+            "$i === 5",
+            "$d === 2.5",
+            "$n == 0",
+            "$n == null",
+            "$n === null",
+            "$n == false",
+            "$b == 1",
+            "$b === 1",
+            "$b == '1'",
+            "$e == 0",
+            "$e == false",
+            "'' == 0",
+            "$z == -0",
+            "$z === -0",
+            "$t == 'abc'",
+    };
+
+    private static final String[] NAN_AND_DIVISION_BY_ZERO = {
+            "$i / 0",
+            "-$i / 0",
+            "$z / 0",
+            "$z / 0 == $z / 0",
+            "$t * 1 != $t * 1",
+            "$t * 1 < 1",
+            "$t * 1 >= 1",
+            "$i % 0",
+            "$i / $z + ''",
+            "1 / -$z",
+            "-$z",
+            "$d % 1",
+            "-7 % 3",
+            "7 % -3",
+            "Math.sqrt(-1)",
+            "Math.log(0)",
+    };
+
+    private static final String[] PRECEDENCE = {
+            "1 + 2 * 3",
+            "(1 + 2) * 3",
+            "10 - 4 - 3",
+            "2 * 3 % 4",
+            "20 / 5 / 2",
+            "-2 * -3",
+            "- -$i",
+            "!$b || $i > 3 && $d < 2",
+            "($b || $i) && $z",
+            "$i > 3 ? 'big' : 'small'",
+            "$z ? 1 : $n ? 2 : 3",
+            "$b ? $i : $d + 1",
+            "1 < 2 == true",
+            "1 + 2 > 2 + 0",
+            "$i && $t",
+            "$z || $t",
+            "$e || 'default'",
+            "$n && $i",
+            "$b && $i",
+            "$b ? $i : 0",
+            "($i)",
+            "$z || $d",
+    };
+
+    private static final String[] COMPARISONS_AND_MATH = {
+            "'10' < '9'",
+            "'10' < 9",
+            "$t < 1",
+            "$n >= 0",
+            "$n > -1",
+            "$b >= 1",
+            "$t <= 'abd'",
+            "Math.max($i, $d)",
+            "Math.max($i, $t)",
+            "Math.min()",
+            "Math.max()",
+            "Math.round(2.5)",
+            "Math.round(-2.5)",
+            "Math.round(-0.4)",
+            "1 / Math.round(-0.4)",
+            "1 / Math.round(-0.5)",
+            "1 / Math.round(0.4)",
+            "Math.round(0.49999999999999994)",
+            "Math.round($t)",
+            "1 / Math.ceil(-0.5)",
+            "Math.floor(-$d)",
+            "Math.ceil($d)",
+            "Math.abs($s)",
+            "Math.abs(-$d)",
+            "Math.PI * 2",
+            "Math.pow(2, 10)",
+            "Math.pow($n, 0)",
+            "Math.atan2(1, 1)",
+            "Math.exp(1) == Math.E",
+    };
+
+    private static Context sContext;
+    private static ScriptableObject sScope;
+
+    @BeforeClass
+    public static void enterContext() {
+        sContext = Context.enter();
+        sContext.setOptimizationLevel(-1);
+        sScope = sContext.initStandardObjects();
+        for (int i = 0; i < VARIABLE_NAMES.length; i++) {
+            ScriptableObject.putProperty(sScope, VARIABLE_NAMES[i], Context.javaToJS(VARIABLE_VALUES[i], sScope));
+        }
+    }
+
+    @AfterClass
+    public static void exitContext() {
+        Context.exit();
+    }
+
+    @Test
+    public void coercions() {
+        check(COERCIONS);
+    }
+
+    @Test
+    public void stringNumberAdditions() {
+        check(STRING_NUMBER_ADDITIONS);
+    }
+
+    @Test
+    public void equalities() {
+        check(EQUALITIES);
+    }
+
+    @Test
+    public void nanAndDivisionByZero() {
+        check(NAN_AND_DIVISION_BY_ZERO);
+    }
+
+    @Test
+    public void precedence() {
+        check(PRECEDENCE);
+    }
+
+    @Test
+    public void comparisonsAndMath() {
+        check(COMPARISONS_AND_MATH);
+    }
+
+    @Test
+    public void unsupportedFormulas() {
+        String[] formulas = {
+                "$i.toString()",
+                "Math.random",
+                "Math.pow(2)",
+                "foo($i)",
+                "$i = 2",
+                "$i; $d",
+                "$unknown + 1",
+                "(1 + 2",
+        };
+        for (String formula : formulas) {
+            assertNull(formula, Expression.compile(formula, VARIABLE_NAMES));
+        }
+    }
+
+    private static void check(String[] formulas) {
+        Variable[] variables = new Variable[VARIABLE_NAMES.length];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = new Variable(VARIABLE_NAMES[i], VARIABLE_VALUES[i]);
+        }
+
+        for (String formula : formulas) {
+            Expression expression = Expression.compile(formula, VARIABLE_NAMES);
+            assertNotNull("not compiled: " + formula, expression);
+
+            // same conversion as VariableManager.convertFormulaToScript
+            Object expected = normalize(sContext.evaluateString(sScope, formula.replace("$", ""), formula, 1, null));
+            Object actual = normalize(expression.evaluate(variables));
+
+            // boxed types must be the same: an Integer and a Double are not displayed the same way
+            if (expected == null ? actual != null : actual == null || expected.getClass() != actual.getClass()) {
+                fail(formula + ": expected " + describe(expected) + " but was " + describe(actual));
+            }
+            if (expected instanceof Double) {
+                // tells -0 from 0, and NaN is equal to itself
+                if (Double.compare((Double) expected, (Double) actual) != 0) {
+                    fail(formula + ": expected " + expected + " but was " + actual);
+                }
+            } else {
+                assertEquals(formula, expected, actual);
+            }
+        }
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "null" : value + " (" + value.getClass().getSimpleName() + ")";
+    }
+
+    private static Object normalize(Object value) {
+        if (value == Undefined.instance) {
+            return null;
+        }
+        if (value instanceof CharSequence) {
+            return value.toString();
+        }
+        return value;
+    }
+}
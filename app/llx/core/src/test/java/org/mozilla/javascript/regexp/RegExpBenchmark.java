@@ -0,0 +1,90 @@
+package org.mozilla.javascript.regexp;
+
+import net.pierrox.lightning_launcher.Benchmark;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptableObject;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Cost of string operations typical of launcher scripts (formatting labels, parsing data, etc.),
+ * through the JRE based regexp implementation. Functions are run interpreted, like scripts.
+ */
+public class RegExpBenchmark {
+    private static final int ITERATIONS = 20000;
+
+    private static final String DATE = "2026-10-18 12:05";
+    private static final String LIST = "mail, phone ,camera,  clock,music, maps";
+
+    private static Context sContext;
+    private static ScriptableObject sScope;
+
+    @BeforeClass
+    public static void enterContext() {
+        sContext = Context.enter();
+        sContext.setOptimizationLevel(-1);
+        sScope = sContext.initStandardObjects();
+    }
+
+    @AfterClass
+    public static void exitContext() {
+        Context.exit();
+    }
+
+    @Test
+    public void regexpConstruction() {
+        run("new RegExp(same source)", "function(s) { return new RegExp('^item\\\\d+$', 'i').test(s); }", "item42", true);
+        run("new RegExp(built source)", "function(s) { return new RegExp('^' + s.substring(0, 4) + '\\\\d+$').test(s); }", "item42", true);
+        run("regexp literal test", "function(s) { return /^item\\d+$/i.test(s); }", "item42", true);
+    }
+
+    @Test
+    public void replace() {
+        run("replace global", "function(s) { return s.replace(/-/g, '/'); }", DATE, "2026/10/18 12:05");
+        run("replace global, no match", "function(s) { return s.replace(/x/g, 'y'); }", DATE, DATE);
+        run("replace global, $ pattern", "function(s) { return s.replace(/(\\d+):(\\d+)/g, '$2:$1'); }", DATE, "2026-10-18 05:12");
+        run("replace string", "function(s) { return s.replace(' ', 'T'); }", DATE, "2026-10-18T12:05");
+        run("replace global, function", "function(s) { return s.replace(/\\d+/g, function(m) { return m.length; }); }", DATE, "4-2-2 2:2");
+    }
+
+    @Test
+    public void match() {
+        run("match global", "function(s) { return s.match(/\\d+/g).length; }", DATE, 5);
+        run("match", "function(s) { return s.match(/(\\d+):(\\d+)/)[2]; }", DATE, "05");
+        run("match string", "function(s) { return s.match('\\\\d+')[0]; }", DATE, "2026");
+        run("search", "function(s) { return s.search(/:/); }", DATE, 13);
+    }
+
+    @Test
+    public void split() {
+        run("split string", "function(s) { return s.split(',').length; }", LIST, 6);
+        run("split regexp", "function(s) { return s.split(/\\s*,\\s*/).length; }", LIST, 6);
+        run("split empty string", "function(s) { return s.split('').length; }", DATE, 16);
+    }
+
+    private static void run(String name, String source, final String argument, Object expected) {
+        final Function function = sContext.compileFunction(sScope, source, name, 1, null);
+        final Object[] arguments = {argument};
+
+        Object result = function.call(sContext, sScope, sScope, arguments);
+        if (expected instanceof Number) {
+            assertEquals(name, ((Number) expected).doubleValue(), Context.toNumber(result), 0);
+        } else if (expected instanceof Boolean) {
+            assertEquals(name, expected, Context.toBoolean(result));
+        } else {
+            assertEquals(name, expected, Context.toString(result));
+        }
+
+        Benchmark.run(name, ITERATIONS, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return function.call(sContext, sScope, sScope, arguments);
+            }
+        });
+    }
+}
@@ -15,6 +15,7 @@ public class Script {
 	public static final int FLAG_APP_MENU = 2;
 	public static final int FLAG_ITEM_MENU = 4;
 	public static final int FLAG_CUSTOM_MENU = 8;
+	public static final int FLAG_COMPILED = 16;
 	private int id = NO_ID;
 	private String text;
 	private String name;